@@ -0,0 +1,73 @@
+package sjdb.benchmarks;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sjdb.OptimisedPlan;
+import sjdb.Optimiser;
+import sjdb.PlanningService;
+
+/**
+ * Planning throughput of a PlanningService by the number of threads it
+ * runs on, in queries per second: a batch of the same query is planned
+ * at once, sharing one catalogue and one Optimiser.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentPlanningBenchmark {
+	private static final int BATCH = 256;
+
+	@Param({ "CHAIN", "STAR", "CLIQUE", "SNOWFLAKE" })
+	public JoinGraph graph;
+
+	@Param({ "8" })
+	public int relations;
+
+	@Param({ "1", "2", "4", "8" })
+	public int threads;
+
+	private ExecutorService executor;
+	private PlanningService service;
+	private List<String> queries;
+
+	@Setup
+	public void setUp() {
+		SyntheticQuery query = new SyntheticQuery(graph, relations);
+		executor = Executors.newFixedThreadPool(threads);
+		service = new PlanningService(query.getCatalogue(), new Optimiser(query.getCatalogue()), executor);
+		queries = Collections.nCopies(BATCH, query.getText());
+	}
+
+	@TearDown
+	public void tearDown() {
+		executor.shutdown();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public List<OptimisedPlan> planAll() throws ExecutionException, InterruptedException {
+		return service.planAll(queries);
+	}
+}
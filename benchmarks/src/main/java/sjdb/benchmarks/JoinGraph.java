@@ -0,0 +1,69 @@
+package sjdb.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The shapes of join graph the planner is benchmarked on. The relations of
+ * a query are numbered from 0, and each edge is a join predicate between
+ * two of them.
+ */
+public enum JoinGraph {
+	/**
+	 * Each relation joined to the next
+	 */
+	CHAIN {
+		List<int[]> edges(int relations) {
+			List<int[]> edges = new ArrayList<int[]>();
+			for (int i = 1; i < relations; i++) {
+				edges.add(new int[] { i - 1, i });
+			}
+			return edges;
+		}
+	},
+	/**
+	 * A fact relation, 0, joined to every other relation
+	 */
+	STAR {
+		List<int[]> edges(int relations) {
+			List<int[]> edges = new ArrayList<int[]>();
+			for (int i = 1; i < relations; i++) {
+				edges.add(new int[] { 0, i });
+			}
+			return edges;
+		}
+	},
+	/**
+	 * Every relation joined to every other
+	 */
+	CLIQUE {
+		List<int[]> edges(int relations) {
+			List<int[]> edges = new ArrayList<int[]>();
+			for (int i = 0; i < relations; i++) {
+				for (int j = i + 1; j < relations; j++) {
+					edges.add(new int[] { i, j });
+				}
+			}
+			return edges;
+		}
+	},
+	/**
+	 * A fact relation, 0, joined to three dimensions, each of which is
+	 * joined to three more, and so on
+	 */
+	SNOWFLAKE {
+		List<int[]> edges(int relations) {
+			List<int[]> edges = new ArrayList<int[]>();
+			for (int i = 1; i < relations; i++) {
+				edges.add(new int[] { (i - 1) / 3, i });
+			}
+			return edges;
+		}
+	};
+
+	/**
+	 * @param relations the number of relations
+	 * @return the pairs of relations which are joined
+	 */
+	abstract List<int[]> edges(int relations);
+}
@@ -0,0 +1,59 @@
+package sjdb.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sjdb.Estimator;
+import sjdb.Operator;
+import sjdb.Optimiser;
+
+/**
+ * Planning latency of a query, by the shape and size of its join graph:
+ * the estimation of its canonical plan, and its optimisation (which
+ * estimates the plans it considers as it goes).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OptimiserBenchmark {
+	@Param({ "CHAIN", "STAR", "CLIQUE", "SNOWFLAKE" })
+	public JoinGraph graph;
+
+	@Param({ "2", "4", "8", "12", "16", "20" })
+	public int relations;
+
+	private SyntheticQuery query;
+	private Operator plan;
+
+	@Setup
+	public void setUp() {
+		query = new SyntheticQuery(graph, relations);
+		plan = query.getPlan();
+		plan.accept(new Estimator());
+	}
+
+	@Benchmark
+	public Operator estimate() {
+		plan.accept(new Estimator());
+		return plan;
+	}
+
+	@Benchmark
+	public Operator optimise() {
+		return new Optimiser(query.getCatalogue()).optimise(plan);
+	}
+}
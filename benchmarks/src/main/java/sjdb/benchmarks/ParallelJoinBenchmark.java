@@ -0,0 +1,86 @@
+package sjdb.benchmarks;
+
+import java.io.StringReader;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sjdb.Catalogue;
+import sjdb.Estimator;
+import sjdb.Executor;
+import sjdb.GeneratedStorage;
+import sjdb.Operator;
+import sjdb.Optimiser;
+import sjdb.ParallelExecutor;
+import sjdb.QueryParser;
+
+/**
+ * Execution time of a hash join by the number of threads of the
+ * ParallelExecutor running it: a fact relation, scanned and probed in
+ * morsels, joined to a dimension built into the shared table. The tuples
+ * are generated by GeneratedStorage from the tuple and value counts of the
+ * catalogue, so the speedup over one thread is the scaling of the join.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelJoinBenchmark {
+	private static final String QUERY = "SELECT f_v,d_v\n" +
+			"FROM Fact,Dim\n" +
+			"WHERE f_dim=d_id\n";
+
+	@Param({ "1000000" })
+	public long facts;
+
+	@Param({ "10000" })
+	public long dims;
+
+	@Param({ "1", "2", "4", "8", "16", "32" })
+	public int threads;
+
+	private ForkJoinPool pool;
+	private ParallelExecutor executor;
+	private Operator plan;
+
+	@Setup
+	public void setUp() throws Exception {
+		Catalogue cat = new Catalogue();
+		cat.createRelation("Fact", facts);
+		cat.createAttribute("Fact", "f_dim", dims);
+		cat.createAttribute("Fact", "f_v", 100);
+		cat.createRelation("Dim", dims);
+		cat.createAttribute("Dim", "d_id", dims);
+		cat.createAttribute("Dim", "d_v", 100);
+		Operator canonical = new QueryParser(cat, new StringReader(QUERY)).parse();
+		canonical.accept(new Estimator());
+		plan = new Optimiser(cat).optimise(canonical);
+
+		pool = new ForkJoinPool(threads);
+		executor = new ParallelExecutor(new GeneratedStorage(), pool);
+	}
+
+	@TearDown
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public long join() {
+		return Executor.run(executor.compile(plan));
+	}
+}
@@ -0,0 +1,114 @@
+package sjdb.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import sjdb.Attribute;
+import sjdb.Catalogue;
+import sjdb.DatabaseException;
+import sjdb.Operator;
+import sjdb.Predicate;
+import sjdb.Product;
+import sjdb.Project;
+import sjdb.Scan;
+import sjdb.Select;
+
+/**
+ * A catalogue and query generated for a join graph, in the way
+ * Test.createCatalogue and Test.query build theirs by hand.
+ *
+ * Relation Ri has an attribute ri_v, and an attribute ri_rj for each
+ * relation Rj it is joined to. Tuple counts range from 100 to 1000000,
+ * and value counts from a tenth of the tuple count to all of it, drawn
+ * from a fixed seed so that every run plans the same query. The query is
+ * in canonical form: the product of the relations, a select for each join
+ * predicate and for r0_v="1", and a project onto r0_v and the ri_v of the
+ * last relation. The same query is also kept as text, in the form read
+ * by QueryParser.
+ */
+public class SyntheticQuery {
+	private static final long SEED = 42;
+
+	private final Catalogue catalogue;
+	private final Operator plan;
+	private final String text;
+
+	/**
+	 * @param graph the shape of the join graph
+	 * @param relations the number of relations
+	 */
+	public SyntheticQuery(JoinGraph graph, int relations) {
+		if (relations < 1) {
+			throw new IllegalArgumentException("A query needs at least one relation");
+		}
+		Random random = new Random(SEED);
+		List<int[]> edges = graph.edges(relations);
+
+		catalogue = new Catalogue();
+		long[] tuples = new long[relations];
+		for (int i = 0; i < relations; i++) {
+			tuples[i] = Math.round(Math.pow(10, 2 + 4 * random.nextDouble()));
+			catalogue.createRelation(name(i), tuples[i]);
+			catalogue.createAttribute(name(i), name(i) + "_v", 10 + random.nextInt(91));
+		}
+		for (int[] edge : edges) {
+			for (int end = 0; end < 2; end++) {
+				int i = edge[end];
+				int j = edge[1 - end];
+				long values = Math.max(1, Math.round(tuples[i] * (0.1 + 0.9 * random.nextDouble())));
+				catalogue.createAttribute(name(i), name(i) + "_" + name(j), values);
+			}
+		}
+
+		StringBuilder select = new StringBuilder("SELECT ").append(name(0)).append("_v");
+		StringBuilder from = new StringBuilder("FROM ").append(name(0));
+		StringBuilder where = new StringBuilder("WHERE ").append(name(0)).append("_v=\"1\"");
+		try {
+			Operator query = new Scan(catalogue.getRelation(name(0)));
+			for (int i = 1; i < relations; i++) {
+				query = new Product(query, new Scan(catalogue.getRelation(name(i))));
+				from.append(",").append(name(i));
+			}
+			query = new Select(query, new Predicate(new Attribute(name(0) + "_v"), "1"));
+			for (int[] edge : edges) {
+				String left = name(edge[0]) + "_" + name(edge[1]);
+				String right = name(edge[1]) + "_" + name(edge[0]);
+				query = new Select(query, new Predicate(new Attribute(left), new Attribute(right)));
+				where.append(",").append(left).append("=").append(right);
+			}
+			List<Attribute> attributes = new ArrayList<Attribute>();
+			attributes.add(new Attribute(name(0) + "_v"));
+			if (relations > 1) {
+				attributes.add(new Attribute(name(relations - 1) + "_v"));
+				select.append(",").append(name(relations - 1)).append("_v");
+			}
+			plan = new Project(query, attributes);
+			text = select + "\n" + from + "\n" + where + "\n";
+		} catch (DatabaseException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String name(int relation) {
+		return "r" + relation;
+	}
+
+	public Catalogue getCatalogue() {
+		return catalogue;
+	}
+
+	/**
+	 * @return the query, in the form read by QueryParser
+	 */
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * @return the canonical plan of the query, which has not been estimated
+	 */
+	public Operator getPlan() {
+		return plan;
+	}
+}
@@ -0,0 +1,239 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * This class gathers the statistics of named relations from their stored
+ * tuples, and puts them into the catalogue in place of hand-written ones.
+ *
+ * A relation is read once, a batch at a time, in memory which does not
+ * depend on its size. For each attribute this counts:
+ *
+ * - the tuples, exactly
+ * - the distinct values, with a HyperLogLog sketch
+ * - the smallest and largest numbers, exactly
+ * - whether the values are stored in ascending order
+ *
+ * A fixed-size reservoir sample of the tuples is kept at the same time,
+ * from which the equi-depth histograms (for attributes whose values are all
+ * numbers or dates) and the most common values are drawn. A value is most
+ * common if it is sampled more often than the average sampled value by
+ * three standard deviations, or, when the whole relation fits in the sample
+ * and has few values, if it is sampled at all.
+ *
+ * The sample is drawn from a fixed seed, so analysing the same tuples
+ * twice gives the same statistics.
+ */
+public class Analyzer {
+	public static final int DEFAULT_SAMPLE_SIZE = 30000;
+	public static final int DEFAULT_BUCKETS = 10;
+	public static final int DEFAULT_MOST_COMMON = 10;
+	private static final long DEFAULT_SEED = 42;
+
+	private final Storage storage;
+	private final int sampleSize;
+	private final int buckets;
+	private final int mostCommon;
+	private final long seed;
+
+	public Analyzer(Storage storage) {
+		this(storage, DEFAULT_SAMPLE_SIZE, DEFAULT_BUCKETS, DEFAULT_MOST_COMMON, DEFAULT_SEED);
+	}
+
+	/**
+	 * @param storage the storage the tuples are read from
+	 * @param sampleSize the number of tuples sampled for histograms and most common values
+	 * @param buckets the number of buckets of each histogram
+	 * @param mostCommon the largest number of most common values kept for each attribute
+	 * @param seed the seed from which the sample is drawn
+	 */
+	public Analyzer(Storage storage, int sampleSize, int buckets, int mostCommon, long seed) {
+		if (sampleSize < 1 || buckets < 1 || mostCommon < 0) {
+			throw new IllegalArgumentException("An analyzer needs a sample, and histograms of at least one bucket");
+		}
+		this.storage = storage;
+		this.sampleSize = sampleSize;
+		this.buckets = buckets;
+		this.mostCommon = mostCommon;
+		this.seed = seed;
+	}
+
+	/**
+	 * Read the tuples of a relation and (re)create it in the catalogue, with
+	 * its attributes and their statistics. Only the name and the attributes
+	 * of the given relation are used, so it may come from another catalogue,
+	 * or from ColumnStore.getRelation(). The relation is published as one new
+	 * version of the catalogue, so queries planned meanwhile see either its
+	 * old statistics or its new ones.
+	 *
+	 * @param catalogue
+	 * @param relation
+	 * @return the relation in the catalogue
+	 */
+	public NamedRelation analyze(Catalogue catalogue, NamedRelation relation) {
+		List<Attribute> attributes = relation.getAttributes();
+		int width = attributes.size();
+		Dictionary dictionary = storage.getDictionary();
+
+		HyperLogLog[] distinct = new HyperLogLog[width];
+		long[] min = new long[width];
+		long[] max = new long[width];
+		boolean[] sorted = new boolean[width];
+		boolean[] strings = new boolean[width];
+		long[] previous = new long[width];
+		for (int c = 0; c < width; c++) {
+			distinct[c] = new HyperLogLog();
+			min[c] = Dictionary.MISSING;
+			max[c] = Dictionary.MISSING;
+			sorted[c] = true;
+			previous[c] = Dictionary.MISSING;
+		}
+		long[][] sample = new long[width][sampleSize];
+		Random random = new Random(seed * 31 + relation.toString().hashCode());
+
+		long tuples = 0;
+		long[][] columns = VectorOperator.columns(width);
+		try (TupleCursor cursor = storage.open(relation)) {
+			int size;
+			while ((size = cursor.fill(columns, Batch.SIZE)) > 0) {
+				for (int c = 0; c < width; c++) {
+					long[] column = columns[c];
+					for (int i = 0; i < size; i++) {
+						long value = column[i];
+						if (value < previous[c]) {
+							sorted[c] = false;
+						}
+						previous[c] = value;
+						if (value == Dictionary.MISSING) {
+							continue;
+						}
+						distinct[c].add(value);
+						if (Dictionary.isCode(value)) {
+							strings[c] = true;
+						} else {
+							min[c] = min[c] == Dictionary.MISSING ? value : Math.min(min[c], value);
+							max[c] = max[c] == Dictionary.MISSING ? value : Math.max(max[c], value);
+						}
+					}
+				}
+
+				// reservoir sampling: tuple t replaces a random sampled tuple with probability n/t
+				for (int i = 0; i < size; i++, tuples++) {
+					long slot = tuples < sampleSize ? tuples : (long) (random.nextDouble() * (tuples + 1));
+					if (slot < sampleSize) {
+						for (int c = 0; c < width; c++) {
+							sample[c][(int) slot] = columns[c][i];
+						}
+					}
+				}
+			}
+		}
+
+		String relName = relation.toString();
+		int sampled = (int) Math.min(tuples, sampleSize);
+		long tupleCount = tuples;
+		// the relation is published whole, as one version of the catalogue
+		catalogue.update(cat -> {
+			cat.createRelation(relName, tupleCount);
+			String sortedOn = null;
+			long sortedValues = 1;
+			for (int c = 0; c < width; c++) {
+				long values = Math.min(distinct[c].estimate(), tupleCount);
+				long[] sampledValues = Arrays.copyOf(sample[c], sampled);
+				Histogram histogram = strings[c] ? null : histogram(sampledValues, min[c], max[c]);
+				Map<String, Double> common = mostCommonValues(sampledValues, tupleCount <= sampleSize, dictionary);
+				String attName = attributes.get(c).getName();
+				cat.createAttribute(relName, attName, values, histogram, common);
+				if (sorted[c] && values > sortedValues) {
+					sortedOn = attName;
+					sortedValues = values;
+				}
+			}
+			if (sortedOn != null) {
+				cat.setSortedOn(relName, sortedOn);
+			}
+		});
+		try {
+			return catalogue.getRelation(relName);
+		} catch (DatabaseException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * An equi-depth histogram from the sampled numbers of an attribute, with
+	 * the exact smallest and largest numbers as its outer boundaries
+	 */
+	private Histogram histogram(long[] sample, long min, long max) {
+		if (min == Dictionary.MISSING) {
+			return null;
+		}
+		long[] numbers = new long[sample.length];
+		int n = 0;
+		for (long value : sample) {
+			if (value != Dictionary.MISSING) {
+				numbers[n++] = value;
+			}
+		}
+		Arrays.sort(numbers, 0, n);
+
+		int k = Math.max(Math.min(buckets, n), 1);
+		double[] bounds = new double[k + 1];
+		bounds[0] = Dictionary.toNumber(min);
+		bounds[k] = Dictionary.toNumber(max);
+		for (int i = 1; i < k; i++) {
+			bounds[i] = Dictionary.toNumber(numbers[(int) ((long) i * n / k)]);
+		}
+		return new Histogram(bounds);
+	}
+
+	/**
+	 * The values sampled significantly more often than the average value,
+	 * most common first, with their fraction of the sampled tuples
+	 * @param complete whether the sample holds every tuple
+	 */
+	private Map<String, Double> mostCommonValues(long[] sample, boolean complete, Dictionary dictionary) {
+		if (sample.length == 0 || mostCommon == 0) {
+			return null;
+		}
+		final Map<Long, Integer> counts = new HashMap<Long, Integer>();
+		for (long value : sample) {
+			if (value != Dictionary.MISSING) {
+				counts.merge(value, 1, Integer::sum);
+			}
+		}
+
+		int sampled = 0;
+		for (int count : counts.values()) {
+			sampled += count;
+		}
+		double average = (double) sampled / Math.max(counts.size(), 1);
+		// a sampled value count is roughly Poisson, with a variance equal to its mean
+		double threshold = complete && counts.size() <= mostCommon ? 1 : Math.max(average + 3 * Math.sqrt(average), 2);
+		List<Long> candidates = new ArrayList<Long>();
+		for (Map.Entry<Long, Integer> entry : counts.entrySet()) {
+			if (entry.getValue() >= threshold) {
+				candidates.add(entry.getKey());
+			}
+		}
+		// most common first, then in order of value so the choice is repeatable
+		Collections.sort(candidates, (a, b) -> counts.get(a).equals(counts.get(b)) ?
+				Long.compare(a, b) : Integer.compare(counts.get(b), counts.get(a)));
+
+		Map<String, Double> common = new LinkedHashMap<String, Double>();
+		for (long value : candidates) {
+			if (common.size() == mostCommon) {
+				break;
+			}
+			common.put(dictionary.decode(value), (double) counts.get(value) / sample.length);
+		}
+		return common.isEmpty() ? null : common;
+	}
+}
@@ -3,14 +3,25 @@
  */
 package sjdb;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
+ * An attribute, identified by its name, with the statistics used to
+ * estimate the selectivity of predicates on it: the number of distinct
+ * values, and optionally an equi-depth histogram and a list of the most
+ * common values with the fraction of tuples which take each of them.
+ * 
  * @author nmg
  *
  */
 public class Attribute {
 
 	private String name;
-	private int values;
+	private long values;
+	private Histogram histogram;
+	private Map<String, Double> mostCommonValues = Collections.emptyMap();
 
 	public Attribute(String name) {
 		this.name = name;
@@ -20,14 +31,32 @@ public class Attribute {
 	 * @param name
 	 * @param values
 	 */
-	public Attribute(String name, int values) {
+	public Attribute(String name, long values) {
+		this.name = name;
+		this.values = values;
+	}
+	
+	/**
+	 * @param name
+	 * @param values
+	 * @param histogram equi-depth histogram, or null
+	 * @param mostCommonValues most common values and the fraction of tuples
+	 *                         taking each of them, or null
+	 */
+	public Attribute(String name, long values, Histogram histogram, Map<String, Double> mostCommonValues) {
 		this.name = name;
 		this.values = values;
+		this.histogram = histogram;
+		if (mostCommonValues != null && !mostCommonValues.isEmpty()) {
+			this.mostCommonValues = Collections.unmodifiableMap(new LinkedHashMap<String, Double>(mostCommonValues));
+		}
 	}
 	
 	public Attribute(Attribute attr) {
 		this.name = attr.name;
 		this.values = attr.values;
+		this.histogram = attr.histogram;
+		this.mostCommonValues = attr.mostCommonValues;
 	}
 	
 	/**
@@ -40,9 +69,34 @@ public class Attribute {
 	/**
 	 * @return the number of distinct values taken by this attribute
 	 */
-	public int getValueCount() {
+	public long getValueCount() {
 		return values;
 	}
+
+	/**
+	 * @return the equi-depth histogram of the values, or null if there is none
+	 */
+	public Histogram getHistogram() {
+		return histogram;
+	}
+
+	/**
+	 * @return the most common values, mapped to the fraction of tuples taking
+	 *         each of them (empty if there are none)
+	 */
+	public Map<String, Double> getMostCommonValues() {
+		return mostCommonValues;
+	}
+
+	/**
+	 * @return a copy of this attribute with a different number of distinct
+	 *         values, but the same histogram and most common values
+	 */
+	public Attribute withValueCount(long values) {
+		Attribute attr = new Attribute(this);
+		attr.values = values;
+		return attr;
+	}
 	
 	
 	@Override
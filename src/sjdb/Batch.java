@@ -0,0 +1,81 @@
+package sjdb;
+
+/**
+ * A batch of tuples for vectorized execution, held by column: one array of
+ * encoded values per attribute. A selection vector lists the rows of the
+ * columns which belong to the batch, so that a select can drop rows without
+ * copying the columns; without one, the first rows of the columns do.
+ * 
+ * The columns are owned by the operator which filled them, and may be
+ * overwritten when it produces its next batch; an operator which keeps
+ * tuples from its input has to copy them.
+ */
+public class Batch {
+	/**
+	 * The number of rows in a full batch
+	 */
+	public static final int SIZE = 1024;
+
+	private final long[][] columns;
+	private final int[] selection;
+	private final int size;
+
+	/**
+	 * Create a batch of the first rows of the columns
+	 * @param columns
+	 * @param size the number of rows
+	 */
+	public Batch(long[][] columns, int size) {
+		this(columns, null, size);
+	}
+
+	/**
+	 * Create a batch of selected rows of the columns
+	 * @param columns
+	 * @param selection the rows in the batch, in ascending order, or null for the first rows
+	 * @param size the number of rows
+	 */
+	public Batch(long[][] columns, int[] selection, int size) {
+		this.columns = columns;
+		this.selection = selection;
+		this.size = size;
+	}
+
+	/**
+	 * @return the number of rows in the batch
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Return the row of the columns which holds the i-th tuple of the batch
+	 * @param i
+	 * @return
+	 */
+	public int row(int i) {
+		return selection == null ? i : selection[i];
+	}
+
+	/**
+	 * @return the columns, including any rows which are not selected
+	 */
+	public long[][] getColumns() {
+		return columns;
+	}
+
+	/**
+	 * @param i the position of the attribute
+	 * @return the column of the attribute
+	 */
+	public long[] getColumn(int i) {
+		return columns[i];
+	}
+
+	/**
+	 * @return the selection vector, or null if the batch holds the first rows of the columns
+	 */
+	public int[] getSelection() {
+		return selection;
+	}
+}
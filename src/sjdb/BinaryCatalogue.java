@@ -0,0 +1,245 @@
+package sjdb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class reads and writes a system catalogue in a compact binary form,
+ * which is memory-mapped when it is read, so that a large catalogue is
+ * loaded without parsing it. CatalogueParser and CatalogueWriter read and
+ * write the same statistics as text, and SJDB CONVERT turns one form into
+ * the other.
+ *
+ * All numbers are big-endian, and positions are from the start of the file:
+ *
+ * header:    int magic "SJDC", int version, int string count,
+ *            int relation count, int position of the string offsets,
+ *            int position of the relation index
+ * relations: for each relation, int name, int attribute count,
+ *            int position of the sorted attribute or -1,
+ *            int position of its attributes, long tuple count
+ * attribute: int name, long value count, int histogram boundary count,
+ *            int most common value count, double boundaries...,
+ *            (int value, double fraction)...
+ * strings:   int offsets, one per string and one past the last, from the
+ *            start of the bytes that follow, and the UTF-8 bytes of the
+ *            strings
+ *
+ * Names and most common values are written once each, in the string table,
+ * and referred to by number. Reading the file only reads the relation
+ * index; the attributes of a relation are read, and their strings decoded,
+ * when the relation is first used, so a query only pays for the relations
+ * it names.
+ */
+public class BinaryCatalogue {
+	static final int MAGIC = 0x534A4443;
+	static final int VERSION = 1;
+	private static final int HEADER_SIZE = 24;
+	private static final int RELATION_SIZE = 24;
+
+	private final ByteBuffer buffer;
+	private final int stringOffsets;
+	private final int stringBytes;
+	// strings decoded so far; racing threads decode equal strings
+	private final String[] strings;
+
+	private BinaryCatalogue(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not a binary catalogue");
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException("Unsupported binary catalogue version " + buffer.getInt(4));
+		}
+		int stringCount = buffer.getInt(8);
+		this.stringOffsets = buffer.getInt(16);
+		this.stringBytes = stringOffsets + 4 * (stringCount + 1);
+		int relations = buffer.getInt(20);
+		if (stringCount < 0 || stringOffsets < HEADER_SIZE || stringBytes > buffer.limit() ||
+				relations < HEADER_SIZE || relations + (long) RELATION_SIZE * buffer.getInt(12) > buffer.limit()) {
+			throw new IOException("Corrupt binary catalogue");
+		}
+		this.strings = new String[stringCount];
+	}
+
+	/**
+	 * Return whether a file holds a binary catalogue
+	 * @param catFilename
+	 * @return
+	 * @throws IOException
+	 */
+	public static boolean isBinary(String catFilename) throws IOException {
+		try (DataInputStream in = new DataInputStream(new FileInputStream(catFilename))) {
+			return in.available() >= 4 && in.readInt() == MAGIC;
+		}
+	}
+
+	/**
+	 * Map a binary catalogue file, and add its relations to a catalogue as
+	 * one new version; their attributes are read when they are first used
+	 * @param catFilename
+	 * @param catalogue
+	 * @throws IOException if the file is not a binary catalogue this version can read
+	 */
+	public static void read(String catFilename, Catalogue catalogue) throws IOException {
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(Paths.get(catFilename), StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		final BinaryCatalogue file = new BinaryCatalogue(buffer);
+
+		int count = buffer.getInt(12);
+		int index = buffer.getInt(20);
+		catalogue.update(cat -> {
+			for (int r = 0; r < count; r++) {
+				final int position = index + r * RELATION_SIZE;
+				cat.addRelation(new NamedRelation(file.string(buffer.getInt(position)), buffer.getLong(position + 16),
+						attributes -> file.readAttributes(position, attributes)));
+			}
+		});
+	}
+
+	/**
+	 * Write every named relation in a catalogue to a binary catalogue file,
+	 * replacing the file only when it is complete
+	 * @param catalogue
+	 * @param catFilename
+	 * @throws IOException
+	 */
+	public static void write(Catalogue catalogue, String catFilename) throws IOException {
+		Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+		ByteArrayOutputStream attributeBytes = new ByteArrayOutputStream();
+		DataOutputStream attributes = new DataOutputStream(attributeBytes);
+		ByteArrayOutputStream relationBytes = new ByteArrayOutputStream();
+		DataOutputStream relations = new DataOutputStream(relationBytes);
+
+		int relationCount = catalogue.getRelations().size();
+		int attributesAt = HEADER_SIZE + relationCount * RELATION_SIZE;
+		for (NamedRelation relation : catalogue.getRelations()) {
+			List<Attribute> attrs = relation.getAttributes();
+			relations.writeInt(intern(strings, relation.toString()));
+			relations.writeInt(attrs.size());
+			relations.writeInt(relation.getSortedOn() == null ? -1 : attrs.indexOf(relation.getSortedOn()));
+			relations.writeInt(attributesAt + attributes.size());
+			relations.writeLong(relation.getTupleCount());
+
+			for (Attribute attribute : attrs) {
+				Histogram histogram = attribute.getHistogram();
+				Map<String, Double> mostCommonValues = attribute.getMostCommonValues();
+				attributes.writeInt(intern(strings, attribute.getName()));
+				attributes.writeLong(attribute.getValueCount());
+				attributes.writeInt(histogram == null ? 0 : histogram.getBucketCount() + 1);
+				attributes.writeInt(mostCommonValues.size());
+				for (int i = 0; histogram != null && i <= histogram.getBucketCount(); i++) {
+					attributes.writeDouble(histogram.getBound(i));
+				}
+				for (Map.Entry<String, Double> entry : mostCommonValues.entrySet()) {
+					attributes.writeInt(intern(strings, entry.getKey()));
+					attributes.writeDouble(entry.getValue());
+				}
+			}
+		}
+
+		ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+		ByteArrayOutputStream fileBytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(fileBytes);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(strings.size());
+		out.writeInt(relationCount);
+		out.writeInt(attributesAt + attributes.size());
+		out.writeInt(HEADER_SIZE);
+		relationBytes.writeTo(out);
+		attributeBytes.writeTo(out);
+		for (String string : strings.keySet()) {
+			out.writeInt(stringBytes.size());
+			stringBytes.write(string.getBytes(StandardCharsets.UTF_8));
+		}
+		out.writeInt(stringBytes.size());
+		stringBytes.writeTo(out);
+
+		Path path = Paths.get(catFilename).toAbsolutePath();
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		try {
+			Files.write(temp, fileBytes.toByteArray());
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * @return the number of a string in the string table, adding it if it is new
+	 */
+	private static int intern(Map<String, Integer> strings, String string) {
+		Integer number = strings.get(string);
+		if (number == null) {
+			number = strings.size();
+			strings.put(string, number);
+		}
+		return number;
+	}
+
+	/**
+	 * Read the attributes of the relation whose index entry is at a position
+	 * @return the position of the sorted attribute, or -1
+	 */
+	private int readAttributes(int relation, List<Attribute> attributes) {
+		int count = buffer.getInt(relation + 4);
+		int position = buffer.getInt(relation + 12);
+		for (int a = 0; a < count; a++) {
+			String name = string(buffer.getInt(position));
+			long values = buffer.getLong(position + 4);
+			int bounds = buffer.getInt(position + 12);
+			int commonValues = buffer.getInt(position + 16);
+			position += 20;
+
+			Histogram histogram = null;
+			if (bounds > 0) {
+				double[] bound = new double[bounds];
+				for (int i = 0; i < bounds; i++, position += 8) {
+					bound[i] = buffer.getDouble(position);
+				}
+				histogram = new Histogram(bound);
+			}
+			Map<String, Double> mostCommonValues = null;
+			if (commonValues > 0) {
+				mostCommonValues = new LinkedHashMap<String, Double>();
+				for (int i = 0; i < commonValues; i++, position += 12) {
+					mostCommonValues.put(string(buffer.getInt(position)), buffer.getDouble(position + 4));
+				}
+			}
+			attributes.add(new Attribute(name, values, histogram, mostCommonValues));
+		}
+		return buffer.getInt(relation + 8);
+	}
+
+	/**
+	 * @return a string of the string table, decoding it when it is first used
+	 */
+	private String string(int number) {
+		String string = strings[number];
+		if (string == null) {
+			int from = buffer.getInt(stringOffsets + 4 * number);
+			byte[] bytes = new byte[buffer.getInt(stringOffsets + 4 * (number + 1)) - from];
+			buffer.get(stringBytes + from, bytes);
+			strings[number] = string = new String(bytes, StandardCharsets.UTF_8);
+		}
+		return string;
+	}
+}
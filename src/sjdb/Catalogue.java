@@ -1,6 +1,13 @@
 package sjdb;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * This class contains the system catalogue for the database; it
@@ -14,20 +21,47 @@ import java.util.HashMap;
  * 
  * Note that any statistical information about named relations or
  * the attributes therein is stored on the relations or attributes,
- * and not in the catalogue.
+ * and not in the catalogue. The catalogue does however keep a version
+ * number, which changes whenever a relation or attribute is (re)created,
+ * so that cached plans can tell when the statistics have changed.
  * 
+ * The directory is copied on write: each change builds a new directory,
+ * with copies of the relations it changes, and publishes it as the next
+ * version, so a published directory and its relations never change.
+ * Readers therefore need no locks, and snapshot() gives them one version
+ * to plan a query against while the statistics are being refreshed. The
+ * changes made within update() are published together, as one version.
+ * Changes made outside update() are gathered into one new directory too,
+ * which is published when the catalogue is next read, so building a
+ * catalogue a relation and an attribute at a time copies nothing, and
+ * publishes the whole catalogue as one version.
+ * 
+ * The index of attributes by name is built from the relations when it is
+ * first used, so that relations loaded lazily from a binary catalogue
+ * (see BinaryCatalogue) are not read until a query needs them.
+ *
  * @author nmg
  *
  */
 public class Catalogue {
 	
-	private HashMap<String, NamedRelation> relations;
-	private HashMap<String, Attribute> attributes;
+	private volatile Directory current;
+	// the directory being built, guarded by this
+	private Change pending;
+	// whether pending holds changes made outside update(), for the next read to publish
+	private volatile boolean unpublished;
+	// whether update() is running, guarded by this
+	private boolean updating;
+	private final boolean snapshot;
 
 
 	public Catalogue() {
-		this.relations = new HashMap<String, NamedRelation>();
-		this.attributes = new HashMap<String, Attribute>();
+		this(new Directory(new LinkedHashMap<String, NamedRelation>(), 0), false);
+	}
+
+	private Catalogue(Directory directory, boolean snapshot) {
+		this.current = directory;
+		this.snapshot = snapshot;
 	}
 	
 	/**
@@ -37,28 +71,125 @@ public class Catalogue {
 	 * @param relName
 	 * @param size
 	 */
-	public NamedRelation createRelation(String relName, int size) {
+	public synchronized NamedRelation createRelation(String relName, long size) {
 		NamedRelation reln = new NamedRelation(relName, size);
-		relations.put(relName, reln);
+		begin().add(reln);
+		changed();
 		return reln;
 	}
+
+	/**
+	 * Add a NamedRelation, such as one whose attributes are loaded lazily,
+	 * to the directory, replacing any relation of the same name.
+	 * 
+	 * @param reln
+	 */
+	synchronized void addRelation(NamedRelation reln) {
+		begin().add(reln);
+		changed();
+	}
 	
 	/**
 	 * Create a new Attribute with the specified name and number of distinct
 	 * values, add it to the directory and associate it with the specified 
-	 * NamedRelation.
+	 * NamedRelation, in place of any attribute of that name it has.
 	 * 
 	 * @param relName
 	 * @param attName
 	 * @param values
 	 * @return
+	 * @throws IllegalArgumentException if there is no relation of that name
 	 */
-	public Attribute createAttribute(String relName, String attName, int values) {
-		Attribute attr = new Attribute(attName, values);
-		attributes.put(attName, attr);
-		relations.get(relName).addAttribute(attr);
+	public Attribute createAttribute(String relName, String attName, long values) {
+		return createAttribute(relName, attName, values, null, null);
+	}
+
+	/**
+	 * Create a new Attribute with the specified name, number of distinct
+	 * values, histogram and most common values, add it to the directory and
+	 * associate it with the specified NamedRelation, in place of any
+	 * attribute of that name it has.
+	 * 
+	 * @param relName
+	 * @param attName
+	 * @param values
+	 * @param histogram equi-depth histogram, or null
+	 * @param mostCommonValues most common values and their fraction of tuples, or null
+	 * @return
+	 * @throws IllegalArgumentException if there is no relation of that name
+	 */
+	public synchronized Attribute createAttribute(String relName, String attName, long values,
+			Histogram histogram, Map<String, Double> mostCommonValues) {
+		Change change = begin();
+		NamedRelation reln = change.relation(relName);
+		Attribute attr = new Attribute(attName, values, histogram, mostCommonValues);
+		reln.putAttribute(attr);
+		change.attributes = null;
+		changed();
 		return attr;
 	}
+
+	/**
+	 * Record that the tuples of a NamedRelation are stored in order of
+	 * one of its attributes.
+	 * 
+	 * @param relName
+	 * @param attName
+	 * @throws IllegalArgumentException if there is no relation of that name
+	 */
+	public synchronized void setSortedOn(String relName, String attName) {
+		NamedRelation reln = begin().relation(relName);
+		int index = reln.getAttributes().indexOf(new Attribute(attName));
+		reln.setSortedOn(index < 0 ? null : reln.getAttributes().get(index));
+		changed();
+	}
+
+	/**
+	 * Make a number of changes to the catalogue, which are published
+	 * together as one new version when they are all made. Until then,
+	 * readers on other threads see the catalogue as it was, and the
+	 * changes themselves see the catalogue with the changes made so far.
+	 * If the changes throw an exception, none of them is published.
+	 *
+	 * @param changes makes the changes, through the methods of the catalogue
+	 */
+	public synchronized void update(Consumer<Catalogue> changes) {
+		if (updating) {
+			changes.accept(this);
+			return;
+		}
+		publish();
+		Change change = begin();
+		updating = true;
+		try {
+			changes.accept(this);
+			current = change.publish(current.version + 1);
+		} finally {
+			pending = null;
+			updating = false;
+		}
+	}
+
+	/**
+	 * Return a read-only catalogue holding the current version of this
+	 * one, which does not see later changes. Taking a snapshot does not
+	 * copy the directory.
+	 *
+	 * @return
+	 */
+	public Catalogue snapshot() {
+		return snapshot ? this : new Catalogue(directory(), true);
+	}
+
+	/**
+	 * Return the version of the catalogue, which changes whenever a
+	 * relation or attribute is created.
+	 * 
+	 * @return
+	 */
+	public long getVersion() {
+		return directory().version;
+	}
 	
 	/**
 	 * Return the NamedRelation with the specified name.
@@ -67,7 +198,7 @@ public class Catalogue {
 	 * @return
 	 */
 	public NamedRelation getRelation(String name) throws DatabaseException {
-		NamedRelation reln = relations.get(name);
+		NamedRelation reln = relations().get(name);
 		
 		if (reln==null) {
 			throw new DatabaseException("Named relation " + name + " not found");
@@ -76,6 +207,16 @@ public class Catalogue {
 		return reln;
 	}
 	
+	/**
+	 * Return the NamedRelations in the directory, in the order in which
+	 * they were first created.
+	 * 
+	 * @return
+	 */
+	public Collection<NamedRelation> getRelations() {
+		return Collections.unmodifiableCollection(relations().values());
+	}
+	
 	/**
 	 * Return the Attribute with the specified name.
 	 * 
@@ -83,7 +224,7 @@ public class Catalogue {
 	 * @return
 	 */
 	public Attribute getAttribute(String name) throws DatabaseException {
-		Attribute attr = attributes.get(name);
+		Attribute attr = attributes().get(name);
 		
 		if (attr==null) {
 			throw new DatabaseException("Attribute " + name + " not found");
@@ -91,4 +232,132 @@ public class Catalogue {
 		
 		return attr;
 	}
+
+	// a thread in update() reads its own changes, and every other thread the published directory
+	private Map<String, NamedRelation> relations() {
+		return updating && Thread.holdsLock(this) ? pending.relations : directory().relations;
+	}
+
+	private Map<String, Attribute> attributes() {
+		return updating && Thread.holdsLock(this) ? pending.attributes() : directory().attributes();
+	}
+
+	// publishes the changes made outside update() first, if there are any
+	private Directory directory() {
+		if (unpublished) {
+			publish();
+		}
+		return current;
+	}
+
+	private synchronized void publish() {
+		if (unpublished) {
+			current = pending.publish(current.version + 1);
+			pending = null;
+			unpublished = false;
+		}
+	}
+
+	// the last attribute of each name, in the order of the relations
+	private static Map<String, Attribute> index(Collection<NamedRelation> relations) {
+		Map<String, Attribute> attributes = new HashMap<String, Attribute>();
+		for (NamedRelation reln : relations) {
+			for (Attribute attr : reln.getAttributes()) {
+				attributes.put(attr.getName(), attr);
+			}
+		}
+		return Collections.unmodifiableMap(attributes);
+	}
+
+	private Change begin() {
+		if (snapshot) {
+			throw new UnsupportedOperationException("A catalogue snapshot cannot be changed");
+		}
+		if (pending == null) {
+			pending = new Change(current);
+		}
+		return pending;
+	}
+
+	private void changed() {
+		if (!updating) {
+			unpublished = true;
+		}
+	}
+
+	/**
+	 * A published version of the directory, which is never changed
+	 */
+	private static class Directory {
+		private final Map<String, NamedRelation> relations;
+		private final long version;
+		// built when first used; racing threads build equal indexes
+		private volatile Map<String, Attribute> attributes;
+
+		private Directory(Map<String, NamedRelation> relations, long version) {
+			this.relations = relations;
+			this.version = version;
+		}
+
+		private Map<String, Attribute> attributes() {
+			Map<String, Attribute> index = attributes;
+			if (index == null) {
+				attributes = index = index(relations.values());
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * A copy of the directory being changed, which owns the relations it has
+	 * created or copied, and may change them until it is published
+	 */
+	private static class Change {
+		private final LinkedHashMap<String, NamedRelation> relations;
+		private final Set<NamedRelation> owned = Collections.newSetFromMap(new IdentityHashMap<NamedRelation, Boolean>());
+		// the index of the changes so far, or null when it is out of date
+		private Map<String, Attribute> attributes;
+
+		private Change(Directory base) {
+			this.relations = new LinkedHashMap<String, NamedRelation>(base.relations);
+		}
+
+		private Map<String, Attribute> attributes() {
+			if (attributes == null) {
+				attributes = index(relations.values());
+			}
+			return attributes;
+		}
+
+		private void add(NamedRelation reln) {
+			relations.put(reln.toString(), reln);
+			owned.add(reln);
+			attributes = null;
+		}
+
+		/**
+		 * Return the relation with the given name, copying it first if it
+		 * belongs to a published directory
+		 */
+		private NamedRelation relation(String relName) {
+			NamedRelation reln = relations.get(relName);
+			if (reln == null) {
+				throw new IllegalArgumentException("Named relation " + relName + " not found");
+			}
+			if (!owned.contains(reln)) {
+				reln = reln.copy();
+				relations.put(relName, reln);
+				owned.add(reln);
+			}
+			return reln;
+		}
+
+		private Directory publish(long version) {
+			for (NamedRelation reln : owned) {
+				reln.freeze();
+			}
+			owned.clear();
+			return new Directory(Collections.unmodifiableMap(relations), version);
+		}
+	}
 }
@@ -1,5 +1,7 @@
 package sjdb;
 import java.io.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * This class parses a serialised system catalogue, and uses the
@@ -10,11 +12,25 @@ import java.io.*;
  * 
  * <relation name>:<tuple count>:<attr name>,<value count>:<attr name>,<value count>
  * 
+ * where each attribute may be followed by optional statistics:
+ * 
+ * <attr name>,<value count>,mcv=<value>@<fraction>/<value>@<fraction>,hist=<b0>/<b1>/.../<bk>
+ * 
+ * mcv lists the most common values with the fraction of tuples taking each
+ * of them (a value may write a character as %XX, as CatalogueWriter does
+ * for the separators), and hist gives the bucket boundaries of an equi-depth histogram.
+ * An attribute without a histogram may give its smallest and largest values
+ * instead, as min=<value>,max=<value>, which are read as a single bucket.
+ * An attribute marked with the flag sorted is the one the tuples of the
+ * relation are stored in order of.
+ * 
  * @author nmg
  */
 public class CatalogueParser {
 	private BufferedReader read;
 	private Catalogue catalogue;
+	// why the file could not be opened, if it could not
+	private IOException opening;
 
 	/**
 	 * Create a parser that reads from the file of the given name
@@ -25,26 +41,45 @@ public class CatalogueParser {
 		this.catalogue = catalogue;
 		try {
 			this.read = new BufferedReader(new FileReader(catFilename));
-		} catch (Exception e) {
+		} catch (IOException e) {
 			System.err.println(e.toString());
+			this.opening = e;
 		}
 	}
 	
+	/**
+	 * Parse the whole file, which is published as one version of the
+	 * catalogue. If any line cannot be read, nothing is published.
+	 * 
+	 * @throws IllegalArgumentException if a line is malformed, giving its number
+	 * @throws UncheckedIOException if the file cannot be read
+	 */
 	public void parse() {
-		String line;
+		if (opening != null) {
+			throw new UncheckedIOException(opening);
+		}
+		catalogue.update(cat -> {
+			String line;
+			int lineNumber = 0;
 
-		try {
-			while ((line = this.read.readLine()) != null) {
-				parseRelation(line.split(":", 0));
+			try {
+				while ((line = this.read.readLine()) != null) {
+					lineNumber++;
+					try {
+						parseRelation(line.split(":", 0));
+					} catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+						throw new IllegalArgumentException("Line " + lineNumber + " of the catalogue: " + e.getMessage(), e);
+					}
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
 			}
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
+		});
 	}
 	
 	private void parseRelation(String[] parts) {
 		String reln = parts[0];
-		int size = Integer.decode(parts[1]).intValue();
+		long size = Long.decode(parts[1]).longValue();
 		
 		catalogue.createRelation(reln, size);
 		
@@ -55,8 +90,66 @@ public class CatalogueParser {
 
 	private void parseAttribute(String reln, String[] parts) {
 		String attr = parts[0];
-		int values = Integer.decode(parts[1]).intValue();
+		long values = Long.decode(parts[1]).longValue();
+		Histogram histogram = null;
+		Map<String, Double> mostCommonValues = null;
+		String min = null;
+		String max = null;
+		boolean sorted = false;
+		
+		for (int i = 2; i < parts.length; i++) {
+			if (parts[i].startsWith("hist=")) {
+				histogram = Histogram.parse(parts[i].substring(5));
+			} else if (parts[i].startsWith("mcv=")) {
+				mostCommonValues = parseMostCommonValues(attr, parts[i].substring(4));
+			} else if (parts[i].startsWith("min=")) {
+				min = parts[i].substring(4);
+			} else if (parts[i].startsWith("max=")) {
+				max = parts[i].substring(4);
+			} else if (parts[i].equals("sorted")) {
+				sorted = true;
+			} else {
+				throw new IllegalArgumentException("Unknown statistics " + parts[i] + " on attribute " + attr);
+			}
+		}
+		if (histogram == null && min != null && max != null) {
+			histogram = Histogram.parse(min + "/" + max);
+		}
 		
-		catalogue.createAttribute(reln, attr, values);
+		catalogue.createAttribute(reln, attr, values, histogram, mostCommonValues);
+		if (sorted) {
+			catalogue.setSortedOn(reln, attr);
+		}
+	}
+
+	private Map<String, Double> parseMostCommonValues(String attr, String text) {
+		Map<String, Double> mostCommonValues = new LinkedHashMap<String, Double>();
+		
+		for (String entry : text.split("/")) {
+			int at = entry.lastIndexOf('@');
+			if (at < 0) {
+				throw new IllegalArgumentException("Most common value " + entry + " on attribute " + attr + " has no @<fraction>");
+			}
+			mostCommonValues.put(unescape(entry.substring(0, at)), Double.valueOf(entry.substring(at + 1)));
+		}
+		return mostCommonValues;
+	}
+
+	/**
+	 * @return the value, with each %XX written by CatalogueWriter read as its character
+	 */
+	private static String unescape(String value) {
+		StringBuilder ret = new StringBuilder();
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '%' && i + 2 < value.length() &&
+					Character.digit(value.charAt(i + 1), 16) >= 0 && Character.digit(value.charAt(i + 2), 16) >= 0) {
+				ret.append((char) Integer.parseInt(value.substring(i + 1, i + 3), 16));
+				i += 2;
+			} else {
+				ret.append(c);
+			}
+		}
+		return ret.toString();
 	}
 }
@@ -0,0 +1,102 @@
+package sjdb;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * This class writes a system catalogue out in the serialised form read by
+ * CatalogueParser, one line per named relation:
+ *
+ * <relation name>:<tuple count>:<attr name>,<value count>[,mcv=...][,hist=...][,sorted]:...
+ *
+ * so that statistics gathered by the Analyzer can be kept with the data.
+ * A most common value holding one of the separators , : / @ (or % or a
+ * line break) has it written as % and its two hex digits, which
+ * CatalogueParser reads back.
+ */
+public class CatalogueWriter {
+	// the characters which cannot appear as they are in a most common value
+	private static final String ESCAPED = "%,:/@\n\r";
+
+	private final Writer write;
+
+	/**
+	 * Create a writer that writes to the file of the given name
+	 * @param catFilename
+	 * @throws IOException
+	 */
+	public CatalogueWriter(String catFilename) throws IOException {
+		this(new FileWriter(catFilename));
+	}
+
+	/**
+	 * @param write
+	 */
+	public CatalogueWriter(Writer write) {
+		this.write = write;
+	}
+
+	/**
+	 * Write every named relation in the catalogue, in the order in which they
+	 * were created, and close the output
+	 * @param catalogue
+	 * @throws IOException
+	 */
+	public void write(Catalogue catalogue) throws IOException {
+		try (BufferedWriter out = new BufferedWriter(write)) {
+			for (NamedRelation relation : catalogue.getRelations()) {
+				out.write(render(relation));
+				out.newLine();
+			}
+		}
+	}
+
+	/**
+	 * Render a named relation as a line of the catalogue file
+	 * @param relation
+	 * @return
+	 */
+	public static String render(NamedRelation relation) {
+		StringBuilder ret = new StringBuilder();
+		ret.append(relation).append(':').append(relation.getTupleCount());
+		for (Attribute attribute : relation.getAttributes()) {
+			ret.append(':').append(attribute.getName()).append(',').append(attribute.getValueCount());
+
+			Map<String, Double> mostCommonValues = attribute.getMostCommonValues();
+			if (!mostCommonValues.isEmpty()) {
+				ret.append(",mcv=");
+				String separator = "";
+				for (Map.Entry<String, Double> entry : mostCommonValues.entrySet()) {
+					ret.append(separator).append(escape(entry.getKey())).append('@').append(entry.getValue());
+					separator = "/";
+				}
+			}
+			if (attribute.getHistogram() != null) {
+				ret.append(",hist=").append(attribute.getHistogram().render());
+			}
+			if (attribute.equals(relation.getSortedOn())) {
+				ret.append(",sorted");
+			}
+		}
+		return ret.toString();
+	}
+
+	/**
+	 * @return the value, with the separators of the catalogue file written as %XX
+	 */
+	static String escape(String value) {
+		StringBuilder ret = new StringBuilder();
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (ESCAPED.indexOf(c) >= 0) {
+				ret.append('%').append(String.format("%02X", (int) c));
+			} else {
+				ret.append(c);
+			}
+		}
+		return ret.toString();
+	}
+}
@@ -0,0 +1,155 @@
+package sjdb;
+
+import java.util.Arrays;
+
+/**
+ * A growable set of columns, into which an operator copies the tuples it
+ * has to keep from its input (the inner side of a join, say).
+ */
+class ColumnBuffer {
+	private final long[][] columns;
+	private int size;
+
+	/**
+	 * @param width the number of attributes
+	 */
+	ColumnBuffer(int width) {
+		this.columns = new long[width][Batch.SIZE];
+	}
+
+	/**
+	 * Copy the tuples of a batch to the end of the buffer
+	 * @param batch
+	 */
+	void add(Batch batch) {
+		grow(size + batch.size());
+		for (int c = 0; c < columns.length; c++) {
+			long[] from = batch.getColumn(c);
+			long[] to = columns[c];
+			for (int i = 0; i < batch.size(); i++) {
+				to[size + i] = from[batch.row(i)];
+			}
+		}
+		size += batch.size();
+	}
+
+	/**
+	 * Copy a tuple to the end of the buffer
+	 * @param tuple
+	 */
+	void add(long[] tuple) {
+		grow(size + 1);
+		for (int c = 0; c < columns.length; c++) {
+			columns[c][size] = tuple[c];
+		}
+		size++;
+	}
+
+	private void grow(int capacity) {
+		for (int c = 0; c < columns.length; c++) {
+			if (columns[c].length < capacity) {
+				columns[c] = Arrays.copyOf(columns[c], Math.max(capacity, columns[c].length * 2));
+			}
+		}
+	}
+
+	/**
+	 * @param c the position of the attribute
+	 * @return the column, of which the first size() rows hold tuples
+	 */
+	long[] getColumn(int c) {
+		return columns[c];
+	}
+
+	/**
+	 * @return the columns, of which the first size() rows hold tuples
+	 */
+	long[][] getColumns() {
+		return columns;
+	}
+
+	/**
+	 * @return the number of tuples in the buffer
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Return the rows of the buffer in ascending order of the (encoded) values
+	 * of a column; rows with equal values keep their order
+	 * @param c the position of the attribute
+	 * @return the rows, in order
+	 */
+	int[] sortedRows(int c) {
+		return sortedRows(new int[] {c});
+	}
+
+	/**
+	 * Return the rows of the buffer in ascending order of the (encoded) values
+	 * of some columns, compared in turn; rows with equal values keep their order
+	 * @param keys the positions of the attributes
+	 * @return the rows, in order
+	 */
+	int[] sortedRows(int[] keys) {
+		int[] rows = new int[size];
+		for (int i = 0; i < size; i++) {
+			rows[i] = i;
+		}
+
+		// bottom-up merge sort of the rows by key
+		int[] from = rows;
+		int[] to = new int[size];
+		for (int width = 1; width < size; width *= 2) {
+			for (int low = 0; low < size; low += 2 * width) {
+				int middle = Math.min(low + width, size);
+				int high = Math.min(low + 2 * width, size);
+				int i = low, j = middle, k = low;
+				while (i < middle && j < high) {
+					to[k++] = compare(keys, from[j], from[i]) < 0 ? from[j++] : from[i++];
+				}
+				while (i < middle) {
+					to[k++] = from[i++];
+				}
+				while (j < high) {
+					to[k++] = from[j++];
+				}
+			}
+			int[] swap = from;
+			from = to;
+			to = swap;
+		}
+		return from;
+	}
+
+	/**
+	 * Compare two rows of the buffer on some columns
+	 */
+	int compare(int[] keys, int a, int b) {
+		for (int key : keys) {
+			int result = Long.compare(columns[key][a], columns[key][b]);
+			if (result != 0) {
+				return result;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @return the number of bytes held by the columns
+	 */
+	long bytes() {
+		long bytes = 0;
+		for (long[] column : columns) {
+			bytes += 8L * column.length;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Drop the tuples, keeping the columns for reuse
+	 */
+	void clear() {
+		size = 0;
+	}
+}
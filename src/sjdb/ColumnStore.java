@@ -0,0 +1,557 @@
+package sjdb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Storage which keeps the tuples of named relations in columnar files, one
+ * directory per relation and one file per attribute:
+ *
+ * <directory>/dictionary               the strings of the dictionary of the store
+ * <directory>/<relation>/schema        the names of the attributes, one per line
+ * <directory>/<relation>/<attr>.col    the values of the attribute
+ *
+ * A column file holds one long per tuple, in the order of the tuples, as
+ * encoded by the dictionary of the store; strings are thus stored as
+ * fixed-width codes. The values are followed by a footer of six longs: the
+ * number of tuples, the smallest and largest numbers, the number of distinct
+ * values (counted with a HyperLogLog sketch, so that relations of any size
+ * can be written), flags (whether the values are in ascending order, and whether
+ * there are strings among them) and a magic number. The longs are
+ * little-endian, so that on most machines they need no byte swapping.
+ *
+ * Scans map the column files read-only, a window at a time, and read the
+ * values straight out of the mapped pages into the columns of a batch. A
+ * range of the tuples is read by mapping the files from its first tuple.
+ *
+ * The statistics in the footers can be put into a Catalogue with
+ * describe(), in place of a hand-written catalogue file.
+ *
+ * I/O errors are thrown as UncheckedIOException, as physical operators
+ * do not throw checked exceptions.
+ */
+public class ColumnStore implements Storage {
+	// SJDBCOL2; version 1 files encoded dates as bare day numbers
+	private static final long MAGIC = 0x534a4442434f4c32L;
+	private static final int FOOTER_SIZE = 6 * 8;
+	private static final long SORTED = 1;
+	private static final long STRINGS = 2;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	// values mapped at a time for each column
+	private static final long WINDOW = 16 * 1024 * 1024;
+
+	private final Path directory;
+	private final Dictionary dictionary = new Dictionary();
+
+	/**
+	 * Open the store in a directory, which is created if it does not exist
+	 * @param directory
+	 */
+	public ColumnStore(String directory) {
+		this(Paths.get(directory));
+	}
+
+	/**
+	 * Open the store in a directory, which is created if it does not exist
+	 * @param directory
+	 */
+	public ColumnStore(Path directory) {
+		this.directory = directory;
+		Path file = directory.resolve("dictionary");
+		try {
+			Files.createDirectories(directory);
+			if (Files.exists(file)) {
+				try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+					int count = in.readInt();
+					for (int i = 0; i < count; i++) {
+						dictionary.encode(in.readUTF());
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public Dictionary getDictionary() {
+		return dictionary;
+	}
+
+	public TupleCursor open(NamedRelation relation) {
+		return new Cursor(relation, 0, Long.MAX_VALUE);
+	}
+
+	public TupleCursor open(NamedRelation relation, long from, long to) {
+		return new Cursor(relation, from, to);
+	}
+
+	public long getTupleCount(NamedRelation relation) {
+		List<Attribute> attributes = relation.getAttributes();
+		return attributes.isEmpty() ? 0 : footer(column(relation.toString(), attributes.get(0).getName()))[0];
+	}
+
+	/**
+	 * @return the names of the stored relations, in alphabetical order
+	 */
+	public List<String> getRelationNames() {
+		List<String> names = new ArrayList<String>();
+		try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+			for (Path entry : entries) {
+				if (Files.exists(entry.resolve("schema"))) {
+					names.add(entry.getFileName().toString());
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		Collections.sort(names);
+		return names;
+	}
+
+	/**
+	 * @param relName
+	 * @return the names of the attributes of a stored relation, in order
+	 */
+	public List<String> getAttributeNames(String relName) {
+		try {
+			List<String> names = new ArrayList<String>();
+			for (String line : Files.readAllLines(directory.resolve(relName).resolve("schema"), StandardCharsets.UTF_8)) {
+				if (line.length() > 0) {
+					names.add(line);
+				}
+			}
+			return names;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Return a stored relation with its tuple count and attributes, but no
+	 * statistics, outside any catalogue; for reading it before it has been
+	 * described or analysed
+	 * @param relName
+	 * @return
+	 */
+	public NamedRelation getRelation(String relName) {
+		List<String> attNames = getAttributeNames(relName);
+		long tuples = attNames.isEmpty() ? 0 : footer(column(relName, attNames.get(0)))[0];
+		NamedRelation relation = new NamedRelation(relName, tuples);
+		for (String attName : attNames) {
+			relation.addAttribute(new Attribute(attName));
+		}
+		return relation;
+	}
+
+	/**
+	 * Create the stored relations and their attributes in a catalogue, with
+	 * the statistics kept in the footers of the column files: the tuple count,
+	 * the number of distinct values of each attribute, and its smallest and
+	 * largest values (as a one-bucket histogram) if all its values are numbers
+	 * or dates. Of the attributes whose values are in ascending order, the
+	 * one with the most distinct values is recorded as the attribute the
+	 * relation is stored in order of.
+	 *
+	 * @param catalogue
+	 */
+	public void describe(Catalogue catalogue) {
+		for (String relName : getRelationNames()) {
+			List<String> attNames = getAttributeNames(relName);
+			long[][] footers = new long[attNames.size()][];
+			for (int i = 0; i < footers.length; i++) {
+				footers[i] = footer(column(relName, attNames.get(i)));
+				if (footers[i][0] != footers[0][0]) {
+					throw new UncheckedIOException(new IOException("Column " + attNames.get(i) + " of " + relName +
+							" has " + footers[i][0] + " tuples rather than " + footers[0][0]));
+				}
+			}
+
+			// each relation is published whole, as one version of the catalogue
+			catalogue.update(cat -> {
+				cat.createRelation(relName, footers.length > 0 ? footers[0][0] : 0);
+				String sortedOn = null;
+				long sortedValues = 1;
+				for (int i = 0; i < footers.length; i++) {
+					long[] footer = footers[i];
+					Histogram histogram = null;
+					if ((footer[4] & STRINGS) == 0 && footer[1] != Dictionary.MISSING) {
+						histogram = new Histogram(new double[] {Dictionary.toNumber(footer[1]), Dictionary.toNumber(footer[2])});
+					}
+					cat.createAttribute(relName, attNames.get(i), footer[3], histogram, null);
+					if ((footer[4] & SORTED) != 0 && footer[3] > sortedValues) {
+						sortedOn = attNames.get(i);
+						sortedValues = footer[3];
+					}
+				}
+				if (sortedOn != null) {
+					cat.setSortedOn(relName, sortedOn);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Store a relation given as delimited text: a header line with the names
+	 * of the attributes, then a line for each tuple with its values separated
+	 * by commas; an empty value is missing. A stored relation of the same
+	 * name is replaced.
+	 *
+	 * @param relName
+	 * @param text
+	 */
+	public void load(String relName, Reader text) {
+		try {
+			BufferedReader in = new BufferedReader(text);
+			String header = in.readLine();
+			if (header == null) {
+				throw new IOException("No header line for " + relName);
+			}
+			List<String> attNames = new ArrayList<String>();
+			for (String name : header.split(",", -1)) {
+				attNames.add(name.trim());
+			}
+
+			ColumnWriter[] writers = create(relName, attNames);
+			try {
+				String line;
+				while ((line = in.readLine()) != null) {
+					if (line.trim().length() == 0) {
+						continue;
+					}
+					String[] values = line.split(",", -1);
+					if (values.length != writers.length) {
+						throw new IOException("Tuple of " + relName + " has " + values.length +
+								" values rather than " + writers.length + ": " + line);
+					}
+					for (int c = 0; c < writers.length; c++) {
+						String value = values[c].trim();
+						writers[c].write(value.length() == 0 ? Dictionary.MISSING : dictionary.encode(value));
+					}
+				}
+			} finally {
+				close(writers);
+			}
+			saveDictionary();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Store the tuples of a named relation read from other storage, such as
+	 * GeneratedStorage. A stored relation of the same name is replaced.
+	 *
+	 * @param relation
+	 * @param source
+	 */
+	public void copy(NamedRelation relation, Storage source) {
+		List<String> attNames = new ArrayList<String>();
+		for (Attribute attribute : relation.getAttributes()) {
+			attNames.add(attribute.getName());
+		}
+		Dictionary from = source.getDictionary();
+		long[][] columns = VectorOperator.columns(attNames.size());
+
+		try {
+			ColumnWriter[] writers = create(relation.toString(), attNames);
+			try (TupleCursor cursor = source.open(relation)) {
+				int size;
+				while ((size = cursor.fill(columns, Batch.SIZE)) > 0) {
+					for (int c = 0; c < writers.length; c++) {
+						for (int i = 0; i < size; i++) {
+							long value = columns[c][i];
+							// string codes belong to the dictionary of the source
+							if (from != dictionary && Dictionary.isCode(value)) {
+								value = dictionary.encode(from.decode(value));
+							}
+							writers[c].write(value);
+						}
+					}
+				}
+			} finally {
+				close(writers);
+			}
+			saveDictionary();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Replace the files of a relation with an empty schema and columns
+	 */
+	private ColumnWriter[] create(String relName, List<String> attNames) throws IOException {
+		if (new HashSet<String>(attNames).size() != attNames.size()) {
+			throw new IOException("Attribute names of " + relName + " are not unique: " + attNames);
+		}
+		Path dir = directory.resolve(relName);
+		if (Files.isDirectory(dir)) {
+			try (DirectoryStream<Path> old = Files.newDirectoryStream(dir, "*.col")) {
+				for (Path file : old) {
+					Files.delete(file);
+				}
+			}
+		}
+		Files.createDirectories(dir);
+		Files.write(dir.resolve("schema"), attNames, StandardCharsets.UTF_8);
+
+		ColumnWriter[] writers = new ColumnWriter[attNames.size()];
+		try {
+			for (int c = 0; c < writers.length; c++) {
+				writers[c] = new ColumnWriter(column(relName, attNames.get(c)));
+			}
+		} catch (IOException e) {
+			close(writers);
+			throw e;
+		}
+		return writers;
+	}
+
+	private static void close(ColumnWriter[] writers) throws IOException {
+		IOException failure = null;
+		for (ColumnWriter writer : writers) {
+			try {
+				if (writer != null) {
+					writer.close();
+				}
+			} catch (IOException e) {
+				failure = failure == null ? e : failure;
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private void saveDictionary() throws IOException {
+		Path file = directory.resolve("dictionary");
+		Path temporary = directory.resolve("dictionary.tmp");
+		List<String> strings = dictionary.getStrings();
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+			out.writeInt(strings.size());
+			for (String string : strings) {
+				out.writeUTF(string);
+			}
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private Path column(String relName, String attName) {
+		return directory.resolve(relName).resolve(attName + ".col");
+	}
+
+	/**
+	 * Read the footer of a column file: tuples, min, max, distinct values and flags
+	 */
+	private static long[] footer(Path file) {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return footer(channel, file);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static long[] footer(FileChannel channel, Path file) throws IOException {
+		long size = channel.size();
+		if (size < FOOTER_SIZE) {
+			throw new IOException(file + " is not a column file of this version");
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(FOOTER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, size - FOOTER_SIZE + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of column file " + file);
+			}
+		}
+		buffer.flip();
+		long[] footer = new long[5];
+		for (int i = 0; i < footer.length; i++) {
+			footer[i] = buffer.getLong();
+		}
+		if (buffer.getLong() != MAGIC || size != 8 * footer[0] + FOOTER_SIZE) {
+			throw new IOException(file + " is not a column file of this version");
+		}
+		return footer;
+	}
+
+	/**
+	 * Appends the values of a column to its file, and keeps its statistics
+	 */
+	private static class ColumnWriter {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		private final HyperLogLog values = new HyperLogLog();
+		private long rows;
+		private long min = Dictionary.MISSING;
+		private long max = Dictionary.MISSING;
+		private long previous = Dictionary.MISSING;
+		private boolean sorted = true;
+		private boolean strings;
+
+		private ColumnWriter(Path file) throws IOException {
+			this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+					StandardOpenOption.WRITE);
+		}
+
+		private void write(long value) throws IOException {
+			if (!buffer.hasRemaining()) {
+				flush();
+			}
+			buffer.putLong(value);
+
+			if (value < previous) {
+				sorted = false;
+			}
+			previous = value;
+			if (value != Dictionary.MISSING) {
+				values.add(value);
+				if (Dictionary.isCode(value)) {
+					strings = true;
+				} else {
+					min = min == Dictionary.MISSING ? value : Math.min(min, value);
+					max = max == Dictionary.MISSING ? value : Math.max(max, value);
+				}
+			}
+			rows++;
+		}
+
+		private void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+
+		private void close() throws IOException {
+			try {
+				for (long value : new long[] {rows, min, max, values.estimate(), (sorted ? SORTED : 0) | (strings ? STRINGS : 0), MAGIC}) {
+					if (!buffer.hasRemaining()) {
+						flush();
+					}
+					buffer.putLong(value);
+				}
+				flush();
+			} finally {
+				channel.close();
+			}
+		}
+	}
+
+	/**
+	 * Reads the columns of a relation from memory-mapped windows of their files
+	 */
+	private class Cursor implements TupleCursor {
+		private final FileChannel[] channels;
+		private final LongBuffer[] windows;
+		private final long tuples;
+		private long row;
+		// the row after the last one in the current windows
+		private long mapped;
+
+		private Cursor(NamedRelation relation, long from, long to) {
+			List<Attribute> attributes = relation.getAttributes();
+			this.channels = new FileChannel[attributes.size()];
+			this.windows = new LongBuffer[attributes.size()];
+			long count = 0;
+			try {
+				for (int c = 0; c < channels.length; c++) {
+					Path file = column(relation.toString(), attributes.get(c).getName());
+					channels[c] = FileChannel.open(file, StandardOpenOption.READ);
+					long rows = footer(channels[c], file)[0];
+					if (c > 0 && rows != count) {
+						throw new IOException("Column " + attributes.get(c) + " of " + relation + " has " + rows +
+								" tuples rather than " + count);
+					}
+					count = rows;
+				}
+			} catch (IOException e) {
+				close();
+				throw new UncheckedIOException(e);
+			}
+			this.tuples = Math.min(count, to);
+			this.row = Math.min(from, tuples);
+			this.mapped = row;
+		}
+
+		public long[] next() {
+			if (row >= tuples) {
+				return null;
+			}
+			if (row == mapped) {
+				map();
+			}
+			long[] tuple = new long[windows.length];
+			for (int c = 0; c < windows.length; c++) {
+				tuple[c] = windows[c].get();
+			}
+			row++;
+			return tuple;
+		}
+
+		public int fill(long[][] columns, int capacity) {
+			int size = 0;
+			while (size < capacity && row < tuples) {
+				if (row == mapped) {
+					map();
+				}
+				int n = (int) Math.min(capacity - size, mapped - row);
+				for (int c = 0; c < windows.length; c++) {
+					windows[c].get(columns[c], size, n);
+				}
+				size += n;
+				row += n;
+			}
+			return size;
+		}
+
+		private void map() {
+			long n = Math.min(WINDOW, tuples - row);
+			try {
+				for (int c = 0; c < channels.length; c++) {
+					windows[c] = channels[c].map(FileChannel.MapMode.READ_ONLY, 8 * row, 8 * n)
+							.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			mapped = row + n;
+		}
+
+		public void close() {
+			// the mapped windows stay valid once the channels are closed
+			for (FileChannel channel : channels) {
+				try {
+					if (channel != null) {
+						channel.close();
+					}
+				} catch (IOException e) {
+					// nothing more to read
+				}
+			}
+			Arrays.fill(windows, null);
+			row = tuples;
+		}
+	}
+}
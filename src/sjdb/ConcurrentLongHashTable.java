@@ -0,0 +1,76 @@
+package sjdb;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A hash table from long keys to the rows which hold them, which several
+ * threads can fill at once without locks, for the build side of a parallel
+ * hash join.
+ *
+ * The keys are not copied: the table indexes a column of keys, and each
+ * slot heads a chain of the rows whose keys hash to it, linked through an
+ * array indexed by row. A row is added by pointing it at the head of its
+ * chain and swapping it in with a compare-and-set, so threads adding rows
+ * to the same slot only retry, and never wait. Lookups must not start
+ * until every row has been added.
+ *
+ * Rows are stored plus one, so that the zeroed arrays are empty chains.
+ */
+class ConcurrentLongHashTable {
+	private final long[] keys;
+	private final AtomicIntegerArray heads;
+	private final int[] next;
+	private final int mask;
+
+	/**
+	 * @param keys the keys of the rows, which must not change while the table is used
+	 */
+	ConcurrentLongHashTable(long[] keys) {
+		int capacity = Integer.highestOneBit(Math.max(keys.length, 8) * 2 - 1) << 1;
+		this.keys = keys;
+		this.heads = new AtomicIntegerArray(capacity);
+		this.next = new int[keys.length];
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * Add a row, unless its key is missing; rows may be added from any thread
+	 * @param row the row, numbered from 0
+	 */
+	void put(int row) {
+		long key = keys[row];
+		if (key == Dictionary.MISSING) {
+			return;
+		}
+		int slot = LongHashTable.hash(key) & mask;
+		int head;
+		do {
+			head = heads.get(slot);
+			next[row] = head;
+		} while (!heads.compareAndSet(slot, head, row + 1));
+	}
+
+	/**
+	 * @param key
+	 * @return a row with the given key, or -1 if there is none
+	 */
+	int first(long key) {
+		return find(heads.get(LongHashTable.hash(key) & mask), key);
+	}
+
+	/**
+	 * @param row a row returned by first() or next()
+	 * @return another row with the same key, or -1 if there are no more
+	 */
+	int next(int row) {
+		return find(next[row], keys[row]);
+	}
+
+	// the first row with the key in the chain starting at the given entry
+	private int find(int entry, long key) {
+		while (entry != 0 && keys[entry - 1] != key) {
+			entry = next[entry - 1];
+		}
+		return entry - 1;
+	}
+}
@@ -0,0 +1,151 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * A predicate compiled against the attributes of the tuples it is tested
+ * on: the attributes are replaced by their positions, and the values by
+ * their encoding in the dictionary of the storage.
+ *
+ * The values are looked up, and never added to the dictionary. A string
+ * the dictionary does not hold is in no tuple, so it matches no tuple by
+ * = or IN, and is compared as a string by the other comparisons.
+ */
+class Condition {
+	private final Predicate predicate;
+	private final Predicate.Comparison comparison;
+	private final int left;
+	private final int right;
+	private final long[] values;
+	private final List<String> literals;
+	private final Dictionary dictionary;
+
+	/**
+	 * @param predicate the predicate
+	 * @param attributes the attributes of the tuples the predicate is tested on
+	 * @param dictionary the dictionary in which the tuples are encoded
+	 */
+	Condition(Predicate predicate, List<Attribute> attributes, Dictionary dictionary) {
+		this.predicate = predicate;
+		this.comparison = predicate.getComparison();
+		this.dictionary = dictionary;
+		this.left = position(attributes, predicate.getLeftAttribute());
+
+		if (predicate.comparesValue()) {
+			this.literals = predicate.getRightValues();
+			this.right = -1;
+			this.values = new long[literals.size()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = dictionary.lookup(literals.get(i));
+			}
+		} else {
+			this.right = position(attributes, predicate.getRightAttribute());
+			this.values = null;
+			this.literals = null;
+		}
+	}
+
+	/**
+	 * Return the position of an attribute in a list of attributes
+	 * @param attributes
+	 * @param attribute
+	 * @return
+	 */
+	static int position(List<Attribute> attributes, Attribute attribute) {
+		int position = attributes.indexOf(attribute);
+		if (position < 0) {
+			throw new IllegalArgumentException("Attribute " + attribute + " not found in " + attributes);
+		}
+		return position;
+	}
+
+	/**
+	 * @return the position of the left attribute
+	 */
+	int getLeft() {
+		return left;
+	}
+
+	/**
+	 * @return the position of the right attribute, or -1 if the predicate compares with values
+	 */
+	int getRight() {
+		return right;
+	}
+
+	/**
+	 * Test the predicate on a tuple
+	 * @param tuple
+	 * @return
+	 */
+	boolean matches(long[] tuple) {
+		if (right >= 0) {
+			return tuple[left] == tuple[right] && tuple[left] != Dictionary.MISSING;
+		}
+		return matches(tuple[left]);
+	}
+
+	/**
+	 * Test the predicate on the concatenation of two tuples, without building it
+	 * @param left the left tuple
+	 * @param right the right tuple
+	 * @return
+	 */
+	boolean matches(long[] left, long[] right) {
+		long l = left.length > this.left ? left[this.left] : right[this.left - left.length];
+		if (this.right >= 0) {
+			long r = left.length > this.right ? left[this.right] : right[this.right - left.length];
+			return l == r && l != Dictionary.MISSING;
+		}
+		return matches(l);
+	}
+
+	/**
+	 * Test a predicate which compares with values on the value of its attribute
+	 * @param value
+	 * @return
+	 */
+	boolean matches(long value) {
+		if (value == Dictionary.MISSING) {
+			return false;
+		}
+		switch (comparison) {
+			case EQ:
+				return value == values[0];
+			case LT:
+				return compare(value, 0) < 0;
+			case LE:
+				return compare(value, 0) <= 0;
+			case GT:
+				return compare(value, 0) > 0;
+			case GE:
+				return compare(value, 0) >= 0;
+			case BETWEEN:
+				return compare(value, 0) >= 0 && compare(value, 1) <= 0;
+			default:
+				for (long v : values) {
+					if (value == v) {
+						return true;
+					}
+				}
+				return false;
+		}
+	}
+
+	/**
+	 * Compare the value of the attribute with a value of the predicate
+	 * @param value
+	 * @param i the number of the value of the predicate
+	 * @return
+	 */
+	private int compare(long value, int i) {
+		if (values[i] == Dictionary.MISSING) {
+			return dictionary.compare(value, literals.get(i));
+		}
+		return dictionary.compare(value, values[i]);
+	}
+
+	public String toString() {
+		return predicate.toString();
+	}
+}
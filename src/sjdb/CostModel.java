@@ -0,0 +1,42 @@
+package sjdb;
+
+/**
+ * This is an interface for the cost model used by the Optimiser to rank
+ * plans. A cost model gives the cost of a single operator, once the
+ * Estimator has set the output relations of the operator and its inputs;
+ * the cost of a plan is the sum of the costs of its operators.
+ */
+public interface CostModel {
+	/**
+	 * Return the cost of a single operator, excluding its inputs.
+	 * @param op Operator whose output (and whose inputs' outputs) are estimated
+	 * @return Cost of the operator
+	 */
+	public double cost(Operator op);
+
+	/**
+	 * Return the cost of sorting a relation, which a merge join pays for
+	 * each input which is not already sorted on its join attribute. A cost
+	 * model which does not price sorting never has merge joins chosen.
+	 * @param input Relation to be sorted
+	 * @return Cost of the sort
+	 */
+	public default double sortCost(Relation input) {
+		return Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Return the cost of a plan, as the sum of the costs of its operators.
+	 * @param op Root of the plan
+	 * @return Cost of the plan
+	 */
+	public default double total(Operator op) {
+		double cost = cost(op);
+		if (op instanceof UnaryOperator) {
+			cost += total(((UnaryOperator) op).getInput());
+		} else if (op instanceof BinaryOperator) {
+			cost += total(((BinaryOperator) op).getLeft()) + total(((BinaryOperator) op).getRight());
+		}
+		return cost;
+	}
+}
@@ -0,0 +1,137 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Selinger-style dynamic programming over the subsets of a `QueryGraph`.
+ *
+ * The best plan of every subset of leaves is kept in a table keyed by the subset
+ * bitmask. Subsets are visited in increasing numeric order, so every proper subset
+ * of a mask is already solved when the mask is reached, and each sub-plan is built
+ * and estimated exactly once.
+ *
+ * Bushy plans join any two disjoint sub-plans, which is O(3^n) splits in the worst
+ * case; left-deep plans always join a sub-plan with a single leaf, which is
+ * O(n * 2^n). When the query graph is connected, only connected subsets are
+ * planned, so no Cartesian product is ever built. Otherwise products are only
+ * considered for a subset which cannot be split into two joined parts.
+ *
+ * Besides the cheapest plan, a subset keeps the cheapest plan for each
+ * interesting order: a plan sorted on an attribute which a later join can use
+ * is kept even if it costs more, unless a cheaper plan has the same order.
+ *
+ * @author Oushuo Huang
+ * **/
+
+class DPJoinEnumerator implements JoinEnumerator {
+    private final boolean leftDeep;
+
+    /**
+     * @param leftDeep whether only left-deep plans are considered
+     */
+    DPJoinEnumerator(boolean leftDeep) {
+        this.leftDeep = leftDeep;
+    }
+
+    public SubPlan enumerate(QueryGraph graph) {
+        Map<Long, List<SubPlan>> best = new HashMap<>();
+        long fullMask = graph.fullMask();
+        boolean connectedOnly = graph.isConnected(fullMask);
+
+        for (int i = 0; i < graph.size(); i++) {
+            SubPlan leaf = graph.leaf(i);
+            best.put(leaf.getMask(), Collections.singletonList(leaf));
+        }
+
+        for (long mask = 1; mask <= fullMask && mask > 0; mask++) {
+            if (Long.bitCount(mask) < 2 || (connectedOnly && !graph.isConnected(mask))) {
+                continue;
+            }
+
+            List<SubPlan> result = bestJoin(graph, best, mask, false);
+            if (result.isEmpty()) {
+                result = bestJoin(graph, best, mask, true);
+            }
+            best.put(mask, result);
+        }
+
+        SubPlan result = null;
+        for (SubPlan plan : best.get(fullMask)) {
+            result = cheaper(result, plan);
+        }
+        return result;
+    }
+
+    /**
+     * @param graph the query graph
+     * @param best the best plans of the smaller subsets
+     * @param mask the subset to be planned
+     * @param allowProduct whether splits without a join predicate are considered
+     * @return the cheapest plan for `mask` and the cheapest plan for each interesting order,
+     *         empty if there is no suitable split
+     */
+    private List<SubPlan> bestJoin(QueryGraph graph, Map<Long, List<SubPlan>> best, long mask, boolean allowProduct) {
+        List<SubPlan> result = new ArrayList<>(1);
+
+        if (leftDeep) {
+            for (long rest = mask; rest != 0; rest &= rest - 1) {
+                long bit = Long.lowestOneBit(rest);
+                join(graph, best.get(mask & ~bit), best.get(bit), allowProduct, result);
+            }
+        } else {
+            // the left side always holds the lowest leaf, so each split is tried once
+            long lowest = Long.lowestOneBit(mask);
+            for (long left = (mask - 1) & mask; left != 0; left = (left - 1) & mask) {
+                if ((left & lowest) != 0) {
+                    join(graph, best.get(left), best.get(mask & ~left), allowProduct, result);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Join each plan of one side with each plan of the other, and keep the joined plans worth keeping.
+     * Nothing is joined if either side has no plan or they are not joined by a predicate.
+     */
+    private void join(QueryGraph graph, List<SubPlan> lefts, List<SubPlan> rights, boolean allowProduct, List<SubPlan> result) {
+        if (lefts == null || rights == null || (!allowProduct && !graph.connected(lefts.get(0).getMask(), rights.get(0).getMask()))) {
+            return;
+        }
+        for (SubPlan left : lefts) {
+            for (SubPlan right : rights) {
+                for (SubPlan candidate : graph.joins(left, right)) {
+                    keep(graph, result, candidate);
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a plan to the plans of a subset, unless a plan which is no more expensive has at
+     * least its interesting order; drop the plans which it makes redundant in the same way
+     */
+    private void keep(QueryGraph graph, List<SubPlan> plans, SubPlan candidate) {
+        Set<Attribute> order = graph.interestingOrder(candidate);
+        for (SubPlan plan : plans) {
+            if (plan.getCost() <= candidate.getCost() && graph.interestingOrder(plan).containsAll(order)) {
+                return;
+            }
+        }
+        plans.removeIf(plan -> candidate.getCost() <= plan.getCost() && order.containsAll(graph.interestingOrder(plan)));
+        plans.add(candidate);
+    }
+
+    private SubPlan cheaper(SubPlan result, SubPlan candidate) {
+        if (result == null || (candidate != null && candidate.getCost() < result.getCost())) {
+            return candidate; // update result if it is better
+        }
+        return result;
+    }
+}
@@ -0,0 +1,127 @@
+package sjdb;
+
+/**
+ * The default cost model, which counts both page I/O and CPU work per tuple.
+ * 
+ * The size of a relation in pages is its tuple count times its tuple width
+ * (a fixed number of bytes per attribute) divided by the page size. Then:
+ * 
+ * - Scan reads the pages of the named relation and handles each tuple
+ * - Select and Project handle each input tuple, pipelined with no I/O
+ * - Join and Product handle each input and output tuple, and write their
+ *   intermediate result to pages which the next operator reads back; a
+ *   merge join handles each input tuple at half the cost, as it compares
+ *   it with the current tuple of the other input instead of hashing it
+ * - Sorting n tuples for a merge join handles each tuple log2(n) times; if
+ *   the tuples do not fit in the sort memory, an external sort also writes
+ *   and reads back every page once per pass: once to write the sorted runs
+ *   and merge them, and again for each extra merge pass that is needed
+ *   when there are more runs than can be merged at once
+ * 
+ * The weights of a page and a tuple can be set to calibrate the model
+ * against measurements on a given machine.
+ */
+public class DefaultCostModel implements CostModel {
+	public static final int DEFAULT_PAGE_SIZE = 4096;
+	public static final int DEFAULT_ATTRIBUTE_WIDTH = 8;
+	public static final double DEFAULT_PAGE_COST = 1.0;
+	public static final double DEFAULT_TUPLE_COST = 0.01;
+	public static final long DEFAULT_SORT_MEMORY = 64L * 1024 * 1024;
+
+	private final int pageSize;
+	private final int attributeWidth;
+	private final double pageCost;
+	private final double tupleCost;
+	private final long sortMemory;
+
+	public DefaultCostModel() {
+		this(DEFAULT_PAGE_SIZE, DEFAULT_ATTRIBUTE_WIDTH, DEFAULT_PAGE_COST, DEFAULT_TUPLE_COST);
+	}
+
+	/**
+	 * @param pageSize the page size in bytes
+	 * @param attributeWidth the width of an attribute value in bytes
+	 * @param pageCost the cost of reading or writing one page
+	 * @param tupleCost the CPU cost of handling one tuple
+	 */
+	public DefaultCostModel(int pageSize, int attributeWidth, double pageCost, double tupleCost) {
+		this(pageSize, attributeWidth, pageCost, tupleCost, DEFAULT_SORT_MEMORY);
+	}
+
+	/**
+	 * @param pageSize the page size in bytes
+	 * @param attributeWidth the width of an attribute value in bytes
+	 * @param pageCost the cost of reading or writing one page
+	 * @param tupleCost the CPU cost of handling one tuple
+	 * @param sortMemory the bytes a sort may take in memory
+	 */
+	public DefaultCostModel(int pageSize, int attributeWidth, double pageCost, double tupleCost, long sortMemory) {
+		this.pageSize = pageSize;
+		this.attributeWidth = attributeWidth;
+		this.pageCost = pageCost;
+		this.tupleCost = tupleCost;
+		this.sortMemory = sortMemory;
+	}
+
+	public double cost(Operator op) {
+		if (op instanceof Scan) {
+			Relation relation = ((Scan) op).getRelation();
+			return pageCost * pages(relation) + tupleCost * relation.getCardinality();
+		} else if (op instanceof UnaryOperator) {
+			return tupleCost * ((UnaryOperator) op).getInput().getOutput().getCardinality();
+		} else {
+			Relation left = ((BinaryOperator) op).getLeft().getOutput();
+			Relation right = ((BinaryOperator) op).getRight().getOutput();
+			Relation output = op.getOutput();
+			double inputs = left.getCardinality() + right.getCardinality();
+			if (op instanceof Join && ((Join) op).getMethod() == Join.Method.MERGE) {
+				inputs /= 2;
+			}
+			return tupleCost * (inputs + output.getCardinality()) + 2 * pageCost * pages(output);
+		}
+	}
+
+	public double sortCost(Relation input) {
+		double tuples = input.getCardinality();
+		double cost = tupleCost * tuples * (Math.log(Math.max(tuples, 2)) / Math.log(2));
+
+		double pages = pages(input);
+		double memoryPages = Math.max(sortMemory / pageSize, 1);
+		if (pages > memoryPages) {
+			double runs = Math.ceil(pages / memoryPages);
+			double passes = 1 + Math.max(Math.ceil(Math.log(runs) / Math.log(ExternalSorter.FAN_IN)) - 1, 0);
+			cost += 2 * pageCost * pages * passes;
+		}
+		return cost;
+	}
+
+	/**
+	 * Return the number of pages taken by a relation
+	 * @param relation
+	 * @return
+	 */
+	public double pages(Relation relation) {
+		double bytes = relation.getCardinality() * relation.getAttributes().size() * attributeWidth;
+		return Math.ceil(bytes / pageSize);
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	public int getAttributeWidth() {
+		return attributeWidth;
+	}
+
+	public double getPageCost() {
+		return pageCost;
+	}
+
+	public double getTupleCost() {
+		return tupleCost;
+	}
+
+	public long getSortMemory() {
+		return sortMemory;
+	}
+}
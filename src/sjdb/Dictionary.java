@@ -0,0 +1,221 @@
+package sjdb;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class encodes the values of tuples as longs, so that the executor
+ * can compare and hash them without handling strings.
+ * 
+ * Whole numbers are encoded as themselves and ISO dates (yyyy-mm-dd) as their
+ * day number, offset into a range of their own, so that they keep their order
+ * and no date is equal to a number. Any other string is given a code from a
+ * reserved range at the bottom of the longs, in the order in which the
+ * strings are first seen; codes therefore only support tests for equality,
+ * and other comparisons go back to the strings.
+ * 
+ * A dictionary may be shared by several threads.
+ */
+public class Dictionary {
+	/**
+	 * The encoding of a missing value
+	 */
+	public static final long MISSING = Long.MIN_VALUE;
+	private static final long FIRST_CODE = Long.MIN_VALUE + 1;
+	// dates are encoded above the codes, and below the numbers
+	private static final long FIRST_DATE = Long.MIN_VALUE + (1L << 40);
+	// the encoding of 1970-01-01; every LocalDate is within 2^39 days of it
+	private static final long DATE_ZERO = FIRST_DATE + (1L << 39);
+	// numbers below this are encoded as strings, so they do not clash with codes or dates
+	private static final long FIRST_NUMBER = Long.MIN_VALUE + (1L << 41);
+
+	private final Map<String, Long> codes = new HashMap<String, Long>();
+	private final List<String> strings = new ArrayList<String>();
+
+	/**
+	 * Encode a value, adding it to the dictionary if it is a new string
+	 * @param value
+	 * @return the encoded value
+	 */
+	public long encode(String value) {
+		if (value == null) {
+			return MISSING;
+		}
+		long number = toNumber(value);
+		if (number != MISSING) {
+			return number;
+		}
+
+		synchronized (this) {
+			Long code = codes.get(value);
+			if (code == null) {
+				code = FIRST_CODE + strings.size();
+				if (code >= FIRST_DATE) {
+					throw new IllegalStateException("Dictionary is full");
+				}
+				codes.put(value, code);
+				strings.add(value);
+			}
+			return code;
+		}
+	}
+
+	/**
+	 * Return the encoding of a value without adding it to the dictionary
+	 * @param value
+	 * @return the encoded value, or MISSING if it is a string the dictionary does not hold
+	 */
+	public long lookup(String value) {
+		if (value == null) {
+			return MISSING;
+		}
+		long number = toNumber(value);
+		if (number != MISSING) {
+			return number;
+		}
+		synchronized (this) {
+			Long code = codes.get(value);
+			return code == null ? MISSING : code;
+		}
+	}
+
+	/**
+	 * Decode a value
+	 * @param value the encoded value
+	 * @return the value, or null if it is missing
+	 */
+	public String decode(long value) {
+		if (value == MISSING) {
+			return null;
+		}
+		if (isDate(value)) {
+			return LocalDate.ofEpochDay(value - DATE_ZERO).toString();
+		}
+		if (!isCode(value)) {
+			return Long.toString(value);
+		}
+		synchronized (this) {
+			return strings.get((int) (value - FIRST_CODE));
+		}
+	}
+
+	/**
+	 * Return true if an encoded value is a string code rather than a number
+	 * @param value
+	 * @return
+	 */
+	public static boolean isCode(long value) {
+		return value >= FIRST_CODE && value < FIRST_DATE;
+	}
+
+	/**
+	 * Return true if an encoded value is a date
+	 * @param value
+	 * @return
+	 */
+	public static boolean isDate(long value) {
+		return value >= FIRST_DATE && value < FIRST_NUMBER;
+	}
+
+	/**
+	 * Return an encoded number or date as the number Histogram gives it: a
+	 * number as itself, and a date as its day number
+	 * @param value an encoded value which is not a string code
+	 * @return
+	 */
+	public static long toNumber(long value) {
+		return isDate(value) ? value - DATE_ZERO : value;
+	}
+
+	/**
+	 * Compare two encoded values: by their encodings if neither is a string
+	 * (so dates are in order, and below every number), otherwise as numbers
+	 * or dates if both strings are, otherwise as strings. A missing value
+	 * compares below any other.
+	 * @param left
+	 * @param right
+	 * @return
+	 */
+	public int compare(long left, long right) {
+		if (left == MISSING || right == MISSING) {
+			return Boolean.compare(left != MISSING, right != MISSING);
+		}
+		if (!isCode(left) && !isCode(right)) {
+			return Long.compare(left, right);
+		}
+		String l = decode(left);
+		String r = decode(right);
+		double ln = Histogram.toNumber(l);
+		double rn = Histogram.toNumber(r);
+		if (!Double.isNaN(ln) && !Double.isNaN(rn)) {
+			return Double.compare(ln, rn);
+		}
+		return l.compareTo(r);
+	}
+
+	/**
+	 * Compare an encoded value with a value which need not be in the
+	 * dictionary, as compare() would if it were
+	 * @param left the encoded value
+	 * @param right the value
+	 * @return
+	 */
+	public int compare(long left, String right) {
+		long encoded = lookup(right);
+		if (encoded != MISSING || right == null) {
+			return compare(left, encoded);
+		}
+		if (left == MISSING) {
+			return -1;
+		}
+		String l = decode(left);
+		double ln = Histogram.toNumber(l);
+		double rn = Histogram.toNumber(right);
+		if (!Double.isNaN(ln) && !Double.isNaN(rn)) {
+			return Double.compare(ln, rn);
+		}
+		return l.compareTo(right);
+	}
+
+	/**
+	 * @return the number of strings in the dictionary
+	 */
+	public synchronized int size() {
+		return strings.size();
+	}
+
+	/**
+	 * Return the strings in the dictionary in the order of their codes;
+	 * encoding them in this order into an empty dictionary gives each of
+	 * them the same code again
+	 * @return
+	 */
+	public synchronized List<String> getStrings() {
+		return new ArrayList<String>(strings);
+	}
+
+	private static long toNumber(String value) {
+		try {
+			long number = Long.parseLong(value);
+			if (number >= FIRST_NUMBER && Long.toString(number).equals(value)) {
+				return number;
+			}
+		} catch (NumberFormatException e) {
+			// not a whole number, maybe a date
+		}
+		if (value.length() == 10 && value.charAt(4) == '-') {
+			try {
+				LocalDate date = LocalDate.parse(value);
+				if (date.toString().equals(value)) {
+					return DATE_ZERO + date.toEpochDay();
+				}
+			} catch (RuntimeException e) {
+				// not a date either
+			}
+		}
+		return MISSING;
+	}
+}
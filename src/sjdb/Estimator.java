@@ -3,12 +3,69 @@ package sjdb;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.WeakHashMap;
+import java.util.IdentityHashMap;
+import java.util.BitSet;
+import java.util.Arrays;
 
 public class Estimator implements PlanVisitor {
-
+	private final boolean memoize;
+	// canonical signature of each estimated operator, dropped with the operator
+	private final Map<Operator, Signature> signatures = new WeakHashMap<Operator, Signature>();
+	// output relation for each canonical signature
+	private final Map<Signature, Relation> estimates = new HashMap<Signature, Relation>();
+	// interned names of relations, predicates and attributes used in signatures
+	private final Map<String, Integer> ids = new HashMap<String, Integer>();
+	private final Map<Predicate, Integer> predicateIds = new IdentityHashMap<Predicate, Integer>();
+	private long hits;
+	private long misses;
 
 	public Estimator() {
-		// empty constructor
+		this(false);
+	}
+
+	/**
+	 * @param memoize whether to reuse the output relation of an operator with the same
+	 *                canonical signature (relation set, applied predicates and output
+	 *                attributes) as an operator estimated before
+	 */
+	public Estimator(boolean memoize) {
+		this.memoize = memoize;
+	}
+
+	/**
+	 * @return the number of estimates answered from the memo
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return the number of estimates computed while memoizing
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/*
+	 * Create output relation on a single operator whose inputs already have
+	 * their output relations, without visiting the rest of the plan again.
+	 */
+	public void estimate(Operator op) {
+		if (op instanceof Scan) {
+			visit((Scan) op);
+		} else if (op instanceof Project) {
+			visit((Project) op);
+		} else if (op instanceof Select) {
+			visit((Select) op);
+		} else if (op instanceof Product) {
+			visit((Product) op);
+		} else if (op instanceof Join) {
+			visit((Join) op);
+		}
 	}
 
 	/*
@@ -17,8 +74,11 @@ public class Estimator implements PlanVisitor {
 	 * Example implementation of visit method for Scan operators.
 	 */
 	public void visit(Scan op) {
+		if (reuse(op)) {
+			return;
+		}
 		Relation input = op.getRelation();
-		Relation output = new Relation(input.getTupleCount());
+		Relation output = new Relation(input.getCardinality());
 
 		Iterator<Attribute> iter = input.getAttributes().iterator();
 		while (iter.hasNext()) {
@@ -26,15 +86,19 @@ public class Estimator implements PlanVisitor {
 		}
 
 		op.setOutput(output);
+		remember(op);
 	}
 
 	public void visit(Project op) {
+		if (reuse(op)) {
+			return;
+		}
 		/*
 		 `getInput`: get the Operator of Project
 		 `getOutput`: get related output of an Operator
 		 */
 		Relation input = op.getInput().getOutput();
-		Relation output = new Relation(input.getTupleCount());
+		Relation output = new Relation(input.getCardinality());
 
 		Iterator<Attribute> iter = op.getAttributes().iterator();
 		while (iter.hasNext()) {
@@ -43,25 +107,48 @@ public class Estimator implements PlanVisitor {
 		}
 
 		op.setOutput(output);
+		remember(op);
 
 	}
 
 	public void visit(Select op) {
+		if (reuse(op)) {
+			return;
+		}
 
 		Relation input = op.getInput().getOutput();
 		Relation output;
 		Iterator<Attribute> iter = input.getAttributes().iterator();
-		int value;
+		long value;
 
 		Predicate predicate = op.getPredicate();
 		Attribute leftAttribute = input.getAttribute(predicate.getLeftAttribute());
 
-		if (predicate.equalsValue()) {
-			// attr=value
-			//T(σA=c(R)) = T(R)/V(R,A)
-			output = new Relation(input.getTupleCount() / leftAttribute.getValueCount());
-			// V(σA=c(R),A) = 1
-			value = 1;
+		if (predicate.comparesValue()) {
+			double selectivity;
+			if (predicate.equalsValue()) {
+				// attr=value
+				//T(σA=c(R)) = T(R)/V(R,A), or T(R)·f(c) from the most common values and histogram
+				selectivity = selectivity(leftAttribute, predicate.getRightValue());
+				// V(σA=c(R),A) = 1
+				value = 1;
+			} else if (predicate.getComparison() == Predicate.Comparison.IN) {
+				// T(σA IN (c1..ck)(R)) = T(R)·(f(c1) + ... + f(ck))
+				List<String> values = new ArrayList<String>(new LinkedHashSet<String>(predicate.getRightValues()));
+				selectivity = 0;
+				for (String v : values) {
+					selectivity += selectivity(leftAttribute, v);
+				}
+				selectivity = Math.min(selectivity, 1);
+				// V(σA IN (c1..ck)(R),A) = min(k, V(R,A))
+				value = Math.min(values.size(), leftAttribute.getValueCount());
+			} else {
+				// attr<value, attr BETWEEN value AND value, ...
+				selectivity = rangeSelectivity(leftAttribute, predicate);
+				// V(σA<c(R),A) = V(R,A)·s, assuming the values are spread like the tuples
+				value = Math.max(1, Math.round(leftAttribute.getValueCount() * selectivity));
+			}
+			output = new Relation(input.getCardinality() * selectivity);
 
 			while (iter.hasNext()) {
 				Attribute attribute = iter.next();
@@ -75,7 +162,7 @@ public class Estimator implements PlanVisitor {
 			Attribute rightAttribute = input.getAttribute(predicate.getRightAttribute());
 
 			// T(σA=B(R)) = T(R)/max(V(R,A),V(R,B))
-			output = new Relation(input.getTupleCount() / Math.max(leftAttribute.getValueCount(), rightAttribute.getValueCount()));
+			output = new Relation(input.getCardinality() / Math.max(distinct(leftAttribute), distinct(rightAttribute)));
 			// V(σA=B(R),A) = V(σA=B(R),B) = min(V(R,A), V(R,B)
 			value = Math.min(leftAttribute.getValueCount(), rightAttribute.getValueCount());
 
@@ -91,14 +178,18 @@ public class Estimator implements PlanVisitor {
 		}
 
 		op.setOutput(output);
+		remember(op);
 	}
 
 	public void visit(Product op) {
+		if (reuse(op)) {
+			return;
+		}
 		// T(R × S) = T(R)T(S)
 		Relation leftInput = op.getLeft().getOutput();
 		Relation rightInput = op.getRight().getOutput();
 
-		Relation output = new Relation(leftInput.getTupleCount() * rightInput.getTupleCount());
+		Relation output = new Relation(leftInput.getCardinality() * rightInput.getCardinality());
 
 		Iterator<Attribute> iterLeft = leftInput.getAttributes().iterator();
 		Iterator<Attribute> iterRight = rightInput.getAttributes().iterator();
@@ -110,23 +201,27 @@ public class Estimator implements PlanVisitor {
 		}
 
 		op.setOutput(output);
+		remember(op);
 	}
 
 	public void visit(Join op) {
-		// T(R ⋈ S) = T(R)T(S)/max(V(R,A),V(S,B))
+		if (reuse(op)) {
+			return;
+		}
+		// T(R ⋈ S) = T(R)T(S)/max(V(R,A),V(S,B)), or matched on the most common values
 		Relation leftInput = op.getLeft().getOutput();
 		Relation rightInput = op.getRight().getOutput();
 
 		Predicate predicate = op.getPredicate();
 		Attribute leftAttribute = leftInput.getAttribute(predicate.getLeftAttribute());
 		Attribute rightAttribute = rightInput.getAttribute(predicate.getRightAttribute());
-		int value = Math.min(leftAttribute.getValueCount(), rightAttribute.getValueCount());
+		long value = Math.min(leftAttribute.getValueCount(), rightAttribute.getValueCount());
 
 //		System.out.println("leftAttribute: " + leftAttribute + leftAttribute.getValueCount());
 //		System.out.println("rightAttribute: " + rightAttribute + rightAttribute.getValueCount());
 		// V(R⨝A=BS,A) = V(R⨝A=BS,B) = min(V(R,A), V(S,B))
-		Relation output = new Relation(leftInput.getTupleCount() * rightInput.getTupleCount() /
-				Math.max(leftAttribute.getValueCount(), rightAttribute.getValueCount()));
+		Relation output = new Relation(leftInput.getCardinality() * rightInput.getCardinality() *
+				selectivity(leftAttribute, rightAttribute));
 
 		Iterator<Attribute> iterLeft = leftInput.getAttributes().iterator();
 		Iterator<Attribute> iterRight = rightInput.getAttributes().iterator();
@@ -146,5 +241,241 @@ public class Estimator implements PlanVisitor {
 		}
 
 		op.setOutput(output);
+		remember(op);
+	}
+
+	/*
+	 * The distinct value count of an attribute as a divisor; an attribute of
+	 * an (estimated) empty relation has no values, but still divides by one
+	 */
+	private static double distinct(Attribute attribute) {
+		return Math.max(attribute.getValueCount(), 1);
+	}
+
+	/*
+	 * The fraction of tuples with A=c. A most common value has its own fraction;
+	 * a value outside the histogram has none; any other value shares the tuples
+	 * which do not take a most common value evenly with the other values.
+	 */
+	private static double selectivity(Attribute attribute, String value) {
+		Map<String, Double> common = attribute.getMostCommonValues();
+		Double fraction = common.get(value);
+
+		if (fraction != null) {
+			return fraction;
+		}
+		if (attribute.getHistogram() != null && !attribute.getHistogram().covers(value)) {
+			return 0;
+		}
+		return uncommon(attribute);
+	}
+
+	/*
+	 * The fraction of tuples with A<c, A<=c, A>c, A>=c or A BETWEEN c AND d. With a
+	 * histogram this is read off the bucket boundaries, adding the fraction of the
+	 * bound itself for inclusive comparisons. Without one, or for values which are
+	 * not numbers, the textbook guesses of 1/3 for an inequality and 1/4 for a
+	 * range are used.
+	 */
+	private static double rangeSelectivity(Attribute attribute, Predicate predicate) {
+		Histogram histogram = attribute.getHistogram();
+		List<String> values = predicate.getRightValues();
+		double low = Histogram.toNumber(values.get(0));
+		double high = Histogram.toNumber(values.get(values.size() - 1));
+		Predicate.Comparison comparison = predicate.getComparison();
+
+		if (histogram == null || Double.isNaN(low) || Double.isNaN(high)) {
+			return comparison == Predicate.Comparison.BETWEEN ? 0.25 : 1.0 / 3;
+		}
+
+		double result;
+		switch (comparison) {
+			case LT:
+				result = histogram.fractionBelow(low);
+				break;
+			case LE:
+				result = histogram.fractionBelow(low) + selectivity(attribute, values.get(0));
+				break;
+			case GT:
+				result = 1 - histogram.fractionBelow(low) - selectivity(attribute, values.get(0));
+				break;
+			case GE:
+				result = 1 - histogram.fractionBelow(low);
+				break;
+			default:
+				result = histogram.fractionBelow(high) + selectivity(attribute, values.get(1)) - histogram.fractionBelow(low);
+				break;
+		}
+		return Math.min(Math.max(result, 0), 1);
+	}
+
+	/*
+	 * The fraction of tuples with A=B, for A and B from different relations. Without
+	 * most common values this is 1/max(V(R,A),V(S,B)). With them, the common values
+	 * are matched with the fraction of the same value on the other side, and the
+	 * remaining tuples on both sides are joined uniformly.
+	 */
+	private static double selectivity(Attribute left, Attribute right) {
+		Map<String, Double> leftCommon = left.getMostCommonValues();
+		Map<String, Double> rightCommon = right.getMostCommonValues();
+
+		if (leftCommon.isEmpty() && rightCommon.isEmpty()) {
+			return 1 / Math.max(distinct(left), distinct(right));
+		}
+
+		double result = 0;
+		for (Map.Entry<String, Double> entry : leftCommon.entrySet()) {
+			Double fraction = rightCommon.get(entry.getKey());
+			result += entry.getValue() * (fraction != null ? fraction : uncommon(right));
+		}
+		for (Map.Entry<String, Double> entry : rightCommon.entrySet()) {
+			if (!leftCommon.containsKey(entry.getKey())) {
+				result += entry.getValue() * uncommon(left);
+			}
+		}
+
+		double leftRest = 1 - total(leftCommon);
+		double rightRest = 1 - total(rightCommon);
+		result += leftRest * rightRest / Math.max(Math.max(distinct(left) - leftCommon.size(), distinct(right) - rightCommon.size()), 1);
+
+		return Math.min(result, 1);
+	}
+
+	/*
+	 * The fraction of tuples taking one particular value which is not a most common value
+	 */
+	private static double uncommon(Attribute attribute) {
+		Map<String, Double> common = attribute.getMostCommonValues();
+		return Math.max(1 - total(common), 0) / Math.max(distinct(attribute) - common.size(), 1);
+	}
+
+	private static double total(Map<String, Double> fractions) {
+		double result = 0;
+		for (double fraction : fractions.values()) {
+			result += fraction;
+		}
+		return Math.min(result, 1);
+	}
+
+	/*
+	 * Set the memoized output relation on an operator, if there is one
+	 */
+	private boolean reuse(Operator op) {
+		if (!memoize) {
+			return false;
+		}
+
+		Relation output = estimates.get(signature(op));
+		if (output == null) {
+			misses++;
+			return false;
+		}
+
+		hits++;
+		op.setOutput(output);
+		return true;
+	}
+
+	private void remember(Operator op) {
+		if (memoize) {
+			estimates.put(signature(op), op.getOutput());
+		}
+	}
+
+	/*
+	 * Build the canonical signature of an operator from the signatures of its inputs.
+	 * The relations and predicates are kept as sets of interned ids, so the order in
+	 * which sub-plans were joined does not matter; the output attributes keep their order.
+	 */
+	private Signature signature(Operator op) {
+		Signature signature = signatures.get(op);
+		if (signature != null) {
+			return signature;
+		}
+
+		if (op instanceof Scan) {
+			signature = new Signature(new BitSet(), new BitSet(), ids(op.getOutput().getAttributes()));
+			signature.relations.set(id(((Scan) op).getRelation().toString()));
+		} else if (op instanceof UnaryOperator) {
+			Signature input = signature(((UnaryOperator) op).getInput());
+			if (op instanceof Project) {
+				signature = new Signature(input.relations, input.predicates, ids(((Project) op).getAttributes()));
+			} else {
+				BitSet predicates = (BitSet) input.predicates.clone();
+				predicates.set(id(((Select) op).getPredicate()));
+				signature = new Signature(input.relations, predicates, input.attributes);
+			}
+		} else {
+			Signature left = signature(((BinaryOperator) op).getLeft());
+			Signature right = signature(((BinaryOperator) op).getRight());
+			BitSet relations = (BitSet) left.relations.clone();
+			relations.or(right.relations);
+			BitSet predicates = (BitSet) left.predicates.clone();
+			predicates.or(right.predicates);
+			if (op instanceof Join) {
+				predicates.set(id(((Join) op).getPredicate()));
+			}
+			int[] attributes = Arrays.copyOf(left.attributes, left.attributes.length + right.attributes.length);
+			System.arraycopy(right.attributes, 0, attributes, left.attributes.length, right.attributes.length);
+			signature = new Signature(relations, predicates, attributes);
+		}
+
+		signatures.put(op, signature);
+		return signature;
+	}
+
+	private int id(String name) {
+		Integer id = ids.get(name);
+		if (id == null) {
+			id = ids.size();
+			ids.put(name, id);
+		}
+		return id;
+	}
+
+	private int id(Predicate predicate) {
+		Integer id = predicateIds.get(predicate);
+		if (id == null) {
+			id = id(predicate.toString());
+			predicateIds.put(predicate, id);
+		}
+		return id;
+	}
+
+	private int[] ids(List<Attribute> attributes) {
+		int[] result = new int[attributes.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = id(attributes.get(i).getName());
+		}
+		return result;
+	}
+
+	private static class Signature {
+		private final BitSet relations;
+		private final BitSet predicates;
+		private final int[] attributes;
+		private final int hash;
+
+		private Signature(BitSet relations, BitSet predicates, int[] attributes) {
+			this.relations = relations;
+			this.predicates = predicates;
+			this.attributes = attributes;
+			this.hash = 31 * (31 * relations.hashCode() + predicates.hashCode()) + Arrays.hashCode(attributes);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Signature)) {
+				return false;
+			}
+			Signature rhs = (Signature) obj;
+			return hash == rhs.hash && relations.equals(rhs.relations) &&
+					predicates.equals(rhs.predicates) && Arrays.equals(attributes, rhs.attributes);
+		}
 	}
 }
@@ -0,0 +1,162 @@
+package sjdb;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+
+/**
+ * This class runs query plans. It visits a logical plan to build the tree
+ * of physical operators which executes it (each visit pops the physical
+ * operators for the inputs, which were visited first), then drains the
+ * tuples from the root of that tree.
+ * 
+ * Joins are run as hash joins or merge joins, as chosen by the optimiser,
+ * which read their inputs a batch at a time; the input of a merge join is
+ * sorted first unless it is already in order. Products are run as nested
+ * loops.
+ * 
+ * Estimates are not needed to run a plan (they only pick the build side of
+ * hash joins), but when the plan has them,
+ * explain() shows the estimated and the actual number of tuples of each
+ * operator side by side.
+ */
+public class Executor implements PlanVisitor {
+	protected final Storage storage;
+	protected final Deque<PhysicalOperator> operators = new ArrayDeque<PhysicalOperator>();
+	private long memoryBudget;
+
+	/**
+	 * @param storage the source of the tuples of named relations
+	 */
+	public Executor(Storage storage) {
+		this.storage = storage;
+	}
+
+	/**
+	 * Limit the memory taken by the build side of each hash join, and by
+	 * each sort; a join whose build side does not fit spills partitions to
+	 * temporary files, and a sort which does not fit writes sorted runs
+	 * @param bytes the budget in bytes, 0 for no limit
+	 */
+	public void setMemoryBudget(long bytes) {
+		this.memoryBudget = bytes;
+	}
+
+	/**
+	 * @return the memory budget of each hash join and sort in bytes, 0 for no limit
+	 */
+	public long getMemoryBudget() {
+		return memoryBudget;
+	}
+
+	/**
+	 * Build the physical operators which execute a plan
+	 * @param plan
+	 * @return the root physical operator, not yet opened
+	 */
+	public PhysicalOperator compile(Operator plan) {
+		operators.clear();
+		plan.accept(this);
+		return operators.pop();
+	}
+
+	/**
+	 * Execute a plan and count the tuples it returns
+	 * @param plan
+	 * @return the root physical operator, with the row counts of the execution
+	 */
+	public PhysicalOperator run(Operator plan) {
+		PhysicalOperator root = compile(plan);
+		run(root);
+		return root;
+	}
+
+	/**
+	 * Open a physical operator, read all its tuples and close it
+	 * @param root
+	 * @return the number of tuples
+	 */
+	public static long run(PhysicalOperator root) {
+		root.open();
+		try {
+			if (root instanceof VectorOperator) {
+				while (((VectorOperator) root).nextBatch() != null) {
+					// only counted
+				}
+			} else {
+				while (root.next() != null) {
+					// only counted
+				}
+			}
+		} finally {
+			root.close();
+		}
+		return root.getRowCount();
+	}
+
+	/**
+	 * Render a tree of physical operators with the estimated and the actual
+	 * number of tuples of each operator, one operator per line
+	 * @param root
+	 * @return
+	 */
+	public static String explain(PhysicalOperator root) {
+		StringBuilder ret = new StringBuilder();
+		explain(root, "", ret);
+		return ret.toString();
+	}
+
+	private static void explain(PhysicalOperator op, String indent, StringBuilder ret) {
+		Relation output = op.getOperator().getOutput();
+		ret.append(indent).append(op)
+				.append(" estimated=").append(output == null ? "?" : Long.toString(output.getTupleCount()))
+				.append(" actual=").append(op.getRowCount())
+				.append('\n');
+		for (PhysicalOperator input : op.getInputs()) {
+			explain(input, indent + "  ", ret);
+		}
+	}
+
+	/**
+	 * Sort the input of a merge join on its join attribute, unless it is already sorted
+	 * @param input
+	 * @param predicate the join predicate
+	 * @return
+	 */
+	protected PhysicalOperator sorted(PhysicalOperator input, Predicate predicate) {
+		Attribute key = input.getAttributes().contains(predicate.getLeftAttribute()) ?
+				predicate.getLeftAttribute() : predicate.getRightAttribute();
+		if (input.getOrder().contains(key)) {
+			return input;
+		}
+		return new PhysicalSort(input, Collections.singletonList(key), false, memoryBudget);
+	}
+
+	public void visit(Scan op) {
+		operators.push(new PhysicalScan(op, storage));
+	}
+
+	public void visit(Project op) {
+		operators.push(new PhysicalProject(op, operators.pop()));
+	}
+
+	public void visit(Select op) {
+		operators.push(new PhysicalSelect(op, operators.pop(), storage.getDictionary()));
+	}
+
+	public void visit(Product op) {
+		PhysicalOperator right = operators.pop();
+		PhysicalOperator left = operators.pop();
+		operators.push(new NestedLoopJoin(op, left, right, storage.getDictionary()));
+	}
+
+	public void visit(Join op) {
+		PhysicalOperator right = operators.pop();
+		PhysicalOperator left = operators.pop();
+		if (op.getMethod() == Join.Method.MERGE) {
+			operators.push(new MergeJoin(op, sorted(left, op.getPredicate()), sorted(right, op.getPredicate())));
+		} else {
+			operators.push(new HashJoin(op, left, right, memoryBudget));
+		}
+	}
+}
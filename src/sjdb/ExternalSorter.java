@@ -0,0 +1,287 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sorts tuples within a memory budget. Tuples are collected in columns
+ * until the budget is reached; the columns are then sorted and written to a
+ * temporary file as a sorted run. When all the tuples have been added, the
+ * runs are merged k ways at a time, reading them from memory-mapped files,
+ * until one sorted stream is left. If all the tuples fit in the budget no
+ * run is written and they are returned straight from memory.
+ * 
+ * Tuples are ordered by the encoded values of the key attributes, compared
+ * in turn. Optionally, duplicate tuples are dropped.
+ */
+class ExternalSorter implements AutoCloseable {
+	/**
+	 * The number of runs merged at a time
+	 */
+	static final int FAN_IN = 64;
+
+	private final int width;
+	private final int[] keys;
+	private final boolean distinct;
+	private final long memoryBudget;
+	private final List<SpillFile> runs = new ArrayList<SpillFile>();
+	private ColumnBuffer buffer;
+	private long spilled;
+
+	/**
+	 * @param width the number of attributes
+	 * @param keys the positions of the attributes to sort on
+	 * @param distinct whether duplicate tuples are dropped
+	 * @param memoryBudget the bytes the tuples may take in memory, 0 for no limit
+	 */
+	ExternalSorter(int width, int[] keys, boolean distinct, long memoryBudget) {
+		this.width = width;
+		this.distinct = distinct;
+		this.memoryBudget = memoryBudget;
+		this.buffer = new ColumnBuffer(width);
+
+		if (distinct) {
+			// duplicates are only adjacent if every attribute is compared
+			int[] all = new int[width];
+			System.arraycopy(keys, 0, all, 0, keys.length);
+			int n = keys.length;
+			for (int c = 0; c < width; c++) {
+				if (!contains(keys, c)) {
+					all[n++] = c;
+				}
+			}
+			this.keys = all;
+		} else {
+			this.keys = keys.clone();
+		}
+	}
+
+	private static boolean contains(int[] values, int value) {
+		for (int v : values) {
+			if (v == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Add a batch of tuples
+	 * @param batch
+	 */
+	void add(Batch batch) {
+		buffer.add(batch);
+		// the sort takes two int arrays of rows on top of the columns
+		if (memoryBudget > 0 && buffer.bytes() + 8L * buffer.size() > memoryBudget) {
+			writeRun();
+		}
+	}
+
+	/**
+	 * @return the number of tuples written to runs
+	 */
+	long getSpilledCount() {
+		return spilled;
+	}
+
+	/**
+	 * @return the number of runs written
+	 */
+	int getRunCount() {
+		return runs.size();
+	}
+
+	private void writeRun() {
+		if (buffer.size() == 0) {
+			return;
+		}
+		SpillFile run = new SpillFile(width);
+		long[][] columns = buffer.getColumns();
+		for (int row : buffer.sortedRows(keys)) {
+			run.write(columns, row);
+		}
+		run.flush();
+		runs.add(run);
+		spilled += buffer.size();
+		buffer.clear();
+	}
+
+	/**
+	 * Finish adding tuples
+	 * @return the tuples in order
+	 */
+	Source finish() {
+		if (runs.isEmpty()) {
+			return new MemorySource(buffer, buffer.sortedRows(keys));
+		}
+
+		writeRun();
+		buffer = null;
+		// merge passes until a single merge is left
+		while (runs.size() > FAN_IN) {
+			List<SpillFile> merged = new ArrayList<SpillFile>();
+			for (int i = 0; i < runs.size(); i += FAN_IN) {
+				List<SpillFile> group = runs.subList(i, Math.min(i + FAN_IN, runs.size()));
+				SpillFile run = new SpillFile(width);
+				MergeSource source = new MergeSource(group);
+				long[] tuple = new long[width];
+				while (source.next(tuple)) {
+					run.write(tuple);
+				}
+				run.flush();
+				for (SpillFile file : group) {
+					file.close();
+				}
+				merged.add(run);
+			}
+			runs.clear();
+			runs.addAll(merged);
+		}
+		return new MergeSource(runs);
+	}
+
+	public void close() {
+		for (SpillFile run : runs) {
+			run.close();
+		}
+		runs.clear();
+		buffer = null;
+	}
+
+	/**
+	 * The sorted tuples
+	 */
+	abstract class Source {
+		private long[] previous;
+
+		/**
+		 * Read the next tuples in order into columns
+		 * @param columns the columns to fill, from the first row
+		 * @param capacity the maximum number of tuples to read
+		 * @return the number of tuples read, 0 if there are no more
+		 */
+		int read(long[][] columns, int capacity) {
+			long[] tuple = new long[width];
+			int size = 0;
+			while (size < capacity && next(tuple)) {
+				for (int c = 0; c < width; c++) {
+					columns[c][size] = tuple[c];
+				}
+				size++;
+			}
+			return size;
+		}
+
+		/**
+		 * Read the next tuple in order, skipping duplicates if they are dropped
+		 * @param tuple receives the tuple
+		 * @return false if there are no more tuples
+		 */
+		boolean next(long[] tuple) {
+			while (fetch(tuple)) {
+				if (!distinct || previous == null || !Arrays.equals(previous, tuple)) {
+					if (distinct) {
+						previous = tuple.clone();
+					}
+					return true;
+				}
+			}
+			return false;
+		}
+
+		protected abstract boolean fetch(long[] tuple);
+	}
+
+	private class MemorySource extends Source {
+		private final ColumnBuffer buffer;
+		private final int[] rows;
+		private int position;
+
+		private MemorySource(ColumnBuffer buffer, int[] rows) {
+			this.buffer = buffer;
+			this.rows = rows;
+		}
+
+		protected boolean fetch(long[] tuple) {
+			if (position == rows.length) {
+				return false;
+			}
+			int row = rows[position++];
+			for (int c = 0; c < width; c++) {
+				tuple[c] = buffer.getColumn(c)[row];
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * A k-way merge of sorted runs, with a binary heap of the runs ordered by their current tuple
+	 */
+	private class MergeSource extends Source {
+		private final SpillFile.Reader[] readers;
+		private final long[][] current;
+		private final int[] heap;
+		private int size;
+
+		private MergeSource(List<SpillFile> runs) {
+			this.readers = new SpillFile.Reader[runs.size()];
+			this.current = new long[runs.size()][width];
+			this.heap = new int[runs.size()];
+			for (int i = 0; i < readers.length; i++) {
+				readers[i] = runs.get(i).mappedReader();
+				if (readers[i].read(current[i])) {
+					heap[size++] = i;
+				}
+			}
+			for (int i = size / 2 - 1; i >= 0; i--) {
+				down(i);
+			}
+		}
+
+		protected boolean fetch(long[] tuple) {
+			if (size == 0) {
+				return false;
+			}
+			int run = heap[0];
+			System.arraycopy(current[run], 0, tuple, 0, width);
+			if (!readers[run].read(current[run])) {
+				heap[0] = heap[--size];
+			}
+			down(0);
+			return true;
+		}
+
+		private void down(int i) {
+			while (true) {
+				int smallest = i;
+				int left = 2 * i + 1;
+				int right = left + 1;
+				if (left < size && less(heap[left], heap[smallest])) {
+					smallest = left;
+				}
+				if (right < size && less(heap[right], heap[smallest])) {
+					smallest = right;
+				}
+				if (smallest == i) {
+					return;
+				}
+				int swap = heap[i];
+				heap[i] = heap[smallest];
+				heap[smallest] = swap;
+				i = smallest;
+			}
+		}
+
+		// ties go to the earlier run, so that equal tuples keep their order
+		private boolean less(int a, int b) {
+			for (int key : keys) {
+				int result = Long.compare(current[a][key], current[b][key]);
+				if (result != 0) {
+					return result < 0;
+				}
+			}
+			return a < b;
+		}
+	}
+}
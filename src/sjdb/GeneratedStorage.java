@@ -0,0 +1,176 @@
+package sjdb;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Storage which generates the tuples of each named relation from the
+ * statistics in the catalogue, so that plans can be run without any data.
+ * 
+ * A relation has as many tuples as its tuple count. An attribute takes each
+ * of its most common values with the given fraction of the tuples; the other
+ * tuples take a value from the histogram, or else one of the whole numbers
+ * 1..V for V distinct values. An attribute with as many values as there are
+ * tuples is a key, and takes 1, 2, 3, ... in turn. Attributes which share
+ * their values (persid and manager, say) therefore join as the estimator
+ * expects. The attribute a relation is stored in order of takes its values
+ * in ascending order: 1..V, each for an equal run of tuples.
+ * 
+ * The tuples are generated from a fixed seed, a block of tuples at a time,
+ * so each scan of a relation sees the same tuples, and any range of them
+ * can be generated without the tuples before its block.
+ */
+public class GeneratedStorage implements Storage {
+	private static final long DEFAULT_SEED = 42;
+	// tuples generated from each seed
+	private static final long BLOCK = Batch.SIZE;
+
+	private final Dictionary dictionary;
+	private final long seed;
+
+	public GeneratedStorage() {
+		this(DEFAULT_SEED);
+	}
+
+	/**
+	 * @param seed the seed from which the tuples are generated
+	 */
+	public GeneratedStorage(long seed) {
+		this(seed, new Dictionary());
+	}
+
+	/**
+	 * @param seed the seed from which the tuples are generated
+	 * @param dictionary the dictionary in which the values are encoded
+	 */
+	public GeneratedStorage(long seed, Dictionary dictionary) {
+		this.seed = seed;
+		this.dictionary = dictionary;
+	}
+
+	public Dictionary getDictionary() {
+		return dictionary;
+	}
+
+	public TupleCursor open(NamedRelation relation) {
+		return new Generator(relation, 0, relation.getTupleCount());
+	}
+
+	public TupleCursor open(NamedRelation relation, long from, long to) {
+		return new Generator(relation, from, to);
+	}
+
+	private class Generator implements TupleCursor {
+		private final Random random = new Random();
+		private final long seed;
+		private final long tuples;
+		private final long end;
+		private final Attribute[] attributes;
+		private final long[][] common;
+		private final double[][] fractions;
+		private final int sorted;
+		private long row;
+
+		private Generator(NamedRelation relation, long from, long to) {
+			List<Attribute> list = relation.getAttributes();
+			this.seed = GeneratedStorage.this.seed * 31 + relation.toString().hashCode();
+			this.tuples = relation.getTupleCount();
+			this.end = Math.min(to, tuples);
+			this.attributes = list.toArray(new Attribute[list.size()]);
+			this.common = new long[attributes.length][];
+			this.fractions = new double[attributes.length][];
+			this.sorted = relation.getSortedOn() == null ? -1 : list.indexOf(relation.getSortedOn());
+
+			for (int i = 0; i < attributes.length; i++) {
+				Map<String, Double> mostCommonValues = attributes[i].getMostCommonValues();
+				common[i] = new long[mostCommonValues.size()];
+				fractions[i] = new double[mostCommonValues.size()];
+				int j = 0;
+				double total = 0;
+				for (Map.Entry<String, Double> entry : mostCommonValues.entrySet()) {
+					total += entry.getValue();
+					common[i][j] = dictionary.encode(entry.getKey());
+					fractions[i][j++] = total;
+				}
+			}
+
+			// generate the start of the block of the first tuple, and drop it
+			this.row = from - from % BLOCK;
+			while (row < from) {
+				block();
+				for (int i = 0; i < attributes.length; i++) {
+					value(i);
+				}
+				row++;
+			}
+		}
+
+		// reseed at the start of each block, so that each block can be generated on its own
+		private void block() {
+			if (row % BLOCK == 0) {
+				random.setSeed(seed * 31 + row / BLOCK);
+			}
+		}
+
+		public long[] next() {
+			if (row >= end) {
+				return null;
+			}
+			block();
+			long[] tuple = new long[attributes.length];
+			for (int i = 0; i < attributes.length; i++) {
+				tuple[i] = value(i);
+			}
+			row++;
+			return tuple;
+		}
+
+		public int fill(long[][] columns, int capacity) {
+			int size = 0;
+			while (size < capacity && row < end) {
+				block();
+				for (int i = 0; i < attributes.length; i++) {
+					columns[i][size] = value(i);
+				}
+				row++;
+				size++;
+			}
+			return size;
+		}
+
+		private long value(int i) {
+			if (i == sorted) {
+				long values = Math.min(Math.max(attributes[i].getValueCount(), 1), tuples);
+				return 1 + (long) ((double) row * values / tuples);
+			}
+			if (common[i].length > 0) {
+				double u = random.nextDouble();
+				for (int j = 0; j < common[i].length; j++) {
+					if (u < fractions[i][j]) {
+						return common[i][j];
+					}
+				}
+			}
+
+			Attribute attribute = attributes[i];
+			Histogram histogram = attribute.getHistogram();
+			long values = Math.max(attribute.getValueCount(), 1);
+			if (values >= tuples && histogram == null) {
+				return row + 1;
+			}
+			if (histogram != null) {
+				// equi-depth: pick a bucket, then a value within it
+				int bucket = random.nextInt(histogram.getBucketCount());
+				double from = histogram.getBound(bucket);
+				double to = histogram.getBound(bucket + 1);
+				return Math.round(from + random.nextDouble() * (to - from));
+			}
+			return 1 + (long) (random.nextDouble() * values);
+		}
+
+		public void close() {
+			row = end;
+		}
+	}
+}
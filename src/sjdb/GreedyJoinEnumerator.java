@@ -0,0 +1,86 @@
+package sjdb;
+
+import java.util.*;
+
+/**
+ * Greedy Operator Ordering (GOO) over a `QueryGraph`.
+ *
+ * It starts with one plan per leaf and repeatedly joins the pair of plans whose
+ * join has the smallest estimated tuple count, until a single plan is left. Pairs
+ * joined by a predicate are preferred, so a `Product` is only chosen when the
+ * remaining plans are not connected. With n leaves this builds O(n^2) candidate
+ * joins, as the candidates of untouched pairs are kept between steps.
+ *
+ * The plans found this way are bushy; for a left-deep plan only one plan may
+ * have more than one leaf, and it can only be joined with a leaf.
+ *
+ * @author Oushuo Huang
+ * **/
+
+class GreedyJoinEnumerator implements JoinEnumerator {
+    private final boolean leftDeep;
+
+    /**
+     * @param leftDeep whether only left-deep plans are considered
+     */
+    GreedyJoinEnumerator(boolean leftDeep) {
+        this.leftDeep = leftDeep;
+    }
+
+    public SubPlan enumerate(QueryGraph graph) {
+        List<SubPlan> plans = new ArrayList<>();
+        for (int i = 0; i < graph.size(); i++) {
+            plans.add(graph.leaf(i));
+        }
+
+        // candidate joins keyed by the union of both masks, which is unique for disjoint plans
+        Map<Long, SubPlan> candidates = new HashMap<>();
+
+        while (plans.size() > 1) {
+            SubPlan result = cheapestJoin(graph, plans, candidates, false);
+            if (result == null) {
+                result = cheapestJoin(graph, plans, candidates, true);
+            }
+
+            plans.remove(result.getLeft());
+            plans.remove(result.getRight());
+            plans.add(result);
+        }
+
+        return plans.get(0);
+    }
+
+    /**
+     * @param graph the query graph
+     * @param plans the plans which are not joined yet
+     * @param candidates the candidate joins already built
+     * @param allowProduct whether pairs without a join predicate are considered
+     * @return the candidate join with the smallest output, or null if there is none
+     */
+    private SubPlan cheapestJoin(QueryGraph graph, List<SubPlan> plans, Map<Long, SubPlan> candidates, boolean allowProduct) {
+        SubPlan result = null;
+        boolean joined = plans.stream().anyMatch(plan -> !plan.isLeaf());
+
+        for (int i = 0; i < plans.size(); i++) {
+            for (int j = i + 1; j < plans.size(); j++) {
+                SubPlan left = plans.get(i);
+                SubPlan right = plans.get(j);
+                if (leftDeep && joined && left.isLeaf() == right.isLeaf()) {
+                    continue; // only the joined plan and a leaf
+                }
+                if (!allowProduct && !graph.connected(left.getMask(), right.getMask())) {
+                    continue;
+                }
+
+                SubPlan candidate = candidates.computeIfAbsent(left.getMask() | right.getMask(), mask -> graph.join(left, right));
+                double size = candidate.getOperator().getOutput().getCardinality();
+                double resultSize = result == null ? 0 : result.getOperator().getOutput().getCardinality();
+                if (result == null || size < resultSize || (size == resultSize && candidate.getCost() < result.getCost())) {
+                    result = candidate;
+                }
+            }
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,432 @@
+package sjdb;
+
+import java.util.Collections;
+
+/**
+ * This class executes a Join whose predicate is attr=attr with a hash join.
+ * When the operator is opened, the tuples of the build side are copied into
+ * columns and their join attribute is put in a LongHashTable; each batch of
+ * the probe side is then looked up in the table, filling output batches of
+ * concatenated tuples (the tuples of the left input come first, whichever
+ * side is built).
+ * 
+ * The build side is the input with the smaller estimated tuple count, as
+ * it is the side which has to fit in memory.
+ * 
+ * With a memory budget, the join degrades to a hybrid hash join when the
+ * build side turns out not to fit: both inputs are split by a hash of the
+ * join attribute into partitions, of which the first stays in memory and
+ * the others are spilled to temporary files. The first partition is joined
+ * while the probe side is read, and each spilled partition is joined from
+ * its files afterwards, a budget-sized chunk of its build tuples at a time.
+ * A spilled join does not keep the order of its probe side.
+ */
+public class HashJoin extends VectorOperator {
+	private static final int MIN_PARTITIONS = 8;
+	private static final int MAX_PARTITIONS = 256;
+	// bytes of hash table per build tuple, on top of its columns
+	private static final int TABLE_BYTES = 32;
+
+	private final boolean buildLeft;
+	private final int leftWidth;
+	private final int rightWidth;
+	private final int buildKey;
+	private final int probeKey;
+	private final Predicate predicate;
+	private final long memoryBudget;
+	private final long[][] output;
+	private long[][] buildColumns;
+	private long[][] probeColumns;
+	private ColumnBuffer build;
+	private LongHashTable table;
+	private Batch probe;
+	private int probePosition;
+	private int match;
+	private boolean probeDone;
+
+	// spilling
+	private SpillFile[] buildFiles;
+	private SpillFile[] probeFiles;
+	private int partitionMask;
+	private boolean resident;
+	private int[] selection;
+	private int partition;
+	private SpillFile.Reader buildReader;
+	private SpillFile.Reader probeReader;
+	private long spilled;
+
+	/**
+	 * Create a hash join without a memory budget
+	 * @param op the join
+	 * @param left the left input
+	 * @param right the right input
+	 */
+	public HashJoin(Join op, PhysicalOperator left, PhysicalOperator right) {
+		this(op, left, right, 0);
+	}
+
+	/**
+	 * @param op the join
+	 * @param left the left input
+	 * @param right the right input
+	 * @param memoryBudget the bytes the build side may take in memory, 0 for no limit
+	 */
+	public HashJoin(Join op, PhysicalOperator left, PhysicalOperator right, long memoryBudget) {
+		super(op, NestedLoopJoin.concat(left.getAttributes(), right.getAttributes()), left, right);
+		this.predicate = op.getPredicate();
+		this.leftWidth = left.getAttributes().size();
+		this.rightWidth = right.getAttributes().size();
+		this.buildLeft = isSmaller(op.getLeft(), op.getRight());
+		this.memoryBudget = memoryBudget;
+		this.output = columns(leftWidth + rightWidth);
+
+		int l = Condition.position(getAttributes(), predicate.getLeftAttribute());
+		int r = Condition.position(getAttributes(), predicate.getRightAttribute());
+		if (predicate.comparesValue() || (l < leftWidth) == (r < leftWidth)) {
+			throw new IllegalArgumentException("Hash join predicate " + predicate + " does not join its inputs");
+		}
+		int leftKey = Math.min(l, r);
+		int rightKey = Math.max(l, r) - leftWidth;
+		this.buildKey = buildLeft ? leftKey : rightKey;
+		this.probeKey = buildLeft ? rightKey : leftKey;
+		// the tuples come out in the order of the probe side, unless the join spills
+		if (memoryBudget <= 0) {
+			setOrder((buildLeft ? right : left).getOrder());
+		}
+	}
+
+	/**
+	 * Return true if the left input is estimated to have fewer tuples than the right;
+	 * without estimates, the right input is built
+	 */
+	static boolean isSmaller(Operator left, Operator right) {
+		if (left.getOutput() == null || right.getOutput() == null) {
+			return false;
+		}
+		return left.getOutput().getTupleCount() < right.getOutput().getTupleCount();
+	}
+
+	/**
+	 * @return true if the left input is the build side
+	 */
+	public boolean isBuildLeft() {
+		return buildLeft;
+	}
+
+	/**
+	 * @return the number of tuples written to temporary files since the operator was opened
+	 */
+	public long getSpilledCount() {
+		return spilled;
+	}
+
+	private PhysicalOperator getBuild() {
+		return getInput(buildLeft ? 0 : 1);
+	}
+
+	private PhysicalOperator getProbe() {
+		return getInput(buildLeft ? 1 : 0);
+	}
+
+	public void open() {
+		super.open();
+		if (!(getBuild() instanceof VectorOperator) && buildColumns == null) {
+			buildColumns = columns(getBuild().getAttributes().size());
+		}
+		if (!(getProbe() instanceof VectorOperator) && probeColumns == null) {
+			probeColumns = columns(getProbe().getAttributes().size());
+		}
+
+		spilled = 0;
+		buildFiles = null;
+		build = new ColumnBuffer(getBuild().getAttributes().size());
+		Batch batch;
+		while ((batch = nextBatch(getBuild(), buildColumns)) != null) {
+			if (buildFiles == null) {
+				build.add(batch);
+				if (memoryBudget > 0 && footprint() > memoryBudget) {
+					spill();
+				}
+			} else {
+				partitionBuild(batch.getColumns(), batch);
+			}
+		}
+
+		if (buildFiles != null) {
+			for (SpillFile file : buildFiles) {
+				file.flush();
+			}
+			partition = 0;
+		}
+		table = table(build);
+		probe = null;
+		probePosition = 0;
+		match = -1;
+		probeDone = false;
+	}
+
+	private long footprint() {
+		return build.bytes() + (long) TABLE_BYTES * build.size();
+	}
+
+	private LongHashTable table(ColumnBuffer buffer) {
+		LongHashTable result = new LongHashTable(buffer.size());
+		long[] keys = buffer.getColumn(buildKey);
+		for (int row = 0; row < buffer.size(); row++) {
+			if (keys[row] != Dictionary.MISSING) {
+				result.put(keys[row], row);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Switch to a hybrid hash join: create the partition files, and keep only
+	 * the tuples of the first partition in memory
+	 */
+	private void spill() {
+		// enough partitions for the estimated build side to fit a partition at a time
+		Operator side = buildLeft ? ((Join) getOperator()).getLeft() : ((Join) getOperator()).getRight();
+		double estimate = side.getOutput() == null ? 0 : side.getOutput().getCardinality();
+		double bytes = Math.max(estimate, build.size() * 2.0) * (8 * getBuild().getAttributes().size() + TABLE_BYTES);
+		int partitions = MIN_PARTITIONS;
+		while (partitions < MAX_PARTITIONS && bytes / partitions > memoryBudget) {
+			partitions *= 2;
+		}
+
+		partitionMask = partitions - 1;
+		buildFiles = new SpillFile[partitions];
+		probeFiles = new SpillFile[partitions];
+		for (int p = 0; p < partitions; p++) {
+			buildFiles[p] = new SpillFile(getBuild().getAttributes().size());
+			probeFiles[p] = new SpillFile(getProbe().getAttributes().size());
+		}
+		selection = new int[Batch.SIZE];
+		resident = true;
+
+		ColumnBuffer all = build;
+		build = new ColumnBuffer(getBuild().getAttributes().size());
+		partitionBuild(all.getColumns(), new Batch(all.getColumns(), all.size()));
+	}
+
+	private int partitionOf(long key) {
+		// the high bits of the hash, as the hash table uses the low bits
+		return (LongHashTable.hash(key) >>> 24) & partitionMask;
+	}
+
+	/**
+	 * Add the tuples of a build batch to their partitions
+	 */
+	private void partitionBuild(long[][] columns, Batch batch) {
+		long[] keys = batch.getColumn(buildKey);
+		long[] tuple = new long[columns.length];
+		for (int i = 0; i < batch.size(); i++) {
+			int row = batch.row(i);
+			if (keys[row] == Dictionary.MISSING) {
+				continue;
+			}
+			int p = partitionOf(keys[row]);
+			if (p == 0 && resident) {
+				for (int c = 0; c < columns.length; c++) {
+					tuple[c] = columns[c][row];
+				}
+				build.add(tuple);
+				if (footprint() > memoryBudget) {
+					// the first partition does not fit either, so it is spilled too
+					for (int r = 0; r < build.size(); r++) {
+						buildFiles[0].write(build.getColumns(), r);
+					}
+					spilled += build.size();
+					build = new ColumnBuffer(columns.length);
+					resident = false;
+				}
+			} else {
+				buildFiles[p].write(columns, row);
+				spilled++;
+			}
+		}
+	}
+
+	/**
+	 * Return the next batch of probe tuples to look up in the current table. While the
+	 * probe input is read, the tuples of spilled partitions are written to their files
+	 * and only those of the resident partition are returned.
+	 */
+	private Batch nextProbe() {
+		if (probeReader != null) {
+			if (probeColumns == null) {
+				probeColumns = columns(getProbe().getAttributes().size());
+			}
+			int size = probeReader.read(probeColumns, Batch.SIZE);
+			return size == 0 ? null : new Batch(probeColumns, size);
+		}
+
+		Batch batch;
+		while ((batch = nextBatch(getProbe(), probeColumns)) != null) {
+			if (buildFiles == null) {
+				return batch;
+			}
+
+			long[][] columns = batch.getColumns();
+			long[] keys = batch.getColumn(probeKey);
+			int size = 0;
+			for (int i = 0; i < batch.size(); i++) {
+				int row = batch.row(i);
+				if (keys[row] == Dictionary.MISSING) {
+					continue;
+				}
+				int p = partitionOf(keys[row]);
+				if (p == 0 && resident) {
+					selection[size++] = row;
+				} else if (buildFiles[p].size() > 0) {
+					probeFiles[p].write(columns, row);
+					spilled++;
+				}
+			}
+			if (size > 0) {
+				return new Batch(columns, selection, size);
+			}
+		}
+
+		if (buildFiles != null) {
+			for (SpillFile file : probeFiles) {
+				file.flush();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Move on to the next chunk of build tuples of a spilled partition, and read
+	 * the probe tuples of the partition again
+	 * @return false if there are no more partitions
+	 */
+	private boolean nextChunk() {
+		if (buildFiles == null) {
+			return false;
+		}
+
+		while (true) {
+			if (buildReader == null) {
+				if (partition == 0 && resident) {
+					partition++;
+				}
+				while (partition <= partitionMask &&
+						(buildFiles[partition].size() == 0 || probeFiles[partition].size() == 0)) {
+					partition++;
+				}
+				if (partition > partitionMask) {
+					return false;
+				}
+				buildReader = buildFiles[partition].reader();
+			}
+
+			// read build tuples up to the budget
+			build.clear();
+			long[][] columns = columns(getBuild().getAttributes().size());
+			int size;
+			while ((build.size() == 0 || footprint() < memoryBudget) && (size = buildReader.read(columns, Batch.SIZE)) > 0) {
+				build.add(new Batch(columns, size));
+			}
+			if (build.size() == 0) {
+				buildReader = null;
+				partition++;
+				continue;
+			}
+
+			table = table(build);
+			probeReader = probeFiles[partition].reader();
+			probe = null;
+			probePosition = 0;
+			match = -1;
+			probeDone = false;
+			return true;
+		}
+	}
+
+	protected Batch fetchBatch() {
+		while (true) {
+			Batch batch = probe();
+			if (batch != null) {
+				return batch;
+			}
+			if (!nextChunk()) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Look up the probe tuples in the current table
+	 * @return a batch of joined tuples, or null when the probe tuples are used up
+	 */
+	private Batch probe() {
+		if (probeDone) {
+			return null;
+		}
+
+		int size = 0;
+		int probeWidth = buildLeft ? rightWidth : leftWidth;
+		int buildWidth = buildLeft ? leftWidth : rightWidth;
+		int probeOffset = buildLeft ? leftWidth : 0;
+		int buildOffset = buildLeft ? 0 : leftWidth;
+
+		while (size < Batch.SIZE) {
+			if (match < 0) {
+				// find the next probe tuple with a match
+				if (probe != null && probePosition < probe.size()) {
+					long key = probe.getColumn(probeKey)[probe.row(probePosition)];
+					match = key == Dictionary.MISSING || build.size() == 0 ? -1 : table.first(key);
+					if (match < 0) {
+						probePosition++;
+					}
+					continue;
+				}
+				probe = nextProbe();
+				probePosition = 0;
+				if (probe == null) {
+					probeDone = true;
+					break;
+				}
+				continue;
+			}
+
+			int row = probe.row(probePosition);
+			for (int c = 0; c < probeWidth; c++) {
+				output[probeOffset + c][size] = probe.getColumn(c)[row];
+			}
+			for (int c = 0; c < buildWidth; c++) {
+				output[buildOffset + c][size] = build.getColumn(c)[match];
+			}
+			size++;
+
+			match = table.next(match);
+			if (match < 0) {
+				probePosition++;
+			}
+		}
+		return size == 0 ? null : new Batch(output, size);
+	}
+
+	public void close() {
+		if (buildFiles != null) {
+			for (int p = 0; p < buildFiles.length; p++) {
+				buildFiles[p].close();
+				probeFiles[p].close();
+			}
+			buildFiles = null;
+			probeFiles = null;
+		}
+		buildReader = null;
+		probeReader = null;
+		build = null;
+		table = null;
+		probe = null;
+		super.close();
+	}
+
+	public String toString() {
+		return "HASH JOIN [" + predicate + "] build " + (buildLeft ? "left" : "right") +
+				(spilled > 0 ? " spilled " + spilled : "");
+	}
+}
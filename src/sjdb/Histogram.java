@@ -0,0 +1,163 @@
+package sjdb;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * This class represents an equi-depth histogram over the values of a
+ * numeric attribute. The histogram is given by its bucket boundaries
+ * b0 <= b1 <= ... <= bk, and each of the k buckets [b(i-1), bi] holds the
+ * same fraction 1/k of the tuples.
+ *
+ * Values are compared as numbers; ISO dates (yyyy-mm-dd) are compared by
+ * their day number, so date columns can have histograms too.
+ */
+public class Histogram {
+	private final double[] bounds;
+
+	/**
+	 * Create a histogram with the given bucket boundaries
+	 * @param bounds at least two boundaries, in ascending order
+	 */
+	public Histogram(double[] bounds) {
+		if (bounds.length < 2) {
+			throw new IllegalArgumentException("A histogram needs at least two bucket boundaries");
+		}
+		for (int i = 1; i < bounds.length; i++) {
+			if (bounds[i] < bounds[i - 1]) {
+				throw new IllegalArgumentException("Histogram bucket boundaries are not in ascending order");
+			}
+		}
+		this.bounds = bounds.clone();
+	}
+
+	/**
+	 * @return the number of buckets
+	 */
+	public int getBucketCount() {
+		return bounds.length - 1;
+	}
+
+	/**
+	 * @param i the number of the boundary, from 0 to the number of buckets
+	 * @return the boundary
+	 */
+	public double getBound(int i) {
+		return bounds[i];
+	}
+
+	/**
+	 * @return the smallest value
+	 */
+	public double getMin() {
+		return bounds[0];
+	}
+
+	/**
+	 * @return the largest value
+	 */
+	public double getMax() {
+		return bounds[bounds.length - 1];
+	}
+
+	/**
+	 * Return the fraction of tuples with a value below the given one,
+	 * assuming the values are spread evenly within each bucket.
+	 * @param value
+	 * @return
+	 */
+	public double fractionBelow(double value) {
+		if (value <= getMin()) {
+			return 0;
+		}
+		if (value >= getMax()) {
+			return 1;
+		}
+
+		int k = getBucketCount();
+		for (int i = 0; i < k; i++) {
+			if (value < bounds[i + 1]) {
+				double width = bounds[i + 1] - bounds[i];
+				double within = width > 0 ? (value - bounds[i]) / width : 0;
+				return (i + within) / k;
+			}
+		}
+		return 1;
+	}
+
+	/**
+	 * Return true if a value lies between the smallest and largest values.
+	 * Values which are not numbers are assumed to lie in the histogram.
+	 * @param value
+	 * @return
+	 */
+	public boolean covers(String value) {
+		double v = toNumber(value);
+		return Double.isNaN(v) || (v >= getMin() && v <= getMax());
+	}
+
+	/**
+	 * Convert a value to the number it is compared by: a decimal number, or the
+	 * day number of an ISO date.
+	 * @param value
+	 * @return the number, or NaN if the value is neither
+	 */
+	public static double toNumber(String value) {
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			// not a number, maybe a date
+		}
+		try {
+			return LocalDate.parse(value).toEpochDay();
+		} catch (RuntimeException e) {
+			return Double.NaN;
+		}
+	}
+
+	/**
+	 * Parse a histogram of the form b0/b1/.../bk
+	 * @param text
+	 * @return
+	 */
+	public static Histogram parse(String text) {
+		String[] parts = text.split("/");
+		double[] bounds = new double[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			bounds[i] = toNumber(parts[i]);
+			if (Double.isNaN(bounds[i])) {
+				throw new IllegalArgumentException("Histogram bucket boundary " + parts[i] + " is not a number");
+			}
+		}
+		return new Histogram(bounds);
+	}
+
+	/**
+	 * Render this histogram in the form read by parse()
+	 * @return
+	 */
+	public String render() {
+		StringBuilder ret = new StringBuilder();
+		for (int i = 0; i < bounds.length; i++) {
+			if (i > 0) {
+				ret.append('/');
+			}
+			ret.append(bounds[i] == Math.rint(bounds[i]) ? Long.toString((long) bounds[i]) : Double.toString(bounds[i]));
+		}
+		return ret.toString();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof Histogram && Arrays.equals(bounds, ((Histogram) obj).bounds);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(bounds);
+	}
+
+	public String toString() {
+		return render();
+	}
+}
@@ -5,21 +5,46 @@ package sjdb;
  * @author nmg
  */
 public class Join extends BinaryOperator {
+	/**
+	 * The algorithms which the executor may use for a join
+	 */
+	public enum Method {
+		HASH, MERGE
+	}
+
 	private Predicate predicate;
+	private Method method;
+
 	/**
-	 * Create a new join operator.
+	 * Create a new join operator, to be run as a hash join.
 	 * @param left Left child operator
 	 * @param right Right child operator
 	 * @param predicate Join predicate
 	 */
 	public Join(Operator left, Operator right, Predicate predicate) {
+		this(left, right, predicate, Method.HASH);
+	}
+
+	/**
+	 * Create a new join operator.
+	 * @param left Left child operator
+	 * @param right Right child operator
+	 * @param predicate Join predicate
+	 * @param method Join algorithm chosen by the optimiser
+	 */
+	public Join(Operator left, Operator right, Predicate predicate, Method method) {
 		super(left, right);
 		this.predicate = predicate;
+		this.method = method;
 	}
 
 	public Predicate getPredicate() {
 		return this.predicate;
 	}
+
+	public Method getMethod() {
+		return this.method;
+	}
 	
 	/* (non-Javadoc)
 	 * @see sjdb.BinaryOperator#accept(sjdb.OperatorVisitor)
@@ -33,7 +58,8 @@ public class Join extends BinaryOperator {
 	 * @see java.lang.Object#toString()
 	 */
 	public String toString() {
-		return "(" + this.getLeft().toString() + ") JOIN [" + 
+		return "(" + this.getLeft().toString() + ") " +
+				(this.method == Method.MERGE ? "MERGE JOIN [" : "JOIN [") + 
 				this.getPredicate().toString() +
 				"] (" + this.getRight().toString() + ")";
 	}
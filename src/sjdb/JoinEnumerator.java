@@ -0,0 +1,15 @@
+package sjdb;
+
+/**
+ * A search strategy for the join order of a `QueryGraph`.
+ *
+ * @author Oushuo Huang
+ * **/
+
+interface JoinEnumerator {
+    /**
+     * @param graph the query graph to be planned
+     * @return a plan over every leaf of the graph
+     */
+    SubPlan enumerate(QueryGraph graph);
+}
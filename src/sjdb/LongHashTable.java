@@ -0,0 +1,113 @@
+package sjdb;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressed hash table from long keys to the rows which hold them,
+ * for the build side of a hash join. Keys and rows are kept in primitive
+ * arrays, so no key is ever boxed. Each slot holds a distinct key and the
+ * last row added with it; the other rows with the same key are chained
+ * through an array indexed by row.
+ */
+class LongHashTable {
+	private static final int EMPTY = -1;
+
+	private long[] keys;
+	private int[] heads;
+	private int[] next;
+	private int mask;
+	private int distinct;
+
+	/**
+	 * @param expected the expected number of rows
+	 */
+	LongHashTable(int expected) {
+		int capacity = Integer.highestOneBit(Math.max(expected, 8) * 2 - 1) << 1;
+		this.keys = new long[capacity];
+		this.heads = new int[capacity];
+		Arrays.fill(heads, EMPTY);
+		this.next = new int[Math.max(expected, 8)];
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * Add a row with the given key
+	 * @param key
+	 * @param row the row, numbered from 0
+	 */
+	void put(long key, int row) {
+		if (row >= next.length) {
+			next = Arrays.copyOf(next, Math.max(row + 1, next.length * 2));
+		}
+		if (distinct * 2 >= keys.length) {
+			rehash(keys.length * 2);
+		}
+
+		int slot = slot(key);
+		if (heads[slot] == EMPTY) {
+			keys[slot] = key;
+			distinct++;
+		}
+		next[row] = heads[slot];
+		heads[slot] = row;
+	}
+
+	/**
+	 * @param key
+	 * @return a row with the given key, or -1 if there is none
+	 */
+	int first(long key) {
+		return heads[slot(key)];
+	}
+
+	/**
+	 * @param row a row returned by first() or next()
+	 * @return another row with the same key, or -1 if there are no more
+	 */
+	int next(int row) {
+		return next[row];
+	}
+
+	/**
+	 * @return the number of distinct keys
+	 */
+	int distinct() {
+		return distinct;
+	}
+
+	// the slot holding the key, or the empty slot where it belongs
+	private int slot(long key) {
+		int slot = hash(key) & mask;
+		while (heads[slot] != EMPTY && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		int[] oldHeads = heads;
+		keys = new long[capacity];
+		heads = new int[capacity];
+		Arrays.fill(heads, EMPTY);
+		mask = capacity - 1;
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldHeads[i] != EMPTY) {
+				int slot = slot(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				heads[slot] = oldHeads[i];
+			}
+		}
+	}
+
+	static int hash(long key) {
+		// the finaliser of MurmurHash3, so that sequential keys spread over the slots
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+}
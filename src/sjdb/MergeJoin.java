@@ -0,0 +1,252 @@
+package sjdb;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * This class executes a Join whose predicate is attr=attr with a sort-merge
+ * join. An input which already comes out in order of its join attribute is
+ * read a batch at a time; any other input is copied into columns and sorted
+ * in memory when the operator is opened (the executor puts a PhysicalSort
+ * below such inputs, so that they are sorted within the memory budget). The two sorted inputs are then merged: the
+ * right tuples with each join value are copied into a group, and every left
+ * tuple with that value is concatenated with each tuple in the group.
+ * 
+ * The tuples come out in order of the join attributes, so a later merge
+ * join on the same attributes does not sort them again.
+ */
+public class MergeJoin extends VectorOperator {
+	private final Predicate predicate;
+	private final int leftWidth;
+	private final int rightWidth;
+	private final int leftKey;
+	private final int rightKey;
+	private final long[][] output;
+	private Input left;
+	private Input right;
+	private ColumnBuffer group;
+	private long groupKey;
+	private boolean hasGroup;
+	private int groupPosition;
+	private boolean hasLeft;
+	private boolean hasRight;
+
+	/**
+	 * @param op the join
+	 * @param left the left input
+	 * @param right the right input
+	 */
+	public MergeJoin(Join op, PhysicalOperator left, PhysicalOperator right) {
+		super(op, NestedLoopJoin.concat(left.getAttributes(), right.getAttributes()), left, right);
+		this.predicate = op.getPredicate();
+		this.leftWidth = left.getAttributes().size();
+		this.rightWidth = right.getAttributes().size();
+		this.output = columns(leftWidth + rightWidth);
+
+		int l = Condition.position(getAttributes(), predicate.getLeftAttribute());
+		int r = Condition.position(getAttributes(), predicate.getRightAttribute());
+		if (predicate.comparesValue() || (l < leftWidth) == (r < leftWidth)) {
+			throw new IllegalArgumentException("Merge join predicate " + predicate + " does not join its inputs");
+		}
+		this.leftKey = Math.min(l, r);
+		this.rightKey = Math.max(l, r) - leftWidth;
+
+		Set<Attribute> order = new HashSet<Attribute>();
+		order.add(predicate.getLeftAttribute());
+		order.add(predicate.getRightAttribute());
+		if (isSorted(left, leftKey)) {
+			order.addAll(left.getOrder());
+		}
+		if (isSorted(right, rightKey)) {
+			order.addAll(right.getOrder());
+		}
+		setOrder(order);
+	}
+
+	private static boolean isSorted(PhysicalOperator input, int key) {
+		return input.getOrder().contains(input.getAttributes().get(key));
+	}
+
+	public void open() {
+		super.open();
+		left = input(getInput(0), leftKey);
+		right = input(getInput(1), rightKey);
+		group = new ColumnBuffer(rightWidth);
+		hasGroup = false;
+		hasLeft = left.next();
+		hasRight = right.next();
+	}
+
+	private static Input input(PhysicalOperator input, int key) {
+		if (isSorted(input, key)) {
+			return new StreamInput(input, key);
+		}
+		ColumnBuffer buffer = new ColumnBuffer(input.getAttributes().size());
+		long[][] columns = input instanceof VectorOperator ? null : columns(input.getAttributes().size());
+		Batch batch;
+		while ((batch = nextBatch(input, columns)) != null) {
+			buffer.add(batch);
+		}
+		return new SortedInput(buffer, key);
+	}
+
+	protected Batch fetchBatch() {
+		int size = 0;
+		long[] tuple = new long[rightWidth];
+
+		while (size < Batch.SIZE && hasLeft) {
+			long key = left.key();
+			if (hasGroup && key == groupKey) {
+				// concatenate the left tuple with the next tuple of the group
+				for (int c = 0; c < leftWidth; c++) {
+					output[c][size] = left.get(c);
+				}
+				for (int c = 0; c < rightWidth; c++) {
+					output[leftWidth + c][size] = group.getColumn(c)[groupPosition];
+				}
+				size++;
+				if (++groupPosition == group.size()) {
+					groupPosition = 0;
+					hasLeft = left.next();
+				}
+				continue;
+			}
+
+			hasGroup = false;
+			if (key == Dictionary.MISSING) {
+				hasLeft = left.next();
+				continue;
+			}
+			while (hasRight && right.key() < key) {
+				hasRight = right.next();
+			}
+			if (!hasRight) {
+				hasLeft = false;
+				break;
+			}
+			if (right.key() > key) {
+				hasLeft = left.next();
+				continue;
+			}
+
+			// collect the right tuples with the same key
+			group.clear();
+			while (hasRight && right.key() == key) {
+				for (int c = 0; c < rightWidth; c++) {
+					tuple[c] = right.get(c);
+				}
+				group.add(tuple);
+				hasRight = right.next();
+			}
+			groupKey = key;
+			groupPosition = 0;
+			hasGroup = true;
+		}
+		return size == 0 ? null : new Batch(output, size);
+	}
+
+	public void close() {
+		left = null;
+		right = null;
+		group = null;
+		super.close();
+	}
+
+	public String toString() {
+		return "MERGE JOIN [" + predicate + "]";
+	}
+
+	/**
+	 * A sorted input, read one tuple at a time
+	 */
+	private interface Input {
+		/**
+		 * Move to the next tuple
+		 * @return false if there are no more tuples
+		 */
+		boolean next();
+
+		/**
+		 * @return the join value of the current tuple
+		 */
+		long key();
+
+		/**
+		 * @param c the position of an attribute
+		 * @return the value of the attribute in the current tuple
+		 */
+		long get(int c);
+	}
+
+	/**
+	 * An input which is already sorted, read a batch at a time
+	 */
+	private static class StreamInput implements Input {
+		private final PhysicalOperator input;
+		private final long[][] columns;
+		private final int key;
+		private Batch batch;
+		private int position;
+		private int row;
+
+		private StreamInput(PhysicalOperator input, int key) {
+			this.input = input;
+			this.key = key;
+			this.columns = input instanceof VectorOperator ? null : columns(input.getAttributes().size());
+		}
+
+		public boolean next() {
+			position++;
+			while (batch == null || position >= batch.size()) {
+				batch = nextBatch(input, columns);
+				position = 0;
+				if (batch == null) {
+					return false;
+				}
+			}
+			row = batch.row(position);
+			return true;
+		}
+
+		public long key() {
+			return batch.getColumn(key)[row];
+		}
+
+		public long get(int c) {
+			return batch.getColumn(c)[row];
+		}
+	}
+
+	/**
+	 * An input which has been copied into columns and sorted
+	 */
+	private static class SortedInput implements Input {
+		private final ColumnBuffer buffer;
+		private final int[] rows;
+		private final long[] keys;
+		private int position = -1;
+		private int row;
+
+		private SortedInput(ColumnBuffer buffer, int key) {
+			this.buffer = buffer;
+			this.rows = buffer.sortedRows(key);
+			this.keys = buffer.getColumn(key);
+		}
+
+		public boolean next() {
+			if (++position >= rows.length) {
+				return false;
+			}
+			row = rows[position];
+			return true;
+		}
+
+		public long key() {
+			return keys[row];
+		}
+
+		public long get(int c) {
+			return buffer.getColumn(c)[row];
+		}
+	}
+}
@@ -3,8 +3,15 @@
  */
 package sjdb;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * This class represents a named relation which is fed into a query plan
+ * 
+ * The attributes of a relation loaded from a binary catalogue are only
+ * read when they are first needed, by a Loader. Once the Catalogue has
+ * published a relation, its attributes and sort order cannot be changed.
  * @author nmg
  */
 public class NamedRelation extends Relation {
@@ -12,17 +19,156 @@ public class NamedRelation extends Relation {
 	 * The name of the named relation
 	 */
 	private String name;
+	/**
+	 * The attribute the tuples are stored in order of, if any
+	 */
+	private Attribute sortedOn;
+	/**
+	 * Reads the attributes when they are first needed, or null once they have been read
+	 */
+	private volatile Loader loader;
+	/**
+	 * The attributes, read-only, once the relation has been published by a Catalogue
+	 */
+	private volatile List<Attribute> published;
+
+	/**
+	 * Reads the attributes of a relation whose attributes are loaded lazily
+	 */
+	interface Loader {
+		/**
+		 * @param attributes receives the attributes of the relation
+		 * @return the position of the attribute the tuples are stored in order of, or -1
+		 */
+		int load(List<Attribute> attributes);
+	}
 	
 	/**
 	 * Create a new named relation with a given name and tuple count
 	 * @param name The name of the relation
 	 * @param size The tuple count
 	 */
-	public NamedRelation(String name, int size) {
+	public NamedRelation(String name, long size) {
 		super(size);
 		this.name = name;
 	}
 
+	/**
+	 * Create a named relation whose attributes are read when they are first needed
+	 * @param name The name of the relation
+	 * @param size The tuple count
+	 * @param loader Reads the attributes
+	 */
+	NamedRelation(String name, long size, Loader loader) {
+		this(name, size);
+		this.loader = loader;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.Relation#getAttributes()
+	 */
+	@Override
+	public List<Attribute> getAttributes() {
+		if (loader != null) {
+			load();
+		}
+		List<Attribute> attributes = published;
+		return attributes != null ? attributes : super.getAttributes();
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.Relation#addAttribute(sjdb.Attribute)
+	 */
+	@Override
+	public void addAttribute(Attribute attribute) {
+		checkUnpublished();
+		super.addAttribute(attribute);
+	}
+
+	/**
+	 * Add an attribute in place of any attribute of the same name, so that
+	 * statistics gathered again replace the old ones
+	 * @param attribute
+	 */
+	void putAttribute(Attribute attribute) {
+		checkUnpublished();
+		List<Attribute> attributes = getAttributes();
+		int index = attributes.indexOf(attribute);
+		if (index < 0) {
+			super.addAttribute(attribute);
+			return;
+		}
+		Attribute replacement = withinTupleCount(attribute);
+		attributes.set(index, replacement);
+		if (replacement.equals(sortedOn)) {
+			sortedOn = replacement;
+		}
+	}
+
+	/**
+	 * Make the relation read-only, when the Catalogue publishes it
+	 */
+	void freeze() {
+		published = Collections.unmodifiableList(super.getAttributes());
+	}
+
+	private void checkUnpublished() {
+		if (published != null) {
+			throw new UnsupportedOperationException("Named relation " + name + " has been published and cannot be changed");
+		}
+	}
+
+	// the attributes are added before the loader is cleared, so other threads see all of them or wait
+	private synchronized void load() {
+		if (loader != null) {
+			List<Attribute> attributes = super.getAttributes();
+			int sorted = loader.load(attributes);
+			// the value counts are limited as addAttribute limits those of a text catalogue
+			for (int i = 0; i < attributes.size(); i++) {
+				attributes.set(i, withinTupleCount(attributes.get(i)));
+			}
+			if (sorted >= 0) {
+				sortedOn = attributes.get(sorted);
+			}
+			loader = null;
+		}
+	}
+
+	/**
+	 * Return the attribute the tuples of this relation are stored in order of
+	 * @return Attribute, or null if the tuples are not stored in order
+	 */
+	public Attribute getSortedOn() {
+		if (loader != null) {
+			load();
+		}
+		return sortedOn;
+	}
+
+	/**
+	 * Record that the tuples of this relation are stored in order of an attribute
+	 * @param attribute Attribute, or null if the tuples are not stored in order
+	 */
+	void setSortedOn(Attribute attribute) {
+		checkUnpublished();
+		if (loader != null) {
+			load();
+		}
+		this.sortedOn = attribute;
+	}
+
+	/**
+	 * Return a copy of this relation, with the same attributes, which can be
+	 * changed without changing this one
+	 * @return NamedRelation
+	 */
+	NamedRelation copy() {
+		NamedRelation copy = new NamedRelation(name, getTupleCount());
+		copy.getAttributes().addAll(getAttributes());
+		copy.sortedOn = sortedOn;
+		return copy;
+	}
+
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
@@ -0,0 +1,78 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class executes a Join or a Product with a nested loop: the tuples of
+ * the right input are read into memory when the operator is opened, and each
+ * tuple of the left input is concatenated with each of them in turn. For a
+ * Join, only the concatenated tuples which satisfy the predicate are returned.
+ */
+public class NestedLoopJoin extends PhysicalOperator {
+	private final Condition condition;
+	private final int leftWidth;
+	private final List<long[]> inner = new ArrayList<long[]>();
+	private long[] outer;
+	private int position;
+
+	/**
+	 * @param op the Join or Product
+	 * @param left the left input
+	 * @param right the right input
+	 * @param dictionary the dictionary in which the tuples are encoded
+	 */
+	public NestedLoopJoin(BinaryOperator op, PhysicalOperator left, PhysicalOperator right, Dictionary dictionary) {
+		super(op, concat(left.getAttributes(), right.getAttributes()), left, right);
+		this.leftWidth = left.getAttributes().size();
+		this.condition = op instanceof Join ?
+				new Condition(((Join) op).getPredicate(), getAttributes(), dictionary) : null;
+		// the tuples come out in the order of the left input
+		setOrder(left.getOrder());
+	}
+
+	static List<Attribute> concat(List<Attribute> left, List<Attribute> right) {
+		List<Attribute> attributes = new ArrayList<Attribute>(left);
+		attributes.addAll(right);
+		return attributes;
+	}
+
+	public void open() {
+		super.open();
+		inner.clear();
+		long[] tuple;
+		while ((tuple = getInput(1).next()) != null) {
+			inner.add(tuple);
+		}
+		outer = null;
+		position = 0;
+	}
+
+	protected long[] fetch() {
+		while (true) {
+			if (outer == null || position == inner.size()) {
+				if (inner.isEmpty() || (outer = getInput(0).next()) == null) {
+					return null;
+				}
+				position = 0;
+			}
+
+			long[] right = inner.get(position++);
+			if (condition == null || condition.matches(outer, right)) {
+				long[] tuple = new long[leftWidth + right.length];
+				System.arraycopy(outer, 0, tuple, 0, leftWidth);
+				System.arraycopy(right, 0, tuple, leftWidth, right.length);
+				return tuple;
+			}
+		}
+	}
+
+	public void close() {
+		inner.clear();
+		super.close();
+	}
+
+	public String toString() {
+		return condition == null ? "PRODUCT" : "NESTED LOOP JOIN [" + condition + "]";
+	}
+}
@@ -0,0 +1,54 @@
+package sjdb;
+
+/**
+ * The result of one call to `Optimiser.plan`: the optimised plan, and how it was found.
+ * Unlike the optimiser, which may be shared, each result belongs to the query it was
+ * planned for.
+ *
+ * @author Oushuo Huang
+ * **/
+public class OptimisedPlan {
+    private final Operator plan;
+    private final Optimiser.Strategy strategy;
+    private final Estimator estimator;
+    private final long planningNanos;
+
+    OptimisedPlan(Operator plan, Optimiser.Strategy strategy, Estimator estimator, long planningNanos) {
+        this.plan = plan;
+        this.strategy = strategy;
+        this.estimator = estimator;
+        this.planningNanos = planningNanos;
+    }
+
+    /**
+     * @return the optimised plan, with estimates
+     */
+    public Operator getPlan() {
+        return plan;
+    }
+
+    /**
+     * @return the join order search used for the query
+     */
+    public Optimiser.Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * @return the estimator used for sub-plans by the join order search, with its memo hit and miss counts
+     */
+    public Estimator getEstimator() {
+        return estimator;
+    }
+
+    /**
+     * @return the time taken to optimise the plan, in nanoseconds
+     */
+    public long getPlanningNanos() {
+        return planningNanos;
+    }
+
+    public String toString() {
+        return plan.toString();
+    }
+}
@@ -1,67 +1,149 @@
 package sjdb;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * @author Oushuo Huang
  * **/
 
-public class Optimiser implements PlanVisitor {
-    private final Estimator es = new Estimator();
-//    private Inspector inspector = new Inspector(); // debug only
+public class Optimiser {
+    /**
+     * The join order search used for a query
+     */
+    public enum Strategy {
+        EXHAUSTIVE, // dynamic programming over every subset of relations
+        GREEDY,     // greedy operator ordering, for wide FROM lists
+        RANDOMIZED  // transformations of the greedy plan within a planning budget
+    }
 
-    private final Set<Predicate> predicateSet = new HashSet<>();
-    private final Set<Scan> scanSet = new HashSet<>();
-    private List<Attribute> finalAttributes = new ArrayList<>(); // the top level project attributes if exists
+    /**
+     * The default maximum number of relations planned by exhaustive search
+     */
+    public static final int DEFAULT_EXHAUSTIVE_THRESHOLD = 12;
 
-    public void visit(Scan op) {
-        scanSet.add(new Scan((NamedRelation) op.getRelation()));
-    }
+    private static final long RANDOM_SEED = 42; // fixed, so that the same query gets the same plan
+
+    private int exhaustiveThreshold = DEFAULT_EXHAUSTIVE_THRESHOLD;
+    private boolean leftDeep = false;
+    private long budgetMillis;
+    private long budgetIterations;
+    private CostModel costModel = new DefaultCostModel();
+
+    /**
+     * The parts of the canonical plan of one query, collected by visiting it
+     */
+    private static class Query implements PlanVisitor {
+        private final Set<Predicate> predicateSet = new LinkedHashSet<>();
+        private final Set<Scan> scanSet = new LinkedHashSet<>();
+        private List<Attribute> finalAttributes = new ArrayList<>(); // the top level project attributes if exists
+
+        public void visit(Scan op) {
+            scanSet.add(new Scan((NamedRelation) op.getRelation()));
+        }
+
+        public void visit(Project op) {
+            if (finalAttributes.size() == 0) {
+                finalAttributes = op.getAttributes();
+            }
+        }
+
+        public void visit(Product op) {
+        }
 
-    public void visit(Project op) {
-        if (finalAttributes.size() == 0) {
-            finalAttributes = op.getAttributes();
+        public void visit(Join op) {
+
+        }
+
+        public void visit(Select op) {
+            predicateSet.add(op.getPredicate());
         }
     }
 
-    public void visit(Product op) {
+    /**
+     * Create an optimiser. It keeps no state between queries, so once configured it may be
+     * reused, and shared by threads planning queries at the same time, each over a snapshot
+     * of the catalogue; the settings should not be changed while it is shared
+     * @param catalogue the catalogue
+     */
+    public Optimiser(Catalogue catalogue) {
     }
 
-    public void visit(Join op) {
+    /**
+     * Set the maximum number of relations for exhaustive search; wider queries are planned greedily
+     * @param exhaustiveThreshold the number of relations
+     */
+    public void setExhaustiveThreshold(int exhaustiveThreshold) {
+        this.exhaustiveThreshold = exhaustiveThreshold;
+    }
 
+    public int getExhaustiveThreshold() {
+        return exhaustiveThreshold;
     }
 
-    public void visit(Select op) {
-        predicateSet.add(op.getPredicate());
+    /**
+     * Restrict the join order search to left-deep plans, where every join has a single relation
+     * as one of its inputs. By default bushy plans such as `Join(Join(A,B), Join(C,D))` are also considered
+     * @param leftDeep whether only left-deep plans are considered
+     */
+    public void setLeftDeep(boolean leftDeep) {
+        this.leftDeep = leftDeep;
     }
 
-    public Optimiser(Catalogue catalogue) {
+    public boolean isLeftDeep() {
+        return leftDeep;
     }
 
-    public Operator optimise(Operator plan) {
-        plan.accept(this);
-        Set<Predicate> predicateSetCopy = new HashSet<>(predicateSet).stream().filter(predicate -> !predicate.equalsValue()).collect(Collectors.toSet());
+    /**
+     * Set the cost model which ranks candidate plans
+     * @param costModel the cost model
+     */
+    public void setCostModel(CostModel costModel) {
+        this.costModel = costModel;
+    }
 
-        List<Operator> list = moveDownSelect();
-        Operator result = reorderAndMoveDownProject(list, predicateSetCopy);
+    public CostModel getCostModel() {
+        return costModel;
+    }
 
-        System.out.println("reorder result: " + result);
-//        result.accept(inspector);
-        System.out.println("reorder render: " + result.getOutput().render());
+    /**
+     * Set the planning budget for queries above the exhaustive threshold. With a budget they are
+     * improved by randomized search starting from the greedy plan, otherwise the greedy plan is used
+     * @param millis the wall-clock budget, 0 for no limit
+     * @param iterations the maximum number of transformations tried, 0 for no limit
+     */
+    public void setPlanningBudget(long millis, long iterations) {
+        this.budgetMillis = millis;
+        this.budgetIterations = iterations;
+    }
 
-        return result;
+    public Operator optimise(Operator plan) {
+        return plan(plan).getPlan();
+    }
+
+    /**
+     * Optimise a canonical plan. All the state of the search belongs to the call
+     * @param plan the canonical plan, with estimates, which is not changed
+     * @return the optimised plan, with the strategy and estimator which found it
+     */
+    public OptimisedPlan plan(Operator plan) {
+        long start = System.nanoTime();
+        Query query = new Query();
+        plan.accept(query);
+
+        Estimator es = new Estimator();
+        List<Operator> list = moveDownSelect(query, es);
+        return reorderAndMoveDownProject(list, query, es, start);
     }
 
     /**
      * This method will move down `Select` operator to the lowest level
      * @return the list of operators after moving down `Select` operator
      */
-    private List<Operator> moveDownSelect() {
+    private List<Operator> moveDownSelect(Query query, Estimator es) {
         List<Operator> result = new ArrayList<>();
 
-        for (Scan scan : scanSet) {
-            Operator moveDownSelectOp = moveDownSelect(scan, predicateSet);
+        for (Scan scan : query.scanSet) {
+            Operator moveDownSelectOp = moveDownSelect(scan, query.predicateSet, es);
             result.add(moveDownSelectOp);
         }
         return result;
@@ -71,18 +153,18 @@ public class Optimiser implements PlanVisitor {
      * @param op the operator to be optimised
      * @return the optimised operator, with updated `predicateSet`
      */
-    private Operator moveDownSelect(Operator op, Set<Predicate> predicateSet) {
+    private Operator moveDownSelect(Operator op, Set<Predicate> predicateSet, Estimator es) {
         Operator result = op;
         List<Attribute> attributes = result.getOutput().getAttributes();
         Iterator<Predicate> iter = predicateSet.iterator();
 
         while (iter.hasNext()) {
             Predicate predicate = iter.next();
-            // if attr=value or attr1=attr2, move down `Select` operator
-            if ((predicate.equalsValue() && attributes.contains(predicate.getLeftAttribute())) ||
-                    (!predicate.equalsValue() && attributes.contains(predicate.getLeftAttribute()) && attributes.contains(predicate.getRightAttribute()))) {
+            // if attr=value (or <, IN, ...) or attr1=attr2, move down `Select` operator
+            if ((predicate.comparesValue() && attributes.contains(predicate.getLeftAttribute())) ||
+                    (!predicate.comparesValue() && attributes.contains(predicate.getLeftAttribute()) && attributes.contains(predicate.getRightAttribute()))) {
                 result = new Select(result, predicate);
-                result.accept(es);
+                es.estimate(result);
                 iter.remove();
             }
         }
@@ -90,133 +172,41 @@ public class Optimiser implements PlanVisitor {
         return result;
     }
 
-    /**
-     * This method will get the projected attribute set based on the given predicates and operator
-     * @param predicates the list of predicates
-     * @param op the operator to be projected
-     * @return the set of projected attributes
-     */
-    private Set<Attribute> getProjectedAttributeSet(List<Predicate> predicates, Operator op) {
-        Set<Attribute> result = new HashSet<>();
-
-        for (Predicate predicate : predicates) {
-            result.add(predicate.getLeftAttribute());
-            if (!predicate.equalsValue()) {
-                result.add(predicate.getRightAttribute());
-            }
-        }
-
-        if (op instanceof Project) {
-            result.addAll(((Project) op).getAttributes());
-        }
-
-        result.addAll(finalAttributes);
-        return result;
-    }
-
-    /**
-     * This method will move down `Project` operator to the lowest level
-     * @param op the operator to be optimised
-     * @param projectedAttributeSet the set of projected attributes
-     * @return the optimised operator
-     */
-    private Operator moveDownProject(Operator op, Set<Attribute> projectedAttributeSet) {
-        Operator result = op;
-        List<Attribute> projectAttributes = new ArrayList<>(projectedAttributeSet);
-
-        projectAttributes.retainAll(result.getOutput().getAttributes());
-
-        // will project if the size of `projectedAttributeSet` is smaller than the size of attributes in the operator (always project if the operator is `Scan`
-        result = projectAttributes.size() > 0 && (projectAttributes.size() < result.getOutput().getAttributes().size() || op instanceof Scan) ? new Project(result, projectAttributes) : result;
-        if (result.getOutput() == null ) result.accept(es);
-        return result;
-    }
-
     /**
      * This method will reorder the operators and move down `Project` operator to the lowest level at the same time
      * @param operators the list of operators from `moveDownSelect`
-     * @param predicates the list of predicates to be joined
-     * @return the reordered operator
+     * @param query the query, whose remaining predicates are to be joined
+     * @param es the estimator used so far
+     * @param start when planning started, from `System.nanoTime`
+     * @return the reordered operator, with how it was found
      */
-    private Operator reorderAndMoveDownProject(List<Operator> operators, Set<Predicate> predicates) {
+    private OptimisedPlan reorderAndMoveDownProject(List<Operator> operators, Query query, Estimator es, long start) {
         /*
-         * I use 2 queues as date structure with the principle of dynamic programming
-         * It will start from the leaf node and move up to the root node, with updating cost by `Estimator`
+         * The best plan of each subset of operators is built once by `DPJoinEnumerator`,
+         * so the cost grows with the number of subsets rather than the number of permutations.
+         * Above the threshold even that is too slow, and `GreedyJoinEnumerator` is used instead,
+         * improved by `RandomJoinEnumerator` when the caller gives a planning budget.
+         * Only the randomized search estimates the same sub-plans over and over again,
+         * so it is the only one which memoizes estimates
          * */
-        Queue<Map.Entry<Operator, List<Operator>>> joinQueue = new LinkedList<>(); // Queue for joined operator, and remaining operators
-        Queue<Set<Predicate>> predicateQueue = new LinkedList<>(); // Queue for remaining predicates
-        Operator result = null;
-
-        // init state
-        joinQueue.add(new AbstractMap.SimpleEntry<>(null, operators));
-        predicateQueue.add(predicates);
-
-        // start bfs, update cost by `Estimator`
-        while (joinQueue.peek() != null) {
-            // get current state
-            Map.Entry<Operator, List<Operator>> entry = joinQueue.poll();
-            Set<Predicate> predicateSet = predicateQueue.poll();
-            Operator leftOp = entry.getKey();
-            List<Operator> remainOps = entry.getValue();
-
-            // find out the best join order by comparing cost from `getTupleCount()`
-            if (remainOps.size() == 0) {
-                if (result == null || leftOp.getOutput().getTupleCount() < result.getOutput().getTupleCount()) {
-                    result = leftOp; // update result if it is better
-                }
-            } else {
-                for (Operator rightOp : remainOps) {
-                    List<Operator> remainOpsCopy = new ArrayList<>(remainOps);
-
-                    assert predicateSet != null;
-                    Set<Predicate> predicateSetCopy = new HashSet<>(predicateSet);
-                    Operator newOp = null;
-
-                    // if leftOp is null, add the first operator
-                    if (leftOp == null) {
-                        newOp = moveDownProject(rightOp, getProjectedAttributeSet(new ArrayList<>(predicateSetCopy), rightOp));
-                    } else {
-                        List<Attribute> attributes1 = leftOp.getOutput().getAttributes();
-                        List<Attribute> attributes2 = rightOp.getOutput().getAttributes();
-
-                        for (Predicate predicate : predicateSet) {
-                            // move down project for left and right operator
-                            Operator leftProjectOp = moveDownProject(leftOp, getProjectedAttributeSet(new ArrayList<>(predicateSetCopy), leftOp));
-                            Operator rightProjectOp = moveDownProject(rightOp, getProjectedAttributeSet(new ArrayList<>(predicateSetCopy), rightOp));
-
-                            if (attributes1.contains(predicate.getLeftAttribute()) && attributes2.contains(predicate.getRightAttribute())) {
-                                newOp = new Join(leftProjectOp, rightProjectOp, predicate);
-                            } else if (attributes1.contains(predicate.getRightAttribute()) && attributes2.contains(predicate.getLeftAttribute())) {
-                                newOp = new Join(rightProjectOp, leftProjectOp, predicate);
-                            }
-
-                            predicateSetCopy.remove(predicate);
-                            if (newOp != null) {
-                                newOp.accept(es);
-                                break;
-                            }
-                        }
-
-                        if (newOp == null) {
-                            newOp = new Product(leftOp, rightOp);
-                            newOp.accept(es);
-                        }
-                    }
-
-                    // update queues
-                    remainOpsCopy.remove(rightOp);
-                    joinQueue.add(new AbstractMap.SimpleEntry<>(newOp, remainOpsCopy));
-                    predicateQueue.add(predicateSetCopy);
-                }
-            }
-        }
-
-        assert result != null;
-        if (result.getOutput().getAttributes().size() > finalAttributes.size() && finalAttributes.size() > 0) {
-           result = new Project(result, new ArrayList<>(finalAttributes));
-           result.accept(es);
+        JoinEnumerator enumerator;
+        Strategy strategy;
+        Estimator joinEstimator = es; // the estimator used by the join order search
+
+        if (operators.size() <= exhaustiveThreshold) {
+            strategy = Strategy.EXHAUSTIVE;
+            enumerator = new DPJoinEnumerator(leftDeep);
+        } else if (budgetMillis > 0 || budgetIterations > 0) {
+            strategy = Strategy.RANDOMIZED;
+            enumerator = new RandomJoinEnumerator(budgetMillis, budgetIterations, RANDOM_SEED, leftDeep);
+            joinEstimator = new Estimator(true);
+        } else {
+            strategy = Strategy.GREEDY;
+            enumerator = new GreedyJoinEnumerator(leftDeep);
         }
 
-        return result;
+        QueryGraph graph = new QueryGraph(operators, query.predicateSet, query.finalAttributes, joinEstimator, costModel);
+        Operator result = graph.finish(enumerator.enumerate(graph));
+        return new OptimisedPlan(result, strategy, joinEstimator, System.nanoTime() - start);
     }
 }
@@ -0,0 +1,128 @@
+package sjdb;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This class runs query plans a batch at a time, like VectorExecutor, but
+ * runs each Scan and the Selects and Projects above it as a
+ * ParallelPipeline on a ForkJoinPool, when the relation is large enough.
+ * A hash join whose larger input is such a pipeline becomes part of it:
+ * its smaller input is built into a table shared by the workers, which
+ * then probe it with the tuples of their own morsels.
+ *
+ * The number of workers of a pipeline is chosen from the tuple count of the
+ * relation in the catalogue: each worker should have at least two morsels
+ * to scan, so a relation of a few thousand tuples is still scanned on one
+ * thread, and a large one on as many threads as the pool has. The tuples
+ * of the workers are merged at the operator above the pipeline (a merge
+ * join, product, or the root of the plan), which runs on the calling thread.
+ *
+ * With a memory budget, hash joins are left to HashJoin, which can spill.
+ */
+public class ParallelExecutor extends VectorExecutor implements AutoCloseable {
+	/**
+	 * The default number of tuples in a morsel
+	 */
+	public static final long DEFAULT_MORSEL_SIZE = 16 * Batch.SIZE;
+	// the fewest morsels worth handing to each worker
+	private static final long MORSELS_PER_WORKER = 2;
+
+	private final ForkJoinPool pool;
+	private final boolean ownPool;
+	private long morselSize = DEFAULT_MORSEL_SIZE;
+
+	/**
+	 * Create an executor with a pool of one thread per processor, which is
+	 * shut down when the executor is closed
+	 * @param storage the source of the tuples of named relations
+	 */
+	public ParallelExecutor(Storage storage) {
+		this(storage, new ForkJoinPool(Runtime.getRuntime().availableProcessors()), true);
+	}
+
+	/**
+	 * @param storage the source of the tuples of named relations
+	 * @param pool the pool the pipelines run on, which the caller shuts down
+	 */
+	public ParallelExecutor(Storage storage, ForkJoinPool pool) {
+		this(storage, pool, false);
+	}
+
+	private ParallelExecutor(Storage storage, ForkJoinPool pool, boolean ownPool) {
+		super(storage);
+		this.pool = pool;
+		this.ownPool = ownPool;
+	}
+
+	/**
+	 * @param tuples the number of tuples in a morsel
+	 */
+	public void setMorselSize(long tuples) {
+		if (tuples < 1) {
+			throw new IllegalArgumentException("A morsel needs at least one tuple");
+		}
+		this.morselSize = tuples;
+	}
+
+	public long getMorselSize() {
+		return morselSize;
+	}
+
+	/**
+	 * Return the number of workers for a scan of a relation with the given
+	 * number of tuples
+	 * @param tuples
+	 * @return the number of workers, 1 for a scan on the calling thread
+	 */
+	public int degree(long tuples) {
+		return (int) Math.max(Math.min(pool.getParallelism(), tuples / (MORSELS_PER_WORKER * morselSize)), 1);
+	}
+
+	public void visit(Scan op) {
+		int degree = degree(op.getRelation().getTupleCount());
+		if (degree > 1) {
+			operators.push(new ParallelPipeline(op, storage, pool, degree, morselSize));
+		} else {
+			super.visit(op);
+		}
+	}
+
+	public void visit(Project op) {
+		if (operators.peek() instanceof ParallelPipeline) {
+			operators.push(((ParallelPipeline) operators.pop()).then(op));
+		} else {
+			super.visit(op);
+		}
+	}
+
+	public void visit(Select op) {
+		if (operators.peek() instanceof ParallelPipeline) {
+			operators.push(((ParallelPipeline) operators.pop()).then(op));
+		} else {
+			super.visit(op);
+		}
+	}
+
+	public void visit(Join op) {
+		PhysicalOperator right = operators.pop();
+		PhysicalOperator left = operators.pop();
+		boolean buildLeft = HashJoin.isSmaller(op.getLeft(), op.getRight());
+		PhysicalOperator probe = buildLeft ? right : left;
+		if (op.getMethod() != Join.Method.MERGE && getMemoryBudget() <= 0 && probe instanceof ParallelPipeline) {
+			operators.push(((ParallelPipeline) probe).join(op, buildLeft ? left : right, buildLeft));
+		} else {
+			operators.push(left);
+			operators.push(right);
+			super.visit(op);
+		}
+	}
+
+	/**
+	 * Shut down the pool, if the executor created it
+	 */
+	public void close() {
+		if (ownPool) {
+			pool.shutdown();
+		}
+	}
+}
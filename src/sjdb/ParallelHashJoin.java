@@ -0,0 +1,254 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class executes a Join whose predicate is attr=attr as a hash join
+ * inside a ParallelPipeline, whose workers all probe one shared table.
+ *
+ * Before the workers start, the build side is read into one set of
+ * columns, and its join attribute is put in a ConcurrentLongHashTable. A
+ * build side which is itself a parallel pipeline is materialised by its
+ * own workers; the tuples are then copied into place and added to the
+ * table by tasks on the pool, a range of rows each. The table is only
+ * read once it is built, so the probing workers share it without locks,
+ * each looking up the batches of its own morsels.
+ *
+ * The join has no memory budget: ParallelExecutor only uses it when the
+ * build side may be held in memory, as HashJoin does without a budget.
+ */
+class ParallelHashJoin implements ParallelPipeline.Stage {
+	// rows copied and added to the table by each build task
+	private static final int BUILD_ROWS = 64 * Batch.SIZE;
+
+	private final Join join;
+	private final Predicate predicate;
+	private final PhysicalOperator build;
+	private final boolean buildLeft;
+	private final List<Attribute> attributes;
+	private final int buildWidth;
+	private final int probeWidth;
+	private final int buildKey;
+	private final int probeKey;
+	private final ForkJoinPool pool;
+	private long[][] buildColumns;
+	private ConcurrentLongHashTable table;
+
+	/**
+	 * @param op the join
+	 * @param build the build side
+	 * @param probe the attributes of the probe side
+	 * @param buildLeft whether the build side is the left input of the join
+	 * @param pool the pool the table is built on
+	 */
+	ParallelHashJoin(Join op, PhysicalOperator build, List<Attribute> probe, boolean buildLeft, ForkJoinPool pool) {
+		this.join = op;
+		this.predicate = op.getPredicate();
+		this.build = build;
+		this.buildLeft = buildLeft;
+		this.buildWidth = build.getAttributes().size();
+		this.probeWidth = probe.size();
+		this.pool = pool;
+		this.attributes = Collections.unmodifiableList(buildLeft ?
+				NestedLoopJoin.concat(build.getAttributes(), probe) :
+				NestedLoopJoin.concat(probe, build.getAttributes()));
+
+		int leftWidth = buildLeft ? buildWidth : probeWidth;
+		int l = Condition.position(attributes, predicate.getLeftAttribute());
+		int r = Condition.position(attributes, predicate.getRightAttribute());
+		if (predicate.comparesValue() || (l < leftWidth) == (r < leftWidth)) {
+			throw new IllegalArgumentException("Hash join predicate " + predicate + " does not join its inputs");
+		}
+		int leftKey = Math.min(l, r);
+		int rightKey = Math.max(l, r) - leftWidth;
+		this.buildKey = buildLeft ? leftKey : rightKey;
+		this.probeKey = buildLeft ? rightKey : leftKey;
+	}
+
+	/**
+	 * @return the attributes of the joined tuples, those of the left input first
+	 */
+	List<Attribute> getAttributes() {
+		return attributes;
+	}
+
+	public VectorOperator apply(VectorOperator input) {
+		return new Probe(input);
+	}
+
+	public void prepare() {
+		List<ColumnBuffer> parts;
+		if (build instanceof ParallelPipeline) {
+			parts = ((ParallelPipeline) build).materialise();
+		} else {
+			ColumnBuffer buffer = new ColumnBuffer(buildWidth);
+			long[][] columns = build instanceof VectorOperator ? null : VectorOperator.columns(buildWidth);
+			Batch batch;
+			while ((batch = VectorOperator.nextBatch(build, columns)) != null) {
+				buffer.add(batch);
+			}
+			parts = Collections.singletonList(buffer);
+		}
+
+		long total = 0;
+		for (ColumnBuffer part : parts) {
+			total += part.size();
+		}
+		if (total > Integer.MAX_VALUE - 8) {
+			throw new IllegalStateException("The build side of " + predicate + " has too many tuples to hold");
+		}
+		buildColumns = new long[buildWidth][(int) total];
+		table = new ConcurrentLongHashTable(buildColumns[buildKey]);
+
+		List<Fill> fills = new ArrayList<Fill>();
+		int offset = 0;
+		for (ColumnBuffer part : parts) {
+			for (int from = 0; from < part.size(); from += BUILD_ROWS) {
+				fills.add(new Fill(part, from, Math.min(from + BUILD_ROWS, part.size()), offset + from));
+			}
+			offset += part.size();
+		}
+		pool.invoke(new BuildTask(fills, 0, fills.size()));
+	}
+
+	public void release() {
+		buildColumns = null;
+		table = null;
+	}
+
+	/**
+	 * A range of the rows of a part of the build side, and where they go
+	 */
+	private static class Fill {
+		private final ColumnBuffer part;
+		private final int from;
+		private final int to;
+		private final int offset;
+
+		private Fill(ColumnBuffer part, int from, int to, int offset) {
+			this.part = part;
+			this.from = from;
+			this.to = to;
+			this.offset = offset;
+		}
+	}
+
+	/**
+	 * Copies ranges of build rows into place and adds them to the table,
+	 * splitting in halves until there is a range to a task
+	 */
+	private class BuildTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final List<Fill> fills;
+		private final int low;
+		private final int high;
+
+		private BuildTask(List<Fill> fills, int low, int high) {
+			this.fills = fills;
+			this.low = low;
+			this.high = high;
+		}
+
+		protected void compute() {
+			if (high - low > 1) {
+				int middle = (low + high) >>> 1;
+				invokeAll(new BuildTask(fills, low, middle), new BuildTask(fills, middle, high));
+				return;
+			}
+			for (int f = low; f < high; f++) {
+				Fill fill = fills.get(f);
+				for (int c = 0; c < buildWidth; c++) {
+					System.arraycopy(fill.part.getColumn(c), fill.from, buildColumns[c], fill.offset, fill.to - fill.from);
+				}
+				for (int row = fill.offset; row < fill.offset + fill.to - fill.from; row++) {
+					table.put(row);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Looks up the batches of one worker in the shared table, filling output
+	 * batches of concatenated tuples as HashJoin does
+	 */
+	private class Probe extends VectorOperator {
+		private final long[][] output;
+		private Batch probe;
+		private int probePosition;
+		private int match;
+		private boolean probeDone;
+
+		private Probe(VectorOperator input) {
+			super(join, attributes, input);
+			this.output = columns(attributes.size());
+		}
+
+		public void open() {
+			super.open();
+			probe = null;
+			probePosition = 0;
+			match = -1;
+			probeDone = false;
+		}
+
+		protected Batch fetchBatch() {
+			if (probeDone) {
+				return null;
+			}
+
+			int size = 0;
+			int probeOffset = buildLeft ? buildWidth : 0;
+			int buildOffset = buildLeft ? 0 : probeWidth;
+			VectorOperator input = (VectorOperator) getInput(0);
+
+			while (size < Batch.SIZE) {
+				if (match < 0) {
+					// find the next probe tuple with a match
+					if (probe != null && probePosition < probe.size()) {
+						long key = probe.getColumn(probeKey)[probe.row(probePosition)];
+						match = key == Dictionary.MISSING ? -1 : table.first(key);
+						if (match < 0) {
+							probePosition++;
+						}
+						continue;
+					}
+					probe = input.nextBatch();
+					probePosition = 0;
+					if (probe == null) {
+						probeDone = true;
+						break;
+					}
+					continue;
+				}
+
+				int row = probe.row(probePosition);
+				for (int c = 0; c < probeWidth; c++) {
+					output[probeOffset + c][size] = probe.getColumn(c)[row];
+				}
+				for (int c = 0; c < buildWidth; c++) {
+					output[buildOffset + c][size] = buildColumns[c][match];
+				}
+				size++;
+
+				match = table.next(match);
+				if (match < 0) {
+					probePosition++;
+				}
+			}
+			return size == 0 ? null : new Batch(output, size);
+		}
+
+		public void close() {
+			probe = null;
+			super.close();
+		}
+
+		public String toString() {
+			return "PARALLEL HASH JOIN [" + predicate + "] build " + (buildLeft ? "left" : "right");
+		}
+	}
+}
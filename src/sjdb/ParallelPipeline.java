@@ -0,0 +1,412 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class executes a pipeline of a Scan and the operators above it which
+ * work a batch at a time without blocking (Selects, Projects, and the probe
+ * side of hash joins) on several threads of a ForkJoinPool.
+ *
+ * The relation is split into morsels, ranges of a fixed number of tuples,
+ * which the workers take in turn until there are none left. Each worker
+ * runs its own copy of the vector operators of the pipeline over its
+ * morsels, and hands the batches it produces to the operator above through
+ * a bounded queue: the tuples of the workers are merged at the next
+ * operator, which reads them on its own thread. They therefore come out in
+ * no particular order. A pipeline which feeds the build side of a parallel
+ * hash join is instead materialised, each worker keeping its own tuples.
+ *
+ * The build sides of the hash joins in the pipeline are its inputs, and
+ * their tables are built before the workers start. The workers are started
+ * by the first call for a batch, and wait on the queue as managed
+ * blockers, so that the pool can add threads while they wait for the
+ * operator above (a merge join reads two pipelines in turn).
+ */
+public class ParallelPipeline extends VectorOperator {
+	// the batch a worker hands over when it has finished
+	private static final Batch END = new Batch(new long[0][], 0);
+	// batches which may wait in the queue for each worker
+	private static final int QUEUED = 4;
+
+	private final Scan scan;
+	private final List<Stage> stages;
+	private final Storage storage;
+	private final ForkJoinPool pool;
+	private final int degree;
+	private final long morselSize;
+	private final String description;
+	private BlockingQueue<Batch> queue;
+	private AtomicLong nextMorsel;
+	private AtomicReference<Throwable> failure;
+	private volatile boolean cancelled;
+	private int running;
+
+	/**
+	 * A step of the pipeline above the scan, of which each worker runs its own operator
+	 */
+	interface Stage {
+		/**
+		 * @param input the operator of a worker below this step
+		 * @return the operator of the worker for this step
+		 */
+		VectorOperator apply(VectorOperator input);
+
+		/**
+		 * Prepare the step before the workers start, once its inputs are open
+		 */
+		default void prepare() {
+		}
+
+		/**
+		 * Release what prepare() holds, when the pipeline is closed
+		 */
+		default void release() {
+		}
+	}
+
+	/**
+	 * @param scan the scan at the bottom of the pipeline
+	 * @param storage the source of the tuples of the relation
+	 * @param pool the pool the workers run on
+	 * @param degree the number of workers
+	 * @param morselSize the number of tuples in each morsel
+	 */
+	public ParallelPipeline(Scan scan, Storage storage, ForkJoinPool pool, int degree, long morselSize) {
+		this(scan, Collections.<Stage>emptyList(), scan, scan.getRelation().getAttributes(), storage, pool,
+				degree, morselSize);
+	}
+
+	private ParallelPipeline(Scan scan, List<Stage> stages, Operator top, List<Attribute> attributes,
+			Storage storage, ForkJoinPool pool, int degree, long morselSize, PhysicalOperator... inputs) {
+		super(top, attributes, inputs);
+		this.scan = scan;
+		this.stages = stages;
+		this.storage = storage;
+		this.pool = pool;
+		this.degree = degree;
+		this.morselSize = morselSize;
+
+		StringBuilder description = new StringBuilder();
+		PhysicalOperator op = chain(new AtomicLong(), 0);
+		for (; op.getInputs().size() > 0; op = op.getInputs().get(0)) {
+			description.append(op).append(" <- ");
+		}
+		this.description = description.append(op).toString();
+	}
+
+	/**
+	 * Extend the pipeline with a Select or Project
+	 * @param op
+	 * @return the extended pipeline
+	 */
+	public ParallelPipeline then(final Operator op) {
+		final Dictionary dictionary = storage.getDictionary();
+		if (op instanceof Select) {
+			return then(op, getAttributes(), input -> new VectorSelect((Select) op, input, dictionary));
+		}
+		return then(op, ((Project) op).getAttributes(), input -> new VectorProject((Project) op, input));
+	}
+
+	/**
+	 * Extend the pipeline with the probe side of a parallel hash join, whose
+	 * other input is built into a table shared by the workers
+	 * @param op the join
+	 * @param build the build side
+	 * @param buildLeft whether the build side is the left input of the join
+	 * @return the extended pipeline
+	 */
+	public ParallelPipeline join(Join op, PhysicalOperator build, boolean buildLeft) {
+		ParallelHashJoin join = new ParallelHashJoin(op, build, getAttributes(), buildLeft, pool);
+		return then(op, join.getAttributes(), join, build);
+	}
+
+	private ParallelPipeline then(Operator op, List<Attribute> attributes, Stage stage, PhysicalOperator... inputs) {
+		List<Stage> extended = new ArrayList<Stage>(stages);
+		extended.add(stage);
+		List<PhysicalOperator> all = new ArrayList<PhysicalOperator>(getInputs());
+		Collections.addAll(all, inputs);
+		return new ParallelPipeline(scan, Collections.unmodifiableList(extended), op, attributes, storage, pool,
+				degree, morselSize, all.toArray(new PhysicalOperator[all.size()]));
+	}
+
+	/**
+	 * @return the number of workers
+	 */
+	public int getDegree() {
+		return degree;
+	}
+
+	public void open() {
+		super.open();
+		queue = null;
+		running = 0;
+	}
+
+	protected Batch fetchBatch() {
+		if (queue == null) {
+			start();
+		}
+		while (running > 0) {
+			Batch batch = take();
+			if (batch != END) {
+				return batch;
+			}
+			running--;
+			Throwable thrown = failure.get();
+			if (thrown != null) {
+				cancel();
+				throw unchecked(thrown);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Run the pipeline to the end, each worker copying the tuples it produces
+	 * into a buffer of its own rather than handing them over; the pipeline
+	 * must have been opened
+	 * @return the buffers of the workers
+	 */
+	List<ColumnBuffer> materialise() {
+		for (Stage stage : stages) {
+			stage.prepare();
+		}
+		final AtomicLong next = new AtomicLong();
+		final long tuples = storage.getTupleCount((NamedRelation) scan.getRelation());
+		List<Callable<ColumnBuffer>> workers = new ArrayList<Callable<ColumnBuffer>>();
+		for (int i = 0; i < degree; i++) {
+			workers.add(() -> {
+				VectorOperator chain = chain(next, tuples);
+				ColumnBuffer buffer = new ColumnBuffer(getAttributes().size());
+				chain.open();
+				try {
+					Batch batch;
+					while ((batch = chain.nextBatch()) != null) {
+						buffer.add(batch);
+					}
+				} finally {
+					chain.close();
+				}
+				return buffer;
+			});
+		}
+
+		List<ColumnBuffer> buffers = new ArrayList<ColumnBuffer>();
+		try {
+			for (Future<ColumnBuffer> worker : pool.invokeAll(workers)) {
+				buffers.add(worker.get());
+				count(buffers.get(buffers.size() - 1).size());
+			}
+		} catch (ExecutionException e) {
+			throw unchecked(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a parallel scan", e);
+		}
+		return buffers;
+	}
+
+	public void close() {
+		cancel();
+		for (Stage stage : stages) {
+			stage.release();
+		}
+		super.close();
+	}
+
+	public String toString() {
+		return "PARALLEL " + degree + " [" + description + "]";
+	}
+
+	private void start() {
+		for (Stage stage : stages) {
+			stage.prepare();
+		}
+		queue = new ArrayBlockingQueue<Batch>(QUEUED * degree);
+		nextMorsel = new AtomicLong();
+		failure = new AtomicReference<Throwable>();
+		cancelled = false;
+		final long tuples = storage.getTupleCount((NamedRelation) scan.getRelation());
+		running = degree;
+		for (int i = 0; i < degree; i++) {
+			pool.execute(() -> work(tuples));
+		}
+	}
+
+	// stop the workers, and wait until they have all finished
+	private void cancel() {
+		if (queue != null) {
+			cancelled = true;
+			while (running > 0) {
+				if (take() == END) {
+					running--;
+				}
+			}
+		}
+	}
+
+	private void work(long tuples) {
+		VectorOperator chain = chain(nextMorsel, tuples);
+		try {
+			chain.open();
+			Batch batch;
+			while (!cancelled && (batch = chain.nextBatch()) != null) {
+				put(copy(batch));
+			}
+		} catch (Throwable e) {
+			failure.compareAndSet(null, e);
+		} finally {
+			try {
+				chain.close();
+			} catch (Throwable e) {
+				failure.compareAndSet(null, e);
+			}
+			put(END);
+		}
+	}
+
+	/**
+	 * Build the vector operators of one worker
+	 */
+	private VectorOperator chain(AtomicLong next, long tuples) {
+		VectorOperator chain = new MorselScan(scan, storage, next, tuples, morselSize);
+		for (Stage stage : stages) {
+			chain = stage.apply(chain);
+		}
+		return chain;
+	}
+
+	static RuntimeException unchecked(Throwable thrown) {
+		if (thrown instanceof RuntimeException) {
+			return (RuntimeException) thrown;
+		} else if (thrown instanceof Error) {
+			throw (Error) thrown;
+		}
+		return new IllegalStateException(thrown);
+	}
+
+	// the columns of a batch are reused by the worker, so the tuples are copied out
+	private static Batch copy(Batch batch) {
+		long[][] columns = batch.getColumns();
+		long[][] copy = new long[columns.length][batch.size()];
+		for (int c = 0; c < columns.length; c++) {
+			long[] from = columns[c];
+			long[] to = copy[c];
+			if (batch.getSelection() == null) {
+				System.arraycopy(from, 0, to, 0, batch.size());
+			} else {
+				for (int i = 0; i < batch.size(); i++) {
+					to[i] = from[batch.row(i)];
+				}
+			}
+		}
+		return new Batch(copy, batch.size());
+	}
+
+	private void put(final Batch batch) {
+		block(new ForkJoinPool.ManagedBlocker() {
+			private boolean done;
+
+			public boolean block() throws InterruptedException {
+				if (!done) {
+					queue.put(batch);
+					done = true;
+				}
+				return true;
+			}
+
+			public boolean isReleasable() {
+				return done || (done = queue.offer(batch));
+			}
+		});
+	}
+
+	private Batch take() {
+		final Batch[] taken = new Batch[1];
+		block(new ForkJoinPool.ManagedBlocker() {
+			public boolean block() throws InterruptedException {
+				if (taken[0] == null) {
+					taken[0] = queue.take();
+				}
+				return true;
+			}
+
+			public boolean isReleasable() {
+				return taken[0] != null || (taken[0] = queue.poll()) != null;
+			}
+		});
+		return taken[0];
+	}
+
+	private static void block(ForkJoinPool.ManagedBlocker blocker) {
+		try {
+			ForkJoinPool.managedBlock(blocker);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a parallel scan", e);
+		}
+	}
+
+	/**
+	 * Scans the morsels of a relation which one worker takes, until there are none left
+	 */
+	private static class MorselScan extends VectorOperator {
+		private final Storage storage;
+		private final NamedRelation relation;
+		private final AtomicLong next;
+		private final long tuples;
+		private final long morselSize;
+		private final long[][] columns;
+		private TupleCursor cursor;
+
+		private MorselScan(Scan op, Storage storage, AtomicLong next, long tuples, long morselSize) {
+			super(op, op.getRelation().getAttributes());
+			this.storage = storage;
+			this.relation = (NamedRelation) op.getRelation();
+			this.next = next;
+			this.tuples = tuples;
+			this.morselSize = morselSize;
+			this.columns = columns(getAttributes().size());
+		}
+
+		protected Batch fetchBatch() {
+			while (true) {
+				if (cursor == null) {
+					long from = next.getAndAdd(morselSize);
+					if (from >= tuples) {
+						return null;
+					}
+					cursor = storage.open(relation, from, Math.min(from + morselSize, tuples));
+				}
+				int size = cursor.fill(columns, Batch.SIZE);
+				if (size > 0) {
+					return new Batch(columns, size);
+				}
+				cursor.close();
+				cursor = null;
+			}
+		}
+
+		public void close() {
+			if (cursor != null) {
+				cursor.close();
+				cursor = null;
+			}
+			super.close();
+		}
+
+		public String toString() {
+			return "MORSEL SCAN [" + relation + "]";
+		}
+	}
+}
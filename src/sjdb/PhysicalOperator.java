@@ -0,0 +1,137 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This abstract class represents the executable counterpart of a logical
+ * Operator. Physical operators follow the iterator model: open() prepares
+ * the operator and its inputs, each call to next() returns one tuple (or
+ * null when there are no more), and close() releases the resources held.
+ * 
+ * Tuples are arrays of longs, one per attribute, encoded in the dictionary
+ * of the storage. Each operator counts the tuples it returns, so that the
+ * actual row counts can be compared with the estimates. Each operator also
+ * knows the attributes its tuples come out in order of (by encoded value),
+ * so that a merge join does not sort an input which is already sorted.
+ */
+public abstract class PhysicalOperator {
+	private final Operator operator;
+	private final List<Attribute> attributes;
+	private final List<PhysicalOperator> inputs;
+	private Set<Attribute> order = Collections.emptySet();
+	private long rows;
+
+	/**
+	 * @param operator the logical operator which this operator executes
+	 * @param attributes the attributes of the tuples returned
+	 * @param inputs the child operators
+	 */
+	protected PhysicalOperator(Operator operator, List<Attribute> attributes, PhysicalOperator... inputs) {
+		this.operator = operator;
+		this.attributes = Collections.unmodifiableList(new ArrayList<Attribute>(attributes));
+		this.inputs = new ArrayList<PhysicalOperator>();
+		for (PhysicalOperator input : inputs) {
+			this.inputs.add(input);
+		}
+	}
+
+	/**
+	 * Prepare the operator, and its inputs, to return tuples
+	 */
+	public void open() {
+		rows = 0;
+		for (PhysicalOperator input : inputs) {
+			input.open();
+		}
+	}
+
+	/**
+	 * Return the next tuple
+	 * @return the tuple, or null if there are no more tuples
+	 */
+	public final long[] next() {
+		long[] tuple = fetch();
+		if (tuple != null) {
+			rows++;
+		}
+		return tuple;
+	}
+
+	/**
+	 * Compute the next tuple
+	 * @return the tuple, or null if there are no more tuples
+	 */
+	protected abstract long[] fetch();
+
+	/**
+	 * Release the resources held by the operator, and by its inputs
+	 */
+	public void close() {
+		for (PhysicalOperator input : inputs) {
+			input.close();
+		}
+	}
+
+	/**
+	 * @return the logical operator which this operator executes
+	 */
+	public Operator getOperator() {
+		return operator;
+	}
+
+	/**
+	 * @return the attributes of the tuples returned, in order
+	 */
+	public List<Attribute> getAttributes() {
+		return attributes;
+	}
+
+	/**
+	 * @return the child operators
+	 */
+	public List<PhysicalOperator> getInputs() {
+		return Collections.unmodifiableList(inputs);
+	}
+
+	/**
+	 * @return the (equal) attributes the tuples are returned in order of, empty if none
+	 */
+	public Set<Attribute> getOrder() {
+		return order;
+	}
+
+	/**
+	 * Record the attributes the tuples are returned in order of; those which
+	 * are not attributes of this operator are ignored
+	 * @param order
+	 */
+	protected void setOrder(Collection<Attribute> order) {
+		Set<Attribute> result = new HashSet<Attribute>(order);
+		result.retainAll(attributes);
+		this.order = Collections.unmodifiableSet(result);
+	}
+
+	/**
+	 * @return the number of tuples returned since the operator was opened
+	 */
+	public long getRowCount() {
+		return rows;
+	}
+
+	/**
+	 * Count tuples returned other than through next()
+	 * @param tuples
+	 */
+	protected void count(long tuples) {
+		rows += tuples;
+	}
+
+	protected PhysicalOperator getInput(int i) {
+		return inputs.get(i);
+	}
+}
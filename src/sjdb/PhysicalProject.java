@@ -0,0 +1,35 @@
+package sjdb;
+
+/**
+ * This class executes a Project, by copying the projected attributes of
+ * each tuple of its input. Like the logical operator, it does not remove
+ * duplicate tuples.
+ */
+public class PhysicalProject extends PhysicalOperator {
+	private final int[] positions;
+
+	public PhysicalProject(Project op, PhysicalOperator input) {
+		super(op, op.getAttributes(), input);
+		this.positions = new int[op.getAttributes().size()];
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = Condition.position(input.getAttributes(), op.getAttributes().get(i));
+		}
+		setOrder(input.getOrder());
+	}
+
+	protected long[] fetch() {
+		long[] tuple = getInput(0).next();
+		if (tuple == null) {
+			return null;
+		}
+		long[] result = new long[positions.length];
+		for (int i = 0; i < positions.length; i++) {
+			result[i] = tuple[positions[i]];
+		}
+		return result;
+	}
+
+	public String toString() {
+		return "PROJECT " + getAttributes();
+	}
+}
@@ -0,0 +1,43 @@
+package sjdb;
+
+import java.util.Collections;
+
+/**
+ * This class executes a Scan, by reading the tuples of the named relation
+ * from the storage.
+ */
+public class PhysicalScan extends PhysicalOperator {
+	private final Storage storage;
+	private final NamedRelation relation;
+	private TupleCursor cursor;
+
+	public PhysicalScan(Scan op, Storage storage) {
+		super(op, op.getRelation().getAttributes());
+		this.storage = storage;
+		this.relation = (NamedRelation) op.getRelation();
+		if (relation.getSortedOn() != null) {
+			setOrder(Collections.singleton(relation.getSortedOn()));
+		}
+	}
+
+	public void open() {
+		super.open();
+		cursor = storage.open(relation);
+	}
+
+	protected long[] fetch() {
+		return cursor.next();
+	}
+
+	public void close() {
+		if (cursor != null) {
+			cursor.close();
+			cursor = null;
+		}
+		super.close();
+	}
+
+	public String toString() {
+		return "SCAN [" + relation + "]";
+	}
+}
@@ -0,0 +1,29 @@
+package sjdb;
+
+/**
+ * This class executes a Select, by returning the tuples of its input which
+ * satisfy the predicate.
+ */
+public class PhysicalSelect extends PhysicalOperator {
+	private final Condition condition;
+
+	public PhysicalSelect(Select op, PhysicalOperator input, Dictionary dictionary) {
+		super(op, input.getAttributes(), input);
+		this.condition = new Condition(op.getPredicate(), input.getAttributes(), dictionary);
+		setOrder(input.getOrder());
+	}
+
+	protected long[] fetch() {
+		long[] tuple;
+		while ((tuple = getInput(0).next()) != null) {
+			if (condition.matches(tuple)) {
+				return tuple;
+			}
+		}
+		return null;
+	}
+
+	public String toString() {
+		return "SELECT [" + condition + "]";
+	}
+}
@@ -0,0 +1,92 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class sorts the tuples of its input on some of their attributes
+ * (by encoded value) with an ExternalSorter, within a memory budget, and
+ * optionally drops duplicate tuples. It has no logical counterpart: the
+ * executor puts it below a merge join whose input is not already sorted.
+ */
+public class PhysicalSort extends VectorOperator {
+	private final List<Attribute> keys;
+	private final int[] positions;
+	private final boolean distinct;
+	private final long memoryBudget;
+	private final long[][] columns;
+	private long[][] inputColumns;
+	private ExternalSorter sorter;
+	private ExternalSorter.Source source;
+	private long spilled;
+
+	/**
+	 * @param input the input
+	 * @param keys the attributes to sort on, in turn
+	 * @param distinct whether duplicate tuples are dropped
+	 * @param memoryBudget the bytes the tuples may take in memory, 0 for no limit
+	 */
+	public PhysicalSort(PhysicalOperator input, List<Attribute> keys, boolean distinct, long memoryBudget) {
+		super(input.getOperator(), input.getAttributes(), input);
+		this.keys = new ArrayList<Attribute>(keys);
+		this.positions = new int[keys.size()];
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = Condition.position(input.getAttributes(), keys.get(i));
+		}
+		this.distinct = distinct;
+		this.memoryBudget = memoryBudget;
+		this.columns = columns(input.getAttributes().size());
+		if (!keys.isEmpty()) {
+			List<Attribute> order = new ArrayList<Attribute>();
+			order.add(keys.get(0));
+			// attributes equal to the first key stay in order with it
+			if (input.getOrder().contains(keys.get(0))) {
+				order.addAll(input.getOrder());
+			}
+			setOrder(order);
+		}
+	}
+
+	/**
+	 * @return the number of tuples written to sorted runs since the operator was opened
+	 */
+	public long getSpilledCount() {
+		return spilled;
+	}
+
+	public void open() {
+		super.open();
+		if (!(getInput(0) instanceof VectorOperator) && inputColumns == null) {
+			inputColumns = columns(getAttributes().size());
+		}
+
+		if (sorter != null) {
+			sorter.close();
+		}
+		sorter = new ExternalSorter(getAttributes().size(), positions, distinct, memoryBudget);
+		Batch batch;
+		while ((batch = nextBatch(getInput(0), inputColumns)) != null) {
+			sorter.add(batch);
+		}
+		source = sorter.finish();
+		spilled = sorter.getSpilledCount();
+	}
+
+	protected Batch fetchBatch() {
+		int size = source.read(columns, Batch.SIZE);
+		return size == 0 ? null : new Batch(columns, size);
+	}
+
+	public void close() {
+		if (sorter != null) {
+			sorter.close();
+			sorter = null;
+			source = null;
+		}
+		super.close();
+	}
+
+	public String toString() {
+		return (distinct ? "SORT DISTINCT " : "SORT ") + keys + (spilled > 0 ? " spilled " + spilled : "");
+	}
+}
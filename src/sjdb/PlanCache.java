@@ -0,0 +1,291 @@
+package sjdb;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class caches optimised plans for repeated query shapes, so that
+ * a query which only differs from an earlier one in its literal values
+ * does not go through the parser and the optimiser again.
+ *
+ * Queries are keyed by their normalised text: whitespace is collapsed, and
+ * every quoted value is replaced by a "?" parameter. A cached plan keeps
+ * track of which predicate each parameter belongs to (a BETWEEN or IN
+ * predicate takes several consecutive parameters), and a hit rebuilds
+ * the plan with the values of the new query and estimates it again. The
+ * values are read by the rules of QueryParser, and a query whose
+ * predicates it reads differently from those of the cached plan (say, as
+ * a value holds a comma) is not answered from the cache, so the cache
+ * takes no query the parser would reject.
+ *
+ * The cache holds at most a fixed number of plans and evicts the least
+ * recently used one. All plans are dropped when the version of the
+ * catalogue changes, as they may have been chosen on stale statistics.
+ * Each query is planned against a snapshot of the catalogue, so a plan
+ * is cached with the version of the statistics it was chosen on.
+ */
+public class PlanCache {
+	private static final Pattern LITERAL = Pattern.compile("\"([^\"]*)\"");
+
+	private final Catalogue catalogue;
+	private final Supplier<Optimiser> optimisers;
+	private final LinkedHashMap<String, Entry> plans;
+	private long version;
+	private long hits;
+	private long misses;
+
+	/**
+	 * Create a plan cache which optimises with a default Optimiser
+	 * @param catalogue
+	 * @param capacity the maximum number of cached plans
+	 */
+	public PlanCache(Catalogue catalogue, int capacity) {
+		this(catalogue, capacity, () -> new Optimiser(catalogue));
+	}
+
+	/**
+	 * Create a plan cache
+	 * @param catalogue
+	 * @param capacity the maximum number of cached plans
+	 * @param optimisers creates a configured Optimiser for each query to be optimised
+	 */
+	public PlanCache(Catalogue catalogue, final int capacity, Supplier<Optimiser> optimisers) {
+		this.catalogue = catalogue;
+		this.optimisers = optimisers;
+		this.version = catalogue.getVersion();
+		this.plans = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Return an optimised plan for the given query, from the cache if a query
+	 * of the same shape has been optimised before.
+	 *
+	 * @param query the query text, in the form read by QueryParser
+	 * @return the optimised plan, with estimates
+	 * @throws Exception
+	 */
+	public Operator optimise(String query) throws Exception {
+		List<String> values = new ArrayList<String>();
+		String key = normalise(query, values);
+		List<Predicate> predicates = QueryParser.parsePredicates(new StringReader(query));
+		List<String> shape = shape(predicates);
+		Catalogue snapshot = catalogue.snapshot();
+		long planVersion = snapshot.getVersion();
+		Entry entry = null;
+
+		synchronized (this) {
+			if (planVersion > version) {
+				plans.clear();
+				version = planVersion;
+			}
+			// a query which took its snapshot before a newer one was seen is planned afresh
+			if (planVersion == version) {
+				entry = plans.get(key);
+			}
+			if (entry != null && !entry.shape.equals(shape)) {
+				entry = null;
+			}
+			if (entry != null) {
+				hits++;
+			} else {
+				misses++;
+			}
+		}
+
+		if (entry != null) {
+			Operator plan = entry.bind(entry.plan, values(predicates));
+			plan.accept(new Estimator());
+			return plan;
+		}
+
+		// the predicates read above are not parsed again
+		Operator plan = new QueryParser(snapshot, new StringReader(query)).parse(predicates);
+		plan.accept(new Estimator());
+
+		Map<Predicate, Integer> parameters = parameters(plan);
+		Operator optimised = optimisers.get().optimise(plan);
+
+		// only cache plans whose parameters line up with the values of the query
+		int count = 0;
+		for (Predicate predicate : parameters.keySet()) {
+			count += predicate.getRightValues().size();
+		}
+		if (count == values.size()) {
+			synchronized (this) {
+				if (planVersion == version) {
+					plans.put(key, new Entry(optimised, parameters, shape));
+				}
+			}
+		}
+		return optimised;
+	}
+
+	/**
+	 * @return the number of queries answered from the cache
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return the number of queries which had to be optimised
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return the number of cached plans
+	 */
+	public synchronized int size() {
+		return plans.size();
+	}
+
+	/**
+	 * Drop all cached plans
+	 */
+	public synchronized void clear() {
+		plans.clear();
+	}
+
+	/**
+	 * Normalise a query: replace each quoted value with a parameter, and
+	 * collapse whitespace on each line.
+	 * @param query the query text
+	 * @param values receives the quoted values, in order
+	 * @return the normalised query
+	 */
+	static String normalise(String query, List<String> values) {
+		Matcher m = LITERAL.matcher(query);
+		StringBuffer parameterised = new StringBuffer();
+		while (m.find()) {
+			values.add(m.group(1));
+			m.appendReplacement(parameterised, "\"?\"");
+		}
+		m.appendTail(parameterised);
+
+		StringBuilder ret = new StringBuilder();
+		for (String line : parameterised.toString().split("\n")) {
+			line = line.trim().replaceAll("\\s+", " ").replaceAll("\\s*,\\s*", ", ");
+			if (line.length() > 0) {
+				ret.append(line).append('\n');
+			}
+		}
+		return ret.toString();
+	}
+
+	/**
+	 * @return the form of each predicate, without its values: attr=attr, or the
+	 *         attribute, comparison and number of values of an attr=value predicate
+	 */
+	private static List<String> shape(List<Predicate> predicates) {
+		List<String> shape = new ArrayList<String>();
+		for (Predicate predicate : predicates) {
+			if (predicate.comparesValue()) {
+				shape.add(predicate.getLeftAttribute() + " " + predicate.getComparison() + " " + predicate.getRightValues().size());
+			} else {
+				shape.add(predicate.toString());
+			}
+		}
+		return shape;
+	}
+
+	/**
+	 * @return the values of the predicates, in order
+	 */
+	private static List<String> values(List<Predicate> predicates) {
+		List<String> values = new ArrayList<String>();
+		for (Predicate predicate : predicates) {
+			if (predicate.comparesValue()) {
+				values.addAll(predicate.getRightValues());
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Number the attr=value (and attr<value, IN, ...) predicates of a canonical
+	 * plan in the order of the WHERE clause, which is the order of the values in
+	 * the query text. Each predicate maps to the number of its first parameter.
+	 */
+	private static Map<Predicate, Integer> parameters(Operator plan) {
+		final Map<Predicate, Integer> parameters = new IdentityHashMap<Predicate, Integer>();
+		final int[] count = new int[1];
+		plan.accept(new PlanVisitor() {
+			public void visit(Scan op) {
+			}
+
+			public void visit(Project op) {
+			}
+
+			public void visit(Select op) {
+				// the innermost select holds the first predicate, and is visited first
+				if (op.getPredicate().comparesValue()) {
+					parameters.put(op.getPredicate(), count[0]);
+					count[0] += op.getPredicate().getRightValues().size();
+				}
+			}
+
+			public void visit(Product op) {
+			}
+
+			public void visit(Join op) {
+			}
+		});
+		return parameters;
+	}
+
+	/**
+	 * An optimised plan, the first parameter number of each of its attr=value
+	 * predicates, and the shape of the predicates of its query
+	 */
+	private static class Entry {
+		private final Operator plan;
+		private final Map<Predicate, Integer> parameters;
+		private final List<String> shape;
+
+		private Entry(Operator plan, Map<Predicate, Integer> parameters, List<String> shape) {
+			this.plan = plan;
+			this.parameters = parameters;
+			this.shape = shape;
+		}
+
+		/**
+		 * Copy a plan, replacing the value of each parameterised predicate
+		 */
+		private Operator bind(Operator op, List<String> values) {
+			if (op instanceof Scan) {
+				return new Scan((NamedRelation) ((Scan) op).getRelation());
+			} else if (op instanceof Select) {
+				Predicate predicate = ((Select) op).getPredicate();
+				Integer parameter = parameters.get(predicate);
+				if (parameter != null) {
+					int n = predicate.getRightValues().size();
+					predicate = new Predicate(predicate.getLeftAttribute(), predicate.getComparison(),
+							values.subList(parameter, parameter + n));
+				}
+				return new Select(bind(((Select) op).getInput(), values), predicate);
+			} else if (op instanceof Project) {
+				return new Project(bind(((Project) op).getInput(), values), ((Project) op).getAttributes());
+			} else if (op instanceof Join) {
+				Join join = (Join) op;
+				return new Join(bind(join.getLeft(), values), bind(join.getRight(), values), join.getPredicate(), join.getMethod());
+			} else {
+				Product product = (Product) op;
+				return new Product(bind(product.getLeft(), values), bind(product.getRight(), values));
+			}
+		}
+	}
+}
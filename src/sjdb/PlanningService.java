@@ -0,0 +1,127 @@
+package sjdb;
+
+import java.io.StringReader;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class plans queries concurrently, a task for each query, sharing
+ * one catalogue and one Optimiser between the tasks. Each task parses its
+ * query, estimates the canonical plan and optimises it, with parsers and
+ * estimators of its own, against a snapshot of the catalogue taken when
+ * it starts; the statistics may be refreshed meanwhile.
+ *
+ * By default the tasks run on virtual threads, one per query, when the
+ * Java runtime has them (Java 21 and later), and otherwise on a pool of a
+ * thread per processor. As planning does not block, the number of queries
+ * planned at once is the number of processors either way.
+ */
+public class PlanningService implements AutoCloseable {
+	private final Catalogue catalogue;
+	private final Optimiser optimiser;
+	private final ExecutorService executor;
+	private final boolean ownExecutor;
+
+	/**
+	 * Create a service with a default Optimiser and its own executor, which
+	 * is shut down when the service is closed
+	 * @param catalogue
+	 */
+	public PlanningService(Catalogue catalogue) {
+		this(catalogue, new Optimiser(catalogue), newExecutor(), true);
+	}
+
+	/**
+	 * @param catalogue
+	 * @param optimiser the configured optimiser, shared by all queries
+	 * @param executor the executor the queries are planned on, which the caller shuts down
+	 */
+	public PlanningService(Catalogue catalogue, Optimiser optimiser, ExecutorService executor) {
+		this(catalogue, optimiser, executor, false);
+	}
+
+	private PlanningService(Catalogue catalogue, Optimiser optimiser, ExecutorService executor, boolean ownExecutor) {
+		this.catalogue = catalogue;
+		this.optimiser = optimiser;
+		this.executor = executor;
+		this.ownExecutor = ownExecutor;
+	}
+
+	/**
+	 * Plan a query on the calling thread
+	 * @param query the query text, in the form read by QueryParser
+	 * @return the optimised plan
+	 * @throws Exception if the query cannot be parsed
+	 */
+	public OptimisedPlan plan(String query) throws Exception {
+		Operator plan = new QueryParser(catalogue.snapshot(), new StringReader(query)).parse();
+		plan.accept(new Estimator());
+		return optimiser.plan(plan);
+	}
+
+	/**
+	 * Plan a query on the executor
+	 * @param query the query text, in the form read by QueryParser
+	 * @return the optimised plan, when it is ready
+	 */
+	public Future<OptimisedPlan> submit(final String query) {
+		return executor.submit(() -> plan(query));
+	}
+
+	/**
+	 * Plan queries in parallel, and wait for all their plans
+	 * @param queries the query texts
+	 * @return the optimised plans, in the order of the queries
+	 * @throws ExecutionException if a query could not be planned
+	 * @throws InterruptedException
+	 */
+	public List<OptimisedPlan> planAll(List<String> queries) throws ExecutionException, InterruptedException {
+		List<Future<OptimisedPlan>> futures = new ArrayList<Future<OptimisedPlan>>();
+		for (String query : queries) {
+			futures.add(submit(query));
+		}
+		List<OptimisedPlan> plans = new ArrayList<OptimisedPlan>();
+		try {
+			for (Future<OptimisedPlan> future : futures) {
+				plans.add(future.get());
+			}
+		} finally {
+			// after a failure, the plans not yet started are not wanted
+			for (Future<OptimisedPlan> future : futures) {
+				future.cancel(false);
+			}
+		}
+		return plans;
+	}
+
+	/**
+	 * Shut down the executor, if the service created it
+	 */
+	public void close() {
+		if (ownExecutor) {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Return an executor which starts a virtual thread for each task, or a
+	 * pool of a thread per processor where there are no virtual threads
+	 */
+	static ExecutorService newExecutor() {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), task -> {
+				Thread thread = new Thread(task, "sjdb-planner");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+}
@@ -1,18 +1,46 @@
 package sjdb;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
 /**
- * This class is used to represent the predicates associated with 
+ * This class is used to represent the predicates associated with
  * joins and select operators. Note that, while a string value is
- * required for predicates of the form attr=value, this values is 
- * only used by the toString() method; a future version of
- * Attribute which uses more expressive synopses may change this.
- * 
+ * required for predicates of the form attr=value, this values is
+ * only used by the toString() method and by the estimation of the
+ * selectivity from the histogram and most common values of the attribute.
+ *
+ * Besides attr=attr and attr=value, a predicate may compare an attribute
+ * with values: attr<value, attr<=value, attr>value, attr>=value,
+ * attr BETWEEN value AND value, and attr IN (value,...,value).
+ *
  * @author nmg
  */
 public class Predicate {
+	/**
+	 * The ways in which a predicate compares an attribute with values
+	 */
+	public enum Comparison {
+		EQ("="), LT("<"), LE("<="), GT(">"), GE(">="), BETWEEN(" BETWEEN "), IN(" IN ");
+
+		private final String symbol;
+
+		Comparison(String symbol) {
+			this.symbol = symbol;
+		}
+
+		public String getSymbol() {
+			return symbol;
+		}
+	}
+
 	private Attribute leftAttribute;
 	private Attribute rightAttribute;
 	private String rightValue;
+	private Comparison comparison = Comparison.EQ;
+	private List<String> rightValues;
 
 	/**
 	 * Create a predicate of the form attr=attr
@@ -30,8 +58,37 @@ public class Predicate {
 	 * @param value
 	 */
 	public Predicate(Attribute left, String value) {
+		this(left, Comparison.EQ, value);
+	}
+
+	/**
+	 * Create a predicate of the form attr=value, attr<value, attr<=value,
+	 * attr>value or attr>=value
+	 * @param left
+	 * @param comparison
+	 * @param value
+	 */
+	public Predicate(Attribute left, Comparison comparison, String value) {
+		this(left, comparison, Collections.singletonList(value));
+	}
+
+	/**
+	 * Create a predicate comparing an attribute with a list of values: two
+	 * values for BETWEEN, any number of values for IN, one value otherwise
+	 * @param left
+	 * @param comparison
+	 * @param values
+	 */
+	public Predicate(Attribute left, Comparison comparison, List<String> values) {
+		int expected = comparison == Comparison.BETWEEN ? 2 : 1;
+		if (comparison == Comparison.IN ? values.isEmpty() : values.size() != expected) {
+			throw new IllegalArgumentException(comparison + " predicate on " + left + " takes " +
+					(comparison == Comparison.IN ? "at least one value" : expected + " value(s)"));
+		}
 		this.leftAttribute = left;
-		this.rightValue = value;
+		this.comparison = comparison;
+		this.rightValues = Collections.unmodifiableList(new ArrayList<String>(values));
+		this.rightValue = this.rightValues.get(0);
 	}
 
 	/**
@@ -39,9 +96,26 @@ public class Predicate {
 	 * @return
 	 */
 	public boolean equalsValue() {
+		return this.rightValue != null && this.comparison == Comparison.EQ;
+	}
+
+	/**
+	 * Return true if this predicate compares an attribute with values rather
+	 * than with another attribute (attr=value, attr<value, attr IN (...), etc.)
+	 * @return
+	 */
+	public boolean comparesValue() {
 		return this.rightValue != null;
 	}
-	
+
+	/**
+	 * Return the comparison made by this predicate; EQ for attr=attr
+	 * @return comparison
+	 */
+	public Comparison getComparison() {
+		return this.comparison;
+	}
+
 	/**
 	 * Return ATTR for predicates of the form ATTR=attr or ATTR=value
 	 * @return left attribute
@@ -49,7 +123,7 @@ public class Predicate {
 	public Attribute getLeftAttribute() {
 		return this.leftAttribute;
 	}
-	
+
 	/**
 	 * Return ATTR for predicates of the form attr=ATTR
 	 * @return right attribute
@@ -57,23 +131,42 @@ public class Predicate {
 	public Attribute getRightAttribute() {
 		return this.rightAttribute;
 	}
-	
+
 	/**
-	 * Return VALUE for predicates of the form attr=VALUE
+	 * Return VALUE for predicates of the form attr=VALUE (the first value
+	 * for BETWEEN and IN)
 	 * @return right value
 	 */
 	public String getRightValue() {
 		return this.rightValue;
 	}
-	
+
+	/**
+	 * Return all the values this predicate compares with, or null for attr=attr
+	 * @return right values
+	 */
+	public List<String> getRightValues() {
+		return this.rightValues;
+	}
+
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
 	public String toString() {
 		if (this.rightValue == null) {
-			return this.leftAttribute.toString() + "=" + this.rightAttribute.toString(); 
+			return this.leftAttribute.toString() + "=" + this.rightAttribute.toString();
+		} else if (this.comparison == Comparison.BETWEEN) {
+			return this.leftAttribute.toString() + " BETWEEN \"" + this.rightValues.get(0) + "\" AND \"" + this.rightValues.get(1) + "\"";
+		} else if (this.comparison == Comparison.IN) {
+			String ret = this.leftAttribute.toString() + " IN (";
+			Iterator<String> iter = this.rightValues.iterator();
+			ret += "\"" + iter.next() + "\"";
+			while (iter.hasNext()) {
+				ret += ",\"" + iter.next() + "\"";
+			}
+			return ret + ")";
 		} else {
-			return this.leftAttribute.toString() + "=\"" + this.rightValue + "\"";
+			return this.leftAttribute.toString() + this.comparison.getSymbol() + "\"" + this.rightValue + "\"";
 		}
 	}
 }
@@ -0,0 +1,378 @@
+package sjdb;
+
+import java.util.*;
+
+/**
+ * The join graph of a query after `Select` operators have been moved down.
+ * Each leaf (a `Scan` with its local selections) is identified by one bit of
+ * a `long`, so a set of leaves is a bitmask and the join enumerators can work
+ * on masks instead of lists of operators.
+ *
+ * The graph also builds the operators for a join of two sub-plans: it picks
+ * the join predicate, applies any other predicate which becomes local, moves
+ * down `Project` and estimates the new operators only (the inputs are already
+ * estimated, so the `Estimator` results for sub-plans are reused). The cost of
+ * a sub-plan is the cost of its inputs plus the `CostModel` cost of the new
+ * operators.
+ *
+ * A join may be a hash join or a merge join. A merge join pays for sorting each
+ * input which is not already sorted on its join attribute, and its output is
+ * sorted on the join attributes; a hash join keeps the order of its probe side.
+ * These orders are tracked on the sub-plans, so that the enumerators can keep
+ * a sorted sub-plan which a later join ("interesting order") can reuse.
+ *
+ * @author Oushuo Huang
+ * **/
+
+class QueryGraph {
+    /**
+     * The maximum number of leaves, one per bit of a `long`
+     */
+    static final int MAX_RELATIONS = 64;
+
+    private final Estimator es;
+    private final CostModel costModel;
+    private final List<Operator> leaves;
+    private final List<Predicate> predicates;
+    private final long[] predicateMasks;
+    private final List<Attribute> finalAttributes;
+    private final Map<Attribute, Long> attributeMasks = new HashMap<>();
+
+    /**
+     * @param leaves the operators from moving down `Select`, already estimated
+     * @param predicates the remaining (join) predicates
+     * @param finalAttributes the top level project attributes, empty if all attributes are kept
+     * @param es the estimator used for new operators
+     * @param costModel the cost model used to rank sub-plans
+     */
+    QueryGraph(List<Operator> leaves, Collection<Predicate> predicates, List<Attribute> finalAttributes, Estimator es, CostModel costModel) {
+        if (leaves.size() > MAX_RELATIONS) {
+            throw new IllegalArgumentException("Cannot optimise a query over more than " + MAX_RELATIONS + " relations");
+        }
+        this.es = es;
+        this.costModel = costModel;
+        this.leaves = new ArrayList<>(leaves);
+        this.predicates = new ArrayList<>(predicates);
+        this.finalAttributes = finalAttributes;
+
+        for (int i = 0; i < this.leaves.size(); i++) {
+            for (Attribute attribute : this.leaves.get(i).getOutput().getAttributes()) {
+                attributeMasks.put(attribute, 1L << i);
+            }
+        }
+
+        predicateMasks = new long[this.predicates.size()];
+        for (int i = 0; i < predicateMasks.length; i++) {
+            Predicate predicate = this.predicates.get(i);
+            predicateMasks[i] = maskOf(predicate.getLeftAttribute()) |
+                    (predicate.comparesValue() ? 0 : maskOf(predicate.getRightAttribute()));
+        }
+    }
+
+    private long maskOf(Attribute attribute) {
+        Long mask = attributeMasks.get(attribute);
+        if (mask == null) {
+            throw new IllegalArgumentException("Attribute " + attribute + " not found in query");
+        }
+        return mask;
+    }
+
+    /**
+     * @return the number of leaves
+     */
+    int size() {
+        return leaves.size();
+    }
+
+    /**
+     * @return the mask containing every leaf
+     */
+    long fullMask() {
+        return leaves.size() == MAX_RELATIONS ? -1L : (1L << leaves.size()) - 1;
+    }
+
+    /**
+     * @param i the index of the leaf
+     * @return the plan for the leaf, with `Project` moved down
+     */
+    SubPlan leaf(int i) {
+        long mask = 1L << i;
+        Operator result = moveDownProject(leaves.get(i), mask);
+        return new SubPlan(result, mask, costModel.total(result), null, null, storedOrder(result));
+    }
+
+    /**
+     * @return the attribute a leaf is sorted on because its relation is stored in order of it
+     */
+    private static Set<Attribute> storedOrder(Operator leaf) {
+        Operator op = leaf;
+        while (op instanceof UnaryOperator) {
+            op = ((UnaryOperator) op).getInput();
+        }
+        Attribute sortedOn = ((NamedRelation) ((Scan) op).getRelation()).getSortedOn();
+        if (sortedOn == null || !leaf.getOutput().getAttributes().contains(sortedOn)) {
+            return Collections.emptySet();
+        }
+        return Collections.singleton(sortedOn);
+    }
+
+    /**
+     * @return true if some predicate joins the two (disjoint) sets of leaves
+     */
+    boolean connected(long leftMask, long rightMask) {
+        for (long predicateMask : predicateMasks) {
+            if ((predicateMask & leftMask) != 0 && (predicateMask & rightMask) != 0 &&
+                    (predicateMask & ~(leftMask | rightMask)) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the predicates join the given leaves into a single component
+     */
+    boolean isConnected(long mask) {
+        long reached = Long.lowestOneBit(mask);
+        long previous = 0;
+
+        while (reached != previous) {
+            previous = reached;
+            for (long predicateMask : predicateMasks) {
+                if ((predicateMask & reached) != 0 && (predicateMask & ~mask) == 0) {
+                    reached |= predicateMask;
+                }
+            }
+        }
+        return reached == mask;
+    }
+
+    /**
+     * Join two plans over disjoint sets of leaves with the cheapest join method
+     * @param left the left plan
+     * @param right the right plan
+     * @return the joined plan
+     */
+    SubPlan join(SubPlan left, SubPlan right) {
+        SubPlan result = null;
+        for (SubPlan candidate : joins(left, right)) {
+            if (result == null || candidate.getCost() < result.getCost()) {
+                result = candidate;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Join two plans over disjoint sets of leaves with each join method worth
+     * considering: a hash join, and a merge join if either input is already
+     * sorted on its join attribute or the sorted output is interesting to a
+     * later join.
+     * @param left the left plan
+     * @param right the right plan
+     * @return the joined plans, the hash join first
+     */
+    List<SubPlan> joins(SubPlan left, SubPlan right) {
+        SubPlan hash = join(left, right, Join.Method.HASH);
+        Predicate predicate = joinPredicate(left.getMask(), right.getMask());
+        if (predicate == null || costModel.sortCost(left.getOperator().getOutput()) == Double.POSITIVE_INFINITY) {
+            return Collections.singletonList(hash);
+        }
+
+        long mask = left.getMask() | right.getMask();
+        boolean sorted = isSorted(left, predicate) || isSorted(right, predicate);
+        if (!sorted && !isInteresting(predicate.getLeftAttribute(), mask) && !isInteresting(predicate.getRightAttribute(), mask)) {
+            return Collections.singletonList(hash);
+        }
+        return Arrays.asList(hash, join(left, right, Join.Method.MERGE));
+    }
+
+    /**
+     * Join two plans over disjoint sets of leaves. The first predicate spanning both
+     * sides becomes the `Join` predicate, any other spanning predicate becomes a `Select`
+     * above it, and a `Product` is used if there is no such predicate.
+     * @param left the left plan
+     * @param right the right plan
+     * @param method the join method
+     * @return the joined plan
+     */
+    private SubPlan join(SubPlan left, SubPlan right, Join.Method method) {
+        long mask = left.getMask() | right.getMask();
+        double cost = left.getCost() + right.getCost();
+        Operator result = null;
+        Set<Attribute> order = Collections.emptySet();
+
+        for (int i = 0; i < predicates.size(); i++) {
+            if (!spans(predicateMasks[i], left.getMask(), right.getMask())) {
+                continue;
+            }
+
+            Predicate predicate = predicates.get(i);
+            if (result == null) {
+                boolean leftFirst = (maskOf(predicate.getLeftAttribute()) & left.getMask()) != 0;
+                SubPlan first = leftFirst ? left : right;
+                SubPlan second = leftFirst ? right : left;
+                result = new Join(first.getOperator(), second.getOperator(), predicate, method);
+                es.estimate(result);
+
+                if (method == Join.Method.MERGE) {
+                    order = new HashSet<>();
+                    order.add(predicate.getLeftAttribute());
+                    order.add(predicate.getRightAttribute());
+                    for (SubPlan input : new SubPlan[] {first, second}) {
+                        if (isSorted(input, predicate)) {
+                            order.addAll(input.getOrder());
+                        } else {
+                            cost += costModel.sortCost(input.getOperator().getOutput());
+                        }
+                    }
+                } else {
+                    // a hash join keeps the order of its probe side, which is the larger input
+                    order = HashJoin.isSmaller(first.getOperator(), second.getOperator()) ? second.getOrder() : first.getOrder();
+                }
+            } else {
+                result = new Select(result, predicate);
+                es.estimate(result);
+            }
+            cost += costModel.cost(result);
+        }
+
+        if (result == null) {
+            result = new Product(left.getOperator(), right.getOperator());
+            es.estimate(result);
+            cost += costModel.cost(result);
+        }
+
+        if (mask != fullMask()) {
+            Operator projected = moveDownProject(result, mask);
+            if (projected != result) {
+                result = projected;
+                cost += costModel.cost(result);
+                if (!order.isEmpty()) {
+                    order = new HashSet<>(order);
+                    order.retainAll(result.getOutput().getAttributes());
+                }
+            }
+        }
+
+        return new SubPlan(result, mask, cost, left, right, order);
+    }
+
+    /**
+     * @return true if a predicate spans two (disjoint) sets of leaves and is not local to either
+     */
+    private static boolean spans(long predicateMask, long leftMask, long rightMask) {
+        long mask = leftMask | rightMask;
+        return (predicateMask & ~mask) == 0 && (predicateMask & ~leftMask) != 0 && (predicateMask & ~rightMask) != 0;
+    }
+
+    /**
+     * @return the predicate which would join two sets of leaves, or null if there is none
+     */
+    private Predicate joinPredicate(long leftMask, long rightMask) {
+        for (int i = 0; i < predicates.size(); i++) {
+            if (spans(predicateMasks[i], leftMask, rightMask)) {
+                return predicates.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return true if a plan is sorted on its side of a join predicate
+     */
+    private boolean isSorted(SubPlan plan, Predicate predicate) {
+        Set<Attribute> order = plan.getOrder();
+        return order.contains(predicate.getLeftAttribute()) || order.contains(predicate.getRightAttribute());
+    }
+
+    /**
+     * @return true if an attribute is used by a predicate which is not yet applied above the given leaves
+     */
+    boolean isInteresting(Attribute attribute, long mask) {
+        for (int i = 0; i < predicates.size(); i++) {
+            if ((predicateMasks[i] & ~mask) != 0) {
+                Predicate predicate = predicates.get(i);
+                if (attribute.equals(predicate.getLeftAttribute()) || attribute.equals(predicate.getRightAttribute())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the attributes a plan is sorted on which a later join can use
+     */
+    Set<Attribute> interestingOrder(SubPlan plan) {
+        Set<Attribute> result = new HashSet<>();
+        for (Attribute attribute : plan.getOrder()) {
+            if (isInteresting(attribute, plan.getMask())) {
+                result.add(attribute);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Add the top level `Project` to a plan over every leaf, if it is still needed
+     * @param plan the plan from a join enumerator
+     * @return the final operator
+     */
+    Operator finish(SubPlan plan) {
+        Operator result = plan.getOperator();
+        if (finalAttributes.size() > 0 && !result.getOutput().getAttributes().equals(finalAttributes)) {
+            result = new Project(result, new ArrayList<>(finalAttributes));
+            es.estimate(result);
+        }
+        return result;
+    }
+
+    /**
+     * This method will get the attributes still needed above a plan over the given leaves:
+     * the top level project attributes, and the attributes of predicates not yet applied
+     * @param mask the leaves of the plan
+     * @return the set of projected attributes, or null if every attribute is kept
+     */
+    private Set<Attribute> getProjectedAttributeSet(long mask) {
+        if (finalAttributes.size() == 0) {
+            return null;
+        }
+
+        Set<Attribute> result = new HashSet<>(finalAttributes);
+        for (int i = 0; i < predicates.size(); i++) {
+            if ((predicateMasks[i] & ~mask) != 0) {
+                Predicate predicate = predicates.get(i);
+                result.add(predicate.getLeftAttribute());
+                if (!predicate.comparesValue()) {
+                    result.add(predicate.getRightAttribute());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * This method will add a `Project` above the operator if it drops some attributes
+     * @param op the operator to be projected
+     * @param mask the leaves below the operator
+     * @return the projected operator
+     */
+    private Operator moveDownProject(Operator op, long mask) {
+        Set<Attribute> projectedAttributeSet = getProjectedAttributeSet(mask);
+        if (projectedAttributeSet == null) {
+            return op;
+        }
+
+        List<Attribute> projectAttributes = new ArrayList<>(op.getOutput().getAttributes());
+        projectAttributes.retainAll(projectedAttributeSet);
+
+        if (projectAttributes.size() == 0 || projectAttributes.size() == op.getOutput().getAttributes().size()) {
+            return op;
+        }
+
+        Operator result = new Project(op, projectAttributes);
+        es.estimate(result);
+        return result;
+    }
+}
@@ -5,6 +5,7 @@ package sjdb;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
@@ -18,10 +19,13 @@ import java.util.regex.Matcher;
  * FROM <relation name>,<relation name>,...,<relation name>
  * WHERE <predicate>,<predicate>,...,<predicate>
  * 
- * where <predicate> is of one of the following two forms:
+ * where <predicate> is of one of the following forms:
  * 
  * <attribute name>="<value>"
  * <attribute name>=<attribute name>
+ * <attribute name><"<value>" (and likewise for <=, > and >=)
+ * <attribute name> BETWEEN "<value>" AND "<value>"
+ * <attribute name> IN ("<value>","<value>",...,"<value>")
  * 
  * The WHERE line (corresponding to the select operators) is optional and 
  * may be omitted; the other lines are required.
@@ -33,12 +37,19 @@ import java.util.regex.Matcher;
  * 
  * Note that the author of this class was extremely lazy, and so the parsing 
  * is unforgiving and may be sensitive to extraneous whitespace. In particular, 
- * values in predicates that contain spaces (or for that matter commas) will 
+ * values in predicates that contain quotes (or for that matter commas) will 
  * break the parsing of the WHERE clause.
  * 
  * @author nmg
  */
 public class QueryParser {
+	private static final Pattern COMPARE = Pattern.compile("(\\w+)\\s*(<=|>=|<|>|=)\\s*\"([^\"]*)\"");
+	private static final Pattern BETWEEN = Pattern.compile("(\\w+)\\s+BETWEEN\\s+\"([^\"]*)\"\\s+AND\\s+\"([^\"]*)\"");
+	// a list of one or more quoted values, separated by commas
+	private static final Pattern IN = Pattern.compile("(\\w+)\\s+IN\\s*\\(\\s*(\"[^\"]*\"(?:\\s*,\\s*\"[^\"]*\")*)\\s*\\)");
+	private static final Pattern VALUE = Pattern.compile("\"([^\"]*)\"");
+	private static final Pattern EQUI = Pattern.compile("([^\\s=\"]+)\\s*=\\s*([^\\s=\"]+)");
+
 	private BufferedReader reader;
 	private Catalogue catalogue;
 
@@ -70,7 +81,7 @@ public class QueryParser {
 		
 		product = parseProduct(productLine);
 		if (selectLine != null && selectLine.startsWith("WHERE")) {
-			select = parseSelect(selectLine, product); 
+			select = buildSelect(parsePredicates(selectLine), product); 
 			project = parseProject(projectLine, select);
 		} else {
 			project = parseProject(projectLine, product);
@@ -78,6 +89,22 @@ public class QueryParser {
 		
 		return project;
 	}
+
+	/**
+	 * Read a query whose predicates have already been read by
+	 * parsePredicates(Reader), and create its canonical query plan with
+	 * them; the WHERE line is not read again.
+	 * 
+	 * @param predicates the predicates of the query
+	 * @return
+	 * @throws IOException
+	 */
+	Operator parse(List<Predicate> predicates) throws IOException {
+		String projectLine = this.reader.readLine();
+		String productLine = this.reader.readLine();
+		
+		return parseProject(projectLine, buildSelect(predicates, parseProduct(productLine)));
+	}
 	
 	/**
 	 * Parse a "FROM ..." line 
@@ -130,45 +157,110 @@ public class QueryParser {
 	}
 	
 	/**
-	 * Parse a "WHERE ..." line.
-	 * @param line
+	 * Build a series of selects over an operator, the first predicate innermost.
+	 * @param predicates
 	 * @param op
 	 * @return
 	 */
-	private Operator parseSelect(String line, Operator op) {
+	private Operator buildSelect(List<Predicate> predicates, Operator op) {
+		Operator ret = op;
+		
+		for (Predicate predicate : predicates) {
+			ret = new Select(ret, predicate);
+		}
+		
+		return ret;
+	}
+
+	/**
+	 * Parse the predicates of a query without looking up its relations, by
+	 * the same rules as parse(); PlanCache uses this to read the values of
+	 * a query whose plan it has cached.
+	 * @param query the query text
+	 * @return the predicates of the WHERE line, in order, or none if there is no WHERE line
+	 * @throws IOException
+	 */
+	static List<Predicate> parsePredicates(Reader query) throws IOException {
+		BufferedReader reader = new BufferedReader(query);
+		reader.readLine();
+		reader.readLine();
+		String selectLine = reader.readLine();
+		
+		if (selectLine != null && selectLine.startsWith("WHERE")) {
+			return parsePredicates(selectLine);
+		}
+		return new ArrayList<Predicate>();
+	}
+
+	/**
+	 * Parse the predicates of a "WHERE ..." line.
+	 * @param line
+	 * @return
+	 */
+	private static List<Predicate> parsePredicates(String line) {
 		String[] prds = line.split("WHERE\\s+");
 
-		String[] pred = prds[1].split("\\s*,\\s*");
-		Operator ret = op;
+		// commas inside an IN list do not separate predicates
+		String[] pred = prds[1].split("\\s*,\\s*(?![^(]*\\))");
+		List<Predicate> ret = new ArrayList<Predicate>();
 		
 		for (int i=0; i<pred.length; i++) {
-			ret = buildSelect(pred[i].trim(), ret);
+			ret.add(buildPredicate(pred[i].trim()));
 		}
 		
 		return ret;
 	}
 	
 	/**
-	 * Build a chain of select operators.
+	 * Build a predicate.
 	 * @param pred
-	 * @param op
 	 * @return
+	 * @throws IllegalArgumentException if the predicate is not of one of the forms read
 	 */
-	private Operator buildSelect(String pred, Operator op) {
-		Pattern p = Pattern.compile("(\\w+)=\"(\\w+)\"");
-		Matcher m = p.matcher(pred);
+	private static Predicate buildPredicate(String pred) {
+		Matcher m = COMPARE.matcher(pred);
+		Matcher between = BETWEEN.matcher(pred);
+		Matcher in = IN.matcher(pred);
+		Matcher equi = EQUI.matcher(pred);
 		Predicate ret;
 		
 		if (m.matches()) {
-			ret = new Predicate(new Attribute(m.group(1)), m.group(2));
+			ret = new Predicate(new Attribute(m.group(1)), comparison(m.group(2)), m.group(3));
+		} else if (between.matches()) {
+			List<String> values = new ArrayList<String>();
+			values.add(between.group(2));
+			values.add(between.group(3));
+			ret = new Predicate(new Attribute(between.group(1)), Predicate.Comparison.BETWEEN, values);
+		} else if (in.matches()) {
+			List<String> values = new ArrayList<String>();
+			Matcher value = VALUE.matcher(in.group(2));
+			while (value.find()) {
+				values.add(value.group(1));
+			}
+			ret = new Predicate(new Attribute(in.group(1)), Predicate.Comparison.IN, values);
+		} else if (equi.matches()) {
+			ret = new Predicate(new Attribute(equi.group(1)), new Attribute(equi.group(2)));
 		} else {
-			String[] atts = pred.split("=");
-			ret = new Predicate(new Attribute(atts[0]), new Attribute(atts[1]));
+			throw new IllegalArgumentException("Malformed predicate " + pred);
 		}
 		
-		return new Select(op, ret);
+		return ret;
 	}
 	
+	/**
+	 * Return the comparison for the given operator symbol
+	 * @param symbol
+	 * @return
+	 */
+	private static Predicate.Comparison comparison(String symbol) {
+		for (Predicate.Comparison comparison : Predicate.Comparison.values()) {
+			if (comparison.getSymbol().equals(symbol)) {
+				return comparison;
+			}
+		}
+		throw new IllegalArgumentException("Unknown comparison " + symbol);
+	}
+
 	/**
 	 * Parse a "SELECT ..." line and build the corresponding project operator.
 	 * @param line
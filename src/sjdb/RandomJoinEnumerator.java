@@ -0,0 +1,178 @@
+package sjdb;
+
+import java.util.*;
+
+/**
+ * Randomized join order search over a `QueryGraph`, for queries which are too
+ * wide for dynamic programming.
+ *
+ * The search starts from the greedy plan, then applies random join tree
+ * transformations and keeps the cheapest plan it has seen:
+ *
+ * - commutativity: A ⋈ B => B ⋈ A
+ * - associativity: (A ⋈ B) ⋈ C => A ⋈ (B ⋈ C), and the reverse
+ * - exchange: (A ⋈ B) ⋈ C => (A ⋈ C) ⋈ B
+ *
+ * The first phase is iterative improvement, which only accepts cheaper plans
+ * until it is stuck in a local minimum. The second phase is simulated annealing
+ * from that minimum, which also accepts a more expensive plan with probability
+ * exp(-delta / temperature). Both phases stop when the budget is spent, so the
+ * planning time is bounded by the caller rather than by the size of the query.
+ *
+ * When only left-deep plans are allowed, a transformation which would join two
+ * plans of more than one leaf is rejected.
+ *
+ * @author Oushuo Huang
+ * **/
+
+class RandomJoinEnumerator implements JoinEnumerator {
+    private static final double INITIAL_TEMPERATURE = 0.1; // relative to the cost of the local minimum
+    private static final double COOLING = 0.95;
+    private static final int FROZEN_STAGES = 4;
+
+    private final boolean leftDeep;
+    private final long budgetNanos;
+    private final long maxIterations;
+    private final Random random;
+
+    /**
+     * @param budgetMillis the wall-clock budget of the search, 0 for no limit
+     * @param maxIterations the maximum number of transformations tried, 0 for no limit
+     * @param seed the seed of the random transformations, so that plans are repeatable
+     * @param leftDeep whether only left-deep plans are considered
+     */
+    RandomJoinEnumerator(long budgetMillis, long maxIterations, long seed, boolean leftDeep) {
+        if (budgetMillis <= 0 && maxIterations <= 0) {
+            throw new IllegalArgumentException("A randomized search needs a time or iteration budget");
+        }
+        this.budgetNanos = budgetMillis > 0 ? budgetMillis * 1_000_000 : Long.MAX_VALUE;
+        this.maxIterations = maxIterations > 0 ? maxIterations : Long.MAX_VALUE;
+        this.random = new Random(seed);
+        this.leftDeep = leftDeep;
+    }
+
+    public SubPlan enumerate(QueryGraph graph) {
+        long deadline = System.nanoTime() + budgetNanos;
+        long iterations = 0;
+        SubPlan current = new GreedyJoinEnumerator(leftDeep).enumerate(graph);
+        if (graph.size() < 3) {
+            return current;
+        }
+
+        // iterative improvement, until no neighbour has been cheaper for a while
+        int stageLength = 16 * graph.size();
+        int failures = 0;
+        while (failures < stageLength && iterations < maxIterations && System.nanoTime() < deadline) {
+            iterations++;
+            SubPlan neighbour = neighbour(graph, current);
+            if (neighbour != null && neighbour.getCost() < current.getCost()) {
+                current = neighbour;
+                failures = 0;
+            } else {
+                failures++;
+            }
+        }
+
+        // simulated annealing from the local minimum
+        SubPlan best = current;
+        double temperature = INITIAL_TEMPERATURE * current.getCost();
+        int frozen = 0;
+        while (frozen < FROZEN_STAGES && iterations < maxIterations && System.nanoTime() < deadline) {
+            boolean improved = false;
+
+            // best is kept up to date, so a stage cut short by the deadline loses nothing
+            for (int i = 0; i < stageLength && iterations < maxIterations && System.nanoTime() < deadline; i++) {
+                iterations++;
+                SubPlan neighbour = neighbour(graph, current);
+                if (neighbour == null) {
+                    continue;
+                }
+
+                double delta = neighbour.getCost() - current.getCost();
+                if (delta <= 0 || (temperature > 0 && random.nextDouble() < Math.exp(-delta / temperature))) {
+                    current = neighbour;
+                }
+                if (current.getCost() < best.getCost()) {
+                    best = current;
+                    improved = true;
+                }
+            }
+
+            temperature *= COOLING;
+            frozen = improved ? 0 : frozen + 1;
+        }
+
+        return best;
+    }
+
+    /**
+     * Apply one random transformation to one random join of the plan
+     * @param graph the query graph
+     * @param plan the current plan
+     * @return the transformed plan, or null if the transformation does not apply
+     */
+    private SubPlan neighbour(QueryGraph graph, SubPlan plan) {
+        List<SubPlan> joins = new ArrayList<>();
+        collectJoins(plan, joins);
+
+        SubPlan target = joins.get(random.nextInt(joins.size()));
+        SubPlan replacement = transform(graph, target);
+        if (replacement == null || (leftDeep && !isLeftDeep(replacement))) {
+            return null;
+        }
+        return replace(graph, plan, target, replacement);
+    }
+
+    private boolean isLeftDeep(SubPlan plan) {
+        if (plan.isLeaf()) {
+            return true;
+        }
+        return (plan.getLeft().isLeaf() || plan.getRight().isLeaf()) && isLeftDeep(plan.getLeft()) && isLeftDeep(plan.getRight());
+    }
+
+    private void collectJoins(SubPlan plan, List<SubPlan> joins) {
+        if (!plan.isLeaf()) {
+            joins.add(plan);
+            collectJoins(plan.getLeft(), joins);
+            collectJoins(plan.getRight(), joins);
+        }
+    }
+
+    private SubPlan transform(QueryGraph graph, SubPlan join) {
+        SubPlan left = join.getLeft();
+        SubPlan right = join.getRight();
+
+        switch (random.nextInt(3)) {
+            case 0: // commutativity
+                return graph.join(right, left);
+            case 1: // associativity
+                if (!left.isLeaf()) {
+                    return graph.join(left.getLeft(), graph.join(left.getRight(), right));
+                } else if (!right.isLeaf()) {
+                    return graph.join(graph.join(left, right.getLeft()), right.getRight());
+                }
+                return null;
+            default: // exchange
+                if (!left.isLeaf()) {
+                    return graph.join(graph.join(left.getLeft(), right), left.getRight());
+                } else if (!right.isLeaf()) {
+                    return graph.join(right.getLeft(), graph.join(left, right.getRight()));
+                }
+                return null;
+        }
+    }
+
+    /**
+     * Rebuild the joins above a replaced sub-plan; the other sub-plans are reused as they are
+     */
+    private SubPlan replace(QueryGraph graph, SubPlan plan, SubPlan target, SubPlan replacement) {
+        if (plan == target) {
+            return replacement;
+        }
+        if (plan.isLeaf() || (plan.getMask() & target.getMask()) == 0) {
+            return plan;
+        }
+        return graph.join(replace(graph, plan.getLeft(), target, replacement),
+                replace(graph, plan.getRight(), target, replacement));
+    }
+}
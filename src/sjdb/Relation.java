@@ -8,16 +8,20 @@ import java.util.ArrayList;
  * The Relation class represents an unnamed relation. It consists of a 
  * number of attributes and a size (tuple count).
  * 
+ * The size is an estimated cardinality, so it is kept as a double: it does
+ * not overflow when large relations are multiplied together, and it keeps
+ * the fractional part of small selectivities instead of rounding to zero.
+ * 
  * @author nmg
  */
 public class Relation {
 	private List<Attribute> attributes;
-	private int size;
+	private double size;
 
 	/**
-	 * Create a new relation with the given tuple count
+	 * Create a new relation with the given (estimated) tuple count
 	 */
-	protected Relation(int size) {
+	protected Relation(double size) {
 		this.attributes = new ArrayList<Attribute>();
 		this.size = size;
 	}
@@ -41,7 +45,7 @@ public class Relation {
 	 * @return
 	 */
 	public Attribute getAttribute(Attribute attribute) {
-		return this.attributes.get(this.attributes.indexOf(attribute));
+		return getAttributes().get(getAttributes().indexOf(attribute));
 	}
 
 	/**
@@ -52,22 +56,38 @@ public class Relation {
 	 * @param attribute the attribute to add
 	 */
 	public void addAttribute(Attribute attribute) {
-		if (attribute.getValueCount() > this.size) {
-			// If the attribute has more distinct values than there are tuples
-			// in this relation, limit the distinct values to the number of
-			// tuples
-			this.attributes.add(new Attribute(attribute.getName(), this.size));
-		} else {
-			this.attributes.add(attribute);	
+		getAttributes().add(withinTupleCount(attribute));
+	}
+
+	/**
+	 * @return the attribute, or if it has more distinct values than there are
+	 * tuples in this relation, a copy with the distinct values limited to the
+	 * number of tuples
+	 */
+	Attribute withinTupleCount(Attribute attribute) {
+		if (attribute.getValueCount() > getTupleCount()) {
+			return attribute.withValueCount(getTupleCount());
 		}
+		return attribute;
 	}
 	
 	/**
-	 * Return the tuple count for this relation
+	 * Return the tuple count for this relation, rounded down to a whole
+	 * number of tuples (and saturating at Long.MAX_VALUE)
 	 * 
 	 * @return the tuples
 	 */
-	public int getTupleCount() {
+	public long getTupleCount() {
+		return (long) size;
+	}
+
+	/**
+	 * Return the estimated tuple count for this relation, including any
+	 * fractional part
+	 * 
+	 * @return the cardinality
+	 */
+	public double getCardinality() {
 		return size;
 	}
 	
@@ -82,8 +102,8 @@ public class Relation {
 	 * @return the rendering of this relation
 	 */
 	public String render() {
-		String ret = size + "";
-		Iterator<Attribute> iter = this.attributes.iterator();
+		String ret = getTupleCount() + "";
+		Iterator<Attribute> iter = getAttributes().iterator();
 		while (iter.hasNext()) {
 			ret += ":" + iter.next().render();
 		}
@@ -9,19 +9,49 @@ import java.io.*;
  *
  */
 public class SJDB {
+	// the number of query shapes whose plans a batch keeps
+	private static final int BATCH_CACHE_SIZE = 1024;
 
 	/**
+	 * Usage: SJDB <catalogue file> < query
+	 *        SJDB BATCH <catalogue file> < queries
+	 *        SJDB ANALYZE <data directory> <catalogue file>
+	 *        SJDB CONVERT <catalogue file> <new catalogue file>
+	 * 
+	 * The catalogue file may be in the text form read by CatalogueParser or
+	 * the binary form of BinaryCatalogue; CONVERT writes a binary catalogue
+	 * as text, and a text one as binary.
+	 * 
 	 * @param args
 	 */
 	public static void main(String[] args) throws Exception {
+		if (args.length > 0 && args[0].equalsIgnoreCase("ANALYZE")) {
+			analyze(args[1], args[2]);
+			return;
+		}
+		if (args.length > 0 && args[0].equalsIgnoreCase("CONVERT")) {
+			convert(args[1], args[2]);
+			return;
+		}
+		if (args.length > 0 && args[0].equalsIgnoreCase("BATCH")) {
+			Catalogue cat = new Catalogue();
+			read(args[1], cat);
+			batch(cat, new InputStreamReader(System.in), new PrintWriter(new OutputStreamWriter(System.out)));
+			return;
+		}
+
 		// read serialised catalogue from file and parse
 
 		String catFile = args[0];
 		Catalogue cat = new Catalogue();
-		CatalogueParser catParser = new CatalogueParser(catFile, cat);
-		catParser.parse();
+		if (BinaryCatalogue.isBinary(catFile)) {
+			BinaryCatalogue.read(catFile, cat);
+		} else {
+			CatalogueParser catParser = new CatalogueParser(catFile, cat);
+			parse(catFile, catParser);
 
-		System.out.println(catParser);
+			System.out.println(catParser);
+		}
 		// read stdin, parse, and build canonical query plan
 		QueryParser queryParser = new QueryParser(cat, new InputStreamReader(System.in));
 		Operator plan = queryParser.parse();
@@ -33,6 +63,163 @@ public class SJDB {
 		// create optimised plan
 		Optimiser opt = new Optimiser(cat);
 		Operator optPlan = opt.optimise(plan);
+		System.out.println("reorder result: " + optPlan);
+		System.out.println("reorder render: " + optPlan.getOutput().render());
+	}
+
+	/**
+	 * Plan a stream of queries against one catalogue. Each query is in the
+	 * form read by QueryParser, and ends with a ';' at the end of its last
+	 * line (the last query in the stream may leave it out). The queries are
+	 * planned through a PlanCache, so a query which only differs from an
+	 * earlier one in its values is not optimised again.
+	 * 
+	 * For each query one line of JSON is written, with its number (from 1),
+	 * its optimised plan, the estimated tuple count of the plan, whether the
+	 * plan came from the cache, and the time taken to plan it:
+	 * 
+	 * {"query":1,"plan":"...","tuples":40000,"cached":false,"micros":1834}
+	 * 
+	 * A query which cannot be planned is reported with an "error" in place
+	 * of its plan, and the batch goes on.
+	 * 
+	 * @param cat the catalogue
+	 * @param input the queries
+	 * @param output receives the plans, and is flushed at the end
+	 * @return the number of queries read
+	 */
+	public static int batch(Catalogue cat, Reader input, PrintWriter output) throws IOException {
+		PlanCache cache = new PlanCache(cat, BATCH_CACHE_SIZE);
+		BufferedReader reader = new BufferedReader(input);
+		StringBuilder query = new StringBuilder();
+		int queries = 0;
+		String line;
+		do {
+			line = reader.readLine();
+			if (line != null) {
+				String trimmed = line.trim();
+				if (!trimmed.endsWith(";")) {
+					if (trimmed.length() > 0) {
+						query.append(trimmed).append('\n');
+					}
+					continue;
+				}
+				query.append(trimmed, 0, trimmed.length() - 1).append('\n');
+			}
+			if (query.toString().trim().length() == 0) {
+				query.setLength(0);
+				continue;
+			}
+
+			queries++;
+			StringBuilder json = new StringBuilder("{\"query\":").append(queries);
+			long hits = cache.getHits();
+			long start = System.nanoTime();
+			try {
+				Operator plan = cache.optimise(query.toString());
+				long micros = (System.nanoTime() - start) / 1000;
+				json.append(",\"plan\":").append(quote(plan.toString()))
+						.append(",\"tuples\":").append(plan.getOutput().getTupleCount())
+						.append(",\"cached\":").append(cache.getHits() > hits)
+						.append(",\"micros\":").append(micros);
+			} catch (Exception e) {
+				long micros = (System.nanoTime() - start) / 1000;
+				json.append(",\"error\":").append(quote(String.valueOf(e)))
+						.append(",\"micros\":").append(micros);
+			}
+			output.println(json.append('}'));
+			query.setLength(0);
+		} while (line != null);
+		output.flush();
+		return queries;
+	}
+
+	/**
+	 * @return the text as a JSON string
+	 */
+	private static String quote(String text) {
+		StringBuilder ret = new StringBuilder("\"");
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '"' || c == '\\') {
+				ret.append('\\').append(c);
+			} else if (c == '\n') {
+				ret.append("\\n");
+			} else if (c < 0x20) {
+				ret.append(String.format("\\u%04x", (int) c));
+			} else {
+				ret.append(c);
+			}
+		}
+		return ret.append('"').toString();
+	}
+
+	/**
+	 * Gather the statistics of every relation stored in a ColumnStore, and
+	 * write them to a catalogue file. Relations in an existing catalogue
+	 * file which are not stored are kept as they are.
+	 * 
+	 * @param dataDir the directory of the ColumnStore
+	 * @param catFile the catalogue file
+	 */
+	public static void analyze(String dataDir, String catFile) throws IOException {
+		Catalogue cat = new Catalogue();
+		boolean binary = new File(catFile).exists() && read(catFile, cat);
+
+		ColumnStore store = new ColumnStore(dataDir);
+		Analyzer analyzer = new Analyzer(store);
+		for (String relName : store.getRelationNames()) {
+			NamedRelation relation = analyzer.analyze(cat, store.getRelation(relName));
+			System.out.println("ANALYZE " + CatalogueWriter.render(relation));
+		}
+		if (binary) {
+			BinaryCatalogue.write(cat, catFile);
+		} else {
+			new CatalogueWriter(catFile).write(cat);
+		}
+	}
+
+	/**
+	 * Rewrite a catalogue file in the other form: a binary catalogue as
+	 * text, and a text catalogue as binary.
+	 * 
+	 * @param fromFile the catalogue file
+	 * @param toFile the file to write
+	 */
+	public static void convert(String fromFile, String toFile) throws IOException {
+		Catalogue cat = new Catalogue();
+		if (read(fromFile, cat)) {
+			new CatalogueWriter(toFile).write(cat);
+		} else {
+			BinaryCatalogue.write(cat, toFile);
+		}
+		System.out.println("CONVERT " + cat.getRelations().size() + " relations to " + toFile);
+	}
+
+	/**
+	 * Read a catalogue file in either form
+	 * 
+	 * @return whether the file was a binary catalogue
+	 */
+	private static boolean read(String catFile, Catalogue cat) throws IOException {
+		if (BinaryCatalogue.isBinary(catFile)) {
+			BinaryCatalogue.read(catFile, cat);
+			return true;
+		}
+		parse(catFile, new CatalogueParser(catFile, cat));
+		return false;
+	}
+
+	/**
+	 * Parse a text catalogue file, reporting a malformed or unreadable file
+	 * as an IOException which names it; nothing is added to the catalogue
+	 */
+	private static void parse(String catFile, CatalogueParser parser) throws IOException {
+		try {
+			parser.parse();
+		} catch (IllegalArgumentException | UncheckedIOException e) {
+			throw new IOException("Cannot read the catalogue " + catFile + ": " + e.getMessage(), e);
+		}
 	}
 
 }
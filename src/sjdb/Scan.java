@@ -20,7 +20,7 @@ public class Scan extends Operator {
 	 */
 	public Scan(NamedRelation relation) {
 		this.relation = relation;
-		this.output = new Relation(relation.getTupleCount());
+		this.output = new Relation(relation.getCardinality());
 		Iterator<Attribute> iter = relation.getAttributes().iterator();
 		
 		while (iter.hasNext()) {
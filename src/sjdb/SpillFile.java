@@ -0,0 +1,228 @@
+package sjdb;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A temporary file of tuples, for operators which run out of memory. The
+ * tuples are appended row by row through a buffer and written with
+ * sequential FileChannel writes, then read back in order, either through
+ * the channel or from memory-mapped windows of the file.
+ * The file is deleted when it is closed.
+ * 
+ * I/O errors are thrown as UncheckedIOException, as physical operators
+ * do not throw checked exceptions.
+ */
+class SpillFile implements AutoCloseable {
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final int width;
+	private final Path path;
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private long rows;
+	private long written;
+
+	/**
+	 * Create an empty temporary file
+	 * @param width the number of attributes of the tuples
+	 */
+	SpillFile(int width) {
+		this.width = width;
+		try {
+			this.path = Files.createTempFile("sjdb-", ".spill");
+			this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		this.buffer = ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE / (8 * Math.max(width, 1)), 1) * 8 * Math.max(width, 1));
+	}
+
+	/**
+	 * Append one row of some columns
+	 * @param columns
+	 * @param row
+	 */
+	void write(long[][] columns, int row) {
+		if (buffer.remaining() < 8 * width) {
+			flush();
+		}
+		for (int c = 0; c < width; c++) {
+			buffer.putLong(columns[c][row]);
+		}
+		rows++;
+	}
+
+	/**
+	 * Append one row
+	 * @param tuple
+	 */
+	void write(long[] tuple) {
+		if (buffer.remaining() < 8 * width) {
+			flush();
+		}
+		for (int c = 0; c < width; c++) {
+			buffer.putLong(tuple[c]);
+		}
+		rows++;
+	}
+
+	/**
+	 * Write out the buffered rows
+	 */
+	void flush() {
+		buffer.flip();
+		try {
+			while (buffer.hasRemaining()) {
+				written += channel.write(buffer, written);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * @return the number of rows written
+	 */
+	long size() {
+		return rows;
+	}
+
+	/**
+	 * Read the rows back from the start of the file through the channel; the
+	 * file must have been flushed
+	 * @return
+	 */
+	Reader reader() {
+		return new ChannelReader();
+	}
+
+	/**
+	 * Read the rows back from the start of the file through memory-mapped
+	 * windows of the file, so that they are not copied into a buffer first;
+	 * the file must have been flushed
+	 * @return
+	 */
+	Reader mappedReader() {
+		return new MappedReader();
+	}
+
+	public void close() {
+		try {
+			channel.close();
+			Files.deleteIfExists(path);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Reads the rows of the file in order
+	 */
+	abstract class Reader {
+		private long remaining = rows;
+
+		/**
+		 * Read the next rows into columns
+		 * @param columns the columns to fill, from the first row
+		 * @param capacity the maximum number of rows to read
+		 * @return the number of rows read, 0 at the end of the file
+		 */
+		int read(long[][] columns, int capacity) {
+			int size = 0;
+			while (size < capacity && remaining > 0) {
+				ByteBuffer in = next();
+				for (int c = 0; c < width; c++) {
+					columns[c][size] = in.getLong();
+				}
+				size++;
+			}
+			return size;
+		}
+
+		/**
+		 * Read the next row
+		 * @param tuple receives the row
+		 * @return false at the end of the file
+		 */
+		boolean read(long[] tuple) {
+			if (remaining == 0) {
+				return false;
+			}
+			ByteBuffer in = next();
+			for (int c = 0; c < width; c++) {
+				tuple[c] = in.getLong();
+			}
+			return true;
+		}
+
+		// the buffer positioned at the next row, which is counted as read
+		private ByteBuffer next() {
+			remaining--;
+			return buffer(8 * width);
+		}
+
+		/**
+		 * @param bytes the size of a row
+		 * @return a buffer with at least one row remaining
+		 */
+		protected abstract ByteBuffer buffer(int bytes);
+	}
+
+	private class ChannelReader extends Reader {
+		private final ByteBuffer in = ByteBuffer.allocateDirect(buffer.capacity());
+		private long position;
+
+		private ChannelReader() {
+			in.flip();
+		}
+
+		protected ByteBuffer buffer(int bytes) {
+			if (in.remaining() >= bytes) {
+				return in;
+			}
+			in.compact();
+			try {
+				while (in.position() < bytes) {
+					int read = channel.read(in, position);
+					if (read < 0) {
+						throw new IOException("Unexpected end of spill file " + path);
+					}
+					position += read;
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			in.flip();
+			return in;
+		}
+	}
+
+	private class MappedReader extends Reader {
+		private static final long WINDOW = 64L * 1024 * 1024;
+		private MappedByteBuffer window;
+		private long position;
+
+		protected ByteBuffer buffer(int bytes) {
+			if (window != null && window.remaining() >= bytes) {
+				return window;
+			}
+			// map whole rows only, so a row never straddles two windows
+			long size = Math.min(Math.max(WINDOW / bytes, 1) * bytes, written - position);
+			try {
+				window = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			position += size;
+			return window;
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package sjdb;
+
+/**
+ * The source of the tuples of named relations, for the executor.
+ */
+public interface Storage {
+	/**
+	 * Return the dictionary in which the values of the stored tuples are encoded
+	 * @return
+	 */
+	Dictionary getDictionary();
+
+	/**
+	 * Open a cursor over the tuples of a named relation
+	 * @param relation
+	 * @return
+	 */
+	TupleCursor open(NamedRelation relation);
+
+	/**
+	 * Return the number of stored tuples of a named relation, which may
+	 * differ from the tuple count in the catalogue
+	 * @param relation
+	 * @return
+	 */
+	default long getTupleCount(NamedRelation relation) {
+		return relation.getTupleCount();
+	}
+
+	/**
+	 * Open a cursor over a range of the tuples of a named relation, counted
+	 * in the order in which open(relation) returns them, so that several
+	 * threads can each read part of the relation. By default the tuples
+	 * before the range are read and dropped.
+	 * @param relation
+	 * @param from the first tuple of the range
+	 * @param to the tuple after the last one of the range
+	 * @return
+	 */
+	default TupleCursor open(NamedRelation relation, final long from, final long to) {
+		final TupleCursor cursor = open(relation);
+		return new TupleCursor() {
+			private long row;
+
+			public long[] next() {
+				while (row < from && cursor.next() != null) {
+					row++;
+				}
+				if (row >= to) {
+					return null;
+				}
+				long[] tuple = cursor.next();
+				row++;
+				return tuple;
+			}
+
+			public void close() {
+				cursor.close();
+			}
+		};
+	}
+}
@@ -0,0 +1,80 @@
+package sjdb;
+
+import java.util.Set;
+
+/**
+ * A candidate plan for a subset of the relations in a query, as kept by the
+ * join enumerators. The subset is a bitmask over the leaves of a `QueryGraph`.
+ * The plan also records the attributes its output is sorted on, if any, so
+ * that a later merge join can reuse the order.
+ *
+ * @author Oushuo Huang
+ * **/
+
+class SubPlan {
+    private final Operator op;
+    private final long mask;
+    private final double cost;
+    private final SubPlan left;
+    private final SubPlan right;
+    private final Set<Attribute> order;
+
+    /**
+     * Create a plan for a single leaf of the query graph, or one which joins two smaller plans
+     * @param op the top operator of the plan (for a leaf, a `Scan` with its pushed down `Select` and `Project`)
+     * @param mask the bit of the leaf, or the union of both input masks
+     * @param cost the total cost of the plan
+     * @param left the left input plan, or null for a leaf
+     * @param right the right input plan, or null for a leaf
+     * @param order the (equal) attributes the output is sorted on, empty if it is not sorted
+     */
+    SubPlan(Operator op, long mask, double cost, SubPlan left, SubPlan right, Set<Attribute> order) {
+        this.op = op;
+        this.mask = mask;
+        this.cost = cost;
+        this.left = left;
+        this.right = right;
+        this.order = order;
+    }
+
+    Operator getOperator() {
+        return op;
+    }
+
+    long getMask() {
+        return mask;
+    }
+
+    double getCost() {
+        return cost;
+    }
+
+    /**
+     * @return the left input plan, or null if this is a leaf
+     */
+    SubPlan getLeft() {
+        return left;
+    }
+
+    /**
+     * @return the right input plan, or null if this is a leaf
+     */
+    SubPlan getRight() {
+        return right;
+    }
+
+    /**
+     * @return the attributes the output is sorted on, empty if it is not sorted
+     */
+    Set<Attribute> getOrder() {
+        return order;
+    }
+
+    boolean isLeaf() {
+        return left == null;
+    }
+
+    public String toString() {
+        return op.toString();
+    }
+}
@@ -23,6 +23,11 @@ public class Test {
 		Operator planopt = optimiser.optimise(plan);
 		planopt.accept(estimator);
 		planopt.accept(inspector);
+
+		// run both plans on generated tuples and compare the row counts
+		Executor executor = new Executor(new GeneratedStorage());
+		System.out.print(Executor.explain(executor.run(plan)));
+		System.out.print(Executor.explain(executor.run(planopt)));
 	}
 
 	public static Catalogue createCatalogue() {
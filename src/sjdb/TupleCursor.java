@@ -0,0 +1,36 @@
+package sjdb;
+
+/**
+ * A cursor over the tuples of a stored relation, each encoded as one long
+ * per attribute in the order of the attributes of the relation.
+ */
+public interface TupleCursor extends AutoCloseable {
+	/**
+	 * Return the next tuple
+	 * @return the tuple, or null if there are no more tuples
+	 */
+	long[] next();
+
+	/**
+	 * Read the next tuples into columns, one column per attribute
+	 * @param columns the columns to fill, from the first row
+	 * @param capacity the maximum number of tuples to read
+	 * @return the number of tuples read, 0 if there are no more tuples
+	 */
+	default int fill(long[][] columns, int capacity) {
+		int size = 0;
+		long[] tuple;
+		while (size < capacity && (tuple = next()) != null) {
+			for (int i = 0; i < tuple.length; i++) {
+				columns[i][size] = tuple[i];
+			}
+			size++;
+		}
+		return size;
+	}
+
+	/**
+	 * Release the resources held by the cursor
+	 */
+	void close();
+}
@@ -0,0 +1,43 @@
+package sjdb;
+
+/**
+ * This class runs query plans a batch at a time, with vector operators in
+ * place of the tuple-at-a-time physical operators of Executor.
+ */
+public class VectorExecutor extends Executor {
+
+	/**
+	 * @param storage the source of the tuples of named relations
+	 */
+	public VectorExecutor(Storage storage) {
+		super(storage);
+	}
+
+	public void visit(Scan op) {
+		operators.push(new VectorScan(op, storage));
+	}
+
+	public void visit(Project op) {
+		operators.push(new VectorProject(op, operators.pop()));
+	}
+
+	public void visit(Select op) {
+		operators.push(new VectorSelect(op, operators.pop(), storage.getDictionary()));
+	}
+
+	public void visit(Product op) {
+		PhysicalOperator right = operators.pop();
+		PhysicalOperator left = operators.pop();
+		operators.push(new VectorJoin(op, left, right, storage.getDictionary()));
+	}
+
+	public void visit(Join op) {
+		PhysicalOperator right = operators.pop();
+		PhysicalOperator left = operators.pop();
+		if (op.getMethod() == Join.Method.MERGE) {
+			operators.push(new MergeJoin(op, sorted(left, op.getPredicate()), sorted(right, op.getPredicate())));
+		} else {
+			operators.push(new HashJoin(op, left, right, getMemoryBudget()));
+		}
+	}
+}
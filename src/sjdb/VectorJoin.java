@@ -0,0 +1,135 @@
+package sjdb;
+
+/**
+ * This class executes a Join or a Product a batch at a time with a nested
+ * loop: the right input is copied into columns when the operator is opened,
+ * and each row of each left batch is matched against all of them, filling
+ * output batches of concatenated tuples.
+ */
+public class VectorJoin extends VectorOperator {
+	private final Condition condition;
+	private final int leftWidth;
+	private final int rightWidth;
+	// positions of the join attributes within the left and right tuples, when they span the inputs
+	private final int outerKey;
+	private final int innerKey;
+	private final long[][] output;
+	private long[][] leftColumns;
+	private long[][] rightColumns;
+	private ColumnBuffer inner;
+	private int innerSize;
+	private Batch outer;
+	private int outerPosition;
+	private int innerPosition;
+
+	/**
+	 * @param op the Join or Product
+	 * @param left the left input
+	 * @param right the right input
+	 * @param dictionary the dictionary in which the tuples are encoded
+	 */
+	public VectorJoin(BinaryOperator op, PhysicalOperator left, PhysicalOperator right, Dictionary dictionary) {
+		super(op, NestedLoopJoin.concat(left.getAttributes(), right.getAttributes()), left, right);
+		this.leftWidth = left.getAttributes().size();
+		this.rightWidth = right.getAttributes().size();
+		this.condition = op instanceof Join ?
+				new Condition(((Join) op).getPredicate(), getAttributes(), dictionary) : null;
+		this.output = columns(leftWidth + rightWidth);
+		// the tuples come out in the order of the left input
+		setOrder(left.getOrder());
+
+		int l = condition == null ? -1 : condition.getLeft();
+		int r = condition == null ? -1 : condition.getRight();
+		if (l >= 0 && r >= 0 && (l < leftWidth) != (r < leftWidth)) {
+			this.outerKey = Math.min(l, r);
+			this.innerKey = Math.max(l, r) - leftWidth;
+		} else {
+			this.outerKey = -1;
+			this.innerKey = -1;
+		}
+	}
+
+	public void open() {
+		super.open();
+		if (!(getInput(0) instanceof VectorOperator) && leftColumns == null) {
+			leftColumns = columns(leftWidth);
+		}
+		if (!(getInput(1) instanceof VectorOperator) && rightColumns == null) {
+			rightColumns = columns(rightWidth);
+		}
+
+		inner = new ColumnBuffer(rightWidth);
+		Batch batch;
+		while ((batch = nextBatch(getInput(1), rightColumns)) != null) {
+			inner.add(batch);
+		}
+		innerSize = inner.size();
+		outer = null;
+		outerPosition = 0;
+		innerPosition = 0;
+	}
+
+	protected Batch fetchBatch() {
+		if (innerSize == 0) {
+			return null;
+		}
+
+		int size = 0;
+		while (size < Batch.SIZE) {
+			if (outer == null || outerPosition == outer.size()) {
+				outer = nextBatch(getInput(0), leftColumns);
+				outerPosition = 0;
+				innerPosition = 0;
+				if (outer == null) {
+					break;
+				}
+			}
+
+			int row = outer.row(outerPosition);
+			long key = outerKey >= 0 ? outer.getColumn(outerKey)[row] : 0;
+			long[] keys = outerKey >= 0 ? inner.getColumn(innerKey) : null;
+			while (innerPosition < innerSize && size < Batch.SIZE) {
+				int i = innerPosition++;
+				if (keys != null ? key == keys[i] && key != Dictionary.MISSING : matches(row, i)) {
+					for (int c = 0; c < leftWidth; c++) {
+						output[c][size] = outer.getColumn(c)[row];
+					}
+					for (int c = 0; c < rightWidth; c++) {
+						output[leftWidth + c][size] = inner.getColumn(c)[i];
+					}
+					size++;
+				}
+			}
+			if (innerPosition == innerSize) {
+				outerPosition++;
+				innerPosition = 0;
+			}
+		}
+		return size == 0 ? null : new Batch(output, size);
+	}
+
+	private boolean matches(int row, int i) {
+		if (condition == null) {
+			return true;
+		}
+		long left = value(condition.getLeft(), row, i);
+		if (condition.getRight() >= 0) {
+			return left == value(condition.getRight(), row, i) && left != Dictionary.MISSING;
+		}
+		return condition.matches(left);
+	}
+
+	private long value(int position, int row, int i) {
+		return position < leftWidth ? outer.getColumn(position)[row] : inner.getColumn(position - leftWidth)[i];
+	}
+
+	public void close() {
+		inner = null;
+		outer = null;
+		super.close();
+	}
+
+	public String toString() {
+		return condition == null ? "VECTOR PRODUCT" : "VECTOR NESTED LOOP JOIN [" + condition + "]";
+	}
+}
@@ -0,0 +1,92 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This abstract class represents a physical operator which works on a batch
+ * of tuples at a time, so that the per-tuple work is a tight loop over
+ * columns instead of a virtual call and an allocation for every tuple.
+ * 
+ * Vector operators can still be read a tuple at a time through next(), so
+ * that they can be used wherever a physical operator can.
+ */
+public abstract class VectorOperator extends PhysicalOperator {
+	private Batch current;
+	private int position;
+
+	protected VectorOperator(Operator operator, List<Attribute> attributes, PhysicalOperator... inputs) {
+		super(operator, attributes, inputs);
+	}
+
+	public void open() {
+		super.open();
+		current = null;
+		position = 0;
+	}
+
+	/**
+	 * Return the next batch of tuples, which is valid until the next call
+	 * @return a batch of at least one tuple, or null if there are no more tuples
+	 */
+	public final Batch nextBatch() {
+		Batch batch = fetchBatch();
+		if (batch != null) {
+			count(batch.size());
+		}
+		return batch;
+	}
+
+	/**
+	 * Compute the next batch of tuples
+	 * @return a batch of at least one tuple, or null if there are no more tuples
+	 */
+	protected abstract Batch fetchBatch();
+
+	protected long[] fetch() {
+		while (current == null || position == current.size()) {
+			current = fetchBatch();
+			position = 0;
+			if (current == null) {
+				return null;
+			}
+		}
+
+		int row = current.row(position++);
+		long[][] columns = current.getColumns();
+		long[] tuple = new long[columns.length];
+		for (int i = 0; i < tuple.length; i++) {
+			tuple[i] = columns[i][row];
+		}
+		return tuple;
+	}
+
+	/**
+	 * Return the next batch of an input, which may be any physical operator
+	 * @param input
+	 * @param columns the columns to fill if the input is not a vector operator
+	 * @return
+	 */
+	protected static Batch nextBatch(PhysicalOperator input, long[][] columns) {
+		if (input instanceof VectorOperator) {
+			return ((VectorOperator) input).nextBatch();
+		}
+
+		int size = 0;
+		long[] tuple;
+		while (size < Batch.SIZE && (tuple = input.next()) != null) {
+			for (int i = 0; i < tuple.length; i++) {
+				columns[i][size] = tuple[i];
+			}
+			size++;
+		}
+		return size == 0 ? null : new Batch(columns, size);
+	}
+
+	/**
+	 * @param width the number of attributes
+	 * @return empty columns for a full batch
+	 */
+	protected static long[][] columns(int width) {
+		return new long[width][Batch.SIZE];
+	}
+}
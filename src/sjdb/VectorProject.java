@@ -0,0 +1,39 @@
+package sjdb;
+
+/**
+ * This class executes a Project a batch at a time, by passing on the
+ * columns of the projected attributes; no values are copied.
+ */
+public class VectorProject extends VectorOperator {
+	private final int[] positions;
+	private long[][] columns;
+
+	public VectorProject(Project op, PhysicalOperator input) {
+		super(op, op.getAttributes(), input);
+		this.positions = new int[op.getAttributes().size()];
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = Condition.position(input.getAttributes(), op.getAttributes().get(i));
+		}
+		setOrder(input.getOrder());
+	}
+
+	protected Batch fetchBatch() {
+		if (columns == null && !(getInput(0) instanceof VectorOperator)) {
+			columns = columns(getInput(0).getAttributes().size());
+		}
+
+		Batch batch = nextBatch(getInput(0), columns);
+		if (batch == null) {
+			return null;
+		}
+		long[][] projected = new long[positions.length][];
+		for (int i = 0; i < positions.length; i++) {
+			projected[i] = batch.getColumn(positions[i]);
+		}
+		return new Batch(projected, batch.getSelection(), batch.size());
+	}
+
+	public String toString() {
+		return "VECTOR PROJECT " + getAttributes();
+	}
+}
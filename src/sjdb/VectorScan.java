@@ -0,0 +1,46 @@
+package sjdb;
+
+import java.util.Collections;
+
+/**
+ * This class executes a Scan a batch at a time, by filling columns from
+ * the storage.
+ */
+public class VectorScan extends VectorOperator {
+	private final Storage storage;
+	private final NamedRelation relation;
+	private final long[][] columns;
+	private TupleCursor cursor;
+
+	public VectorScan(Scan op, Storage storage) {
+		super(op, op.getRelation().getAttributes());
+		this.storage = storage;
+		this.relation = (NamedRelation) op.getRelation();
+		if (relation.getSortedOn() != null) {
+			setOrder(Collections.singleton(relation.getSortedOn()));
+		}
+		this.columns = columns(getAttributes().size());
+	}
+
+	public void open() {
+		super.open();
+		cursor = storage.open(relation);
+	}
+
+	protected Batch fetchBatch() {
+		int size = cursor.fill(columns, Batch.SIZE);
+		return size == 0 ? null : new Batch(columns, size);
+	}
+
+	public void close() {
+		if (cursor != null) {
+			cursor.close();
+			cursor = null;
+		}
+		super.close();
+	}
+
+	public String toString() {
+		return "VECTOR SCAN [" + relation + "]";
+	}
+}
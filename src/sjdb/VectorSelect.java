@@ -0,0 +1,54 @@
+package sjdb;
+
+/**
+ * This class executes a Select a batch at a time: it tests the predicate on
+ * the columns of each input batch, and passes the same columns on with a
+ * selection vector of the rows which satisfy it.
+ */
+public class VectorSelect extends VectorOperator {
+	private final Condition condition;
+	private final int[] selection = new int[Batch.SIZE];
+	private long[][] columns;
+
+	public VectorSelect(Select op, PhysicalOperator input, Dictionary dictionary) {
+		super(op, input.getAttributes(), input);
+		this.condition = new Condition(op.getPredicate(), input.getAttributes(), dictionary);
+		setOrder(input.getOrder());
+	}
+
+	protected Batch fetchBatch() {
+		if (columns == null && !(getInput(0) instanceof VectorOperator)) {
+			columns = columns(getAttributes().size());
+		}
+
+		Batch batch;
+		while ((batch = nextBatch(getInput(0), columns)) != null) {
+			long[] left = batch.getColumn(condition.getLeft());
+			int size = 0;
+
+			if (condition.getRight() >= 0) {
+				long[] right = batch.getColumn(condition.getRight());
+				for (int i = 0; i < batch.size(); i++) {
+					int row = batch.row(i);
+					selection[size] = row;
+					size += left[row] == right[row] && left[row] != Dictionary.MISSING ? 1 : 0;
+				}
+			} else {
+				for (int i = 0; i < batch.size(); i++) {
+					int row = batch.row(i);
+					selection[size] = row;
+					size += condition.matches(left[row]) ? 1 : 0;
+				}
+			}
+
+			if (size > 0) {
+				return new Batch(batch.getColumns(), selection, size);
+			}
+		}
+		return null;
+	}
+
+	public String toString() {
+		return "VECTOR SELECT [" + condition + "]";
+	}
+}
@@ -0,0 +1,143 @@
+package sjdb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Distinct values are counted exactly while there are few of them and
+ * within the error of the sketch beyond, and an analyzed relation has the
+ * statistics of the tuples it was read from.
+ */
+class AnalyzerTest {
+	private static final int TUPLES = 200;
+
+	@TempDir
+	Path dir;
+
+	/**
+	 * A relation of TUPLES tuples: id, counting up from 1, and tag, half of
+	 * whose values are "a/b" and a quarter "x,y", the rest each different
+	 */
+	private static class TagStorage implements Storage {
+		private final Dictionary dictionary = new Dictionary();
+		private final List<long[]> tuples = new ArrayList<long[]>();
+
+		TagStorage() {
+			for (int i = 0; i < TUPLES; i++) {
+				String tag = i % 4 < 2 ? "a/b" : i % 4 == 2 ? "x,y" : "t" + i;
+				tuples.add(new long[] {dictionary.encode(Integer.toString(i + 1)), dictionary.encode(tag)});
+			}
+		}
+
+		public Dictionary getDictionary() {
+			return dictionary;
+		}
+
+		public TupleCursor open(NamedRelation relation) {
+			final Iterator<long[]> iterator = tuples.iterator();
+			return new TupleCursor() {
+				public long[] next() {
+					return iterator.hasNext() ? iterator.next() : null;
+				}
+
+				public void close() {
+				}
+			};
+		}
+	}
+
+	private static NamedRelation tags() {
+		NamedRelation relation = new NamedRelation("Tag", TUPLES);
+		relation.addAttribute(new Attribute("id"));
+		relation.addAttribute(new Attribute("tag"));
+		return relation;
+	}
+
+	@Test
+	void fewValuesAreCountedExactly() {
+		HyperLogLog counter = new HyperLogLog();
+		for (int repeat = 0; repeat < 2; repeat++) {
+			for (long value = 0; value < 4000; value++) {
+				counter.add(value);
+			}
+		}
+		assertEquals(4000, counter.estimate());
+	}
+
+	@Test
+	void manyValuesAreEstimatedClosely() {
+		HyperLogLog counter = new HyperLogLog();
+		for (long value = 0; value < 1000000; value++) {
+			counter.add(value);
+		}
+		// over four times the standard error of 0.8%
+		assertEquals(1000000, counter.estimate(), 30000);
+	}
+
+	@Test
+	void precisionIsBounded() {
+		assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(3));
+		assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(19));
+	}
+
+	@Test
+	void analyzedRelationHasTheStatisticsOfItsTuples() throws Exception {
+		Catalogue cat = new Catalogue();
+		NamedRelation tag = new Analyzer(new TagStorage()).analyze(cat, tags());
+
+		assertEquals(TUPLES, tag.getTupleCount());
+		Attribute id = cat.getAttribute("id");
+		assertEquals(TUPLES, id.getValueCount());
+		assertEquals(Analyzer.DEFAULT_BUCKETS, id.getHistogram().getBucketCount());
+		assertEquals(1, id.getHistogram().getMin());
+		assertEquals(TUPLES, id.getHistogram().getMax());
+		assertEquals(new Attribute("id"), tag.getSortedOn());
+
+		Attribute tagAttribute = cat.getAttribute("tag");
+		assertEquals(2 + TUPLES / 4, tagAttribute.getValueCount());
+		assertNull(tagAttribute.getHistogram());
+		Map<String, Double> common = new LinkedHashMap<String, Double>();
+		common.put("a/b", 0.5);
+		common.put("x,y", 0.25);
+		assertEquals(common, tagAttribute.getMostCommonValues());
+	}
+
+	@Test
+	void mostCommonValuesWithSeparatorsSurviveTheCatalogueFile() throws Exception {
+		Catalogue cat = new Catalogue();
+		new Analyzer(new TagStorage()).analyze(cat, tags());
+		StringWriter text = new StringWriter();
+		new CatalogueWriter(text).write(cat);
+		Path file = dir.resolve("cat.txt");
+		Files.write(file, text.toString().getBytes("UTF-8"));
+
+		Catalogue read = new Catalogue();
+		new CatalogueParser(file.toString(), read).parse();
+		assertEquals(cat.getAttribute("tag").getMostCommonValues(), read.getAttribute("tag").getMostCommonValues());
+	}
+
+	@Test
+	void analyzingAgainReplacesTheAttributes() throws Exception {
+		Catalogue cat = new Catalogue();
+		Analyzer analyzer = new Analyzer(new TagStorage());
+		analyzer.analyze(cat, tags());
+		NamedRelation tag = analyzer.analyze(cat, cat.getRelation("Tag"));
+
+		assertEquals(1, cat.getRelations().size());
+		assertEquals(2, tag.getAttributes().size());
+		assertEquals(TUPLES, cat.getAttribute("id").getValueCount());
+	}
+}
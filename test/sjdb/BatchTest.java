@@ -0,0 +1,63 @@
+package sjdb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * A batch of queries, each ending with a semicolon, is planned as one line
+ * of JSON per query; a repeated query is answered from the plan cache, and
+ * a query which cannot be planned is reported without ending the batch.
+ */
+class BatchTest {
+	private static final Pattern PLAN = Pattern.compile("\"plan\":\"((?:[^\"\\\\]|\\\\.)*)\"");
+
+	private static String plan(String line) {
+		Matcher matcher = PLAN.matcher(line);
+		assertTrue(matcher.find(), line);
+		return matcher.group(1);
+	}
+
+	@Test
+	void eachQueryIsPlannedOnOneLine() throws Exception {
+		String queries = TestPlans.JOIN4.trim() + ";\n" +
+				"\n" +
+				TestPlans.RANGE.trim() + ";\n" +
+				TestPlans.JOIN4.trim() + ";\n" +
+				"SELECT persname\nFROM Nowhere;\n" +
+				// the last query may end without a semicolon
+				TestPlans.MANAGER;
+		StringWriter output = new StringWriter();
+		int count = SJDB.batch(TestPlans.catalogue(10), new StringReader(queries), new PrintWriter(output));
+
+		String[] lines = output.toString().split("\n");
+		assertEquals(5, count);
+		assertEquals(5, lines.length);
+		for (int i = 0; i < lines.length; i++) {
+			assertTrue(lines[i].startsWith("{\"query\":" + (i + 1) + ","), lines[i]);
+			assertTrue(lines[i].endsWith("}"), lines[i]);
+		}
+
+		assertTrue(lines[0].contains("\"cached\":false"), lines[0]);
+		assertTrue(lines[2].contains("\"cached\":true"), lines[2]);
+		assertEquals(plan(lines[0]), plan(lines[2]));
+		assertTrue(lines[3].contains("\"error\":"), lines[3]);
+		assertFalse(lines[3].contains("\"plan\":"), lines[3]);
+		assertTrue(lines[4].contains("\"plan\":"), lines[4]);
+	}
+
+	@Test
+	void emptyInputPlansNothing() throws Exception {
+		StringWriter output = new StringWriter();
+		assertEquals(0, SJDB.batch(TestPlans.catalogue(1), new StringReader(";\n\n;\n"), new PrintWriter(output)));
+		assertEquals("", output.toString());
+	}
+}
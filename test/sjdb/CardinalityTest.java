@@ -0,0 +1,65 @@
+package sjdb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Estimates far beyond the range of an int neither wrap round nor lose
+ * their ordering, so the optimiser can still compare the plans of large
+ * queries.
+ */
+class CardinalityTest {
+	private static Catalogue catalogue(int relations, long tuples) {
+		Catalogue cat = new Catalogue();
+		for (int i = 0; i < relations; i++) {
+			cat.createRelation("R" + i, tuples);
+			cat.createAttribute("R" + i, "a" + i, tuples);
+			cat.createAttribute("R" + i, "b" + i, tuples / 10);
+		}
+		return cat;
+	}
+
+	private static String product(int relations) {
+		StringBuilder from = new StringBuilder("SELECT *\nFROM R0");
+		for (int i = 1; i < relations; i++) {
+			from.append(",R").append(i);
+		}
+		return from.append('\n').toString();
+	}
+
+	@Test
+	void productBeyondAnIntIsExact() throws Exception {
+		Catalogue cat = catalogue(3, 100000);
+		Relation output = TestPlans.canonical(cat, product(3)).getOutput();
+
+		assertEquals(1e15, output.getCardinality());
+		assertEquals(1000000000000000L, output.getTupleCount());
+	}
+
+	@Test
+	void productBeyondALongSaturates() throws Exception {
+		Catalogue cat = catalogue(5, 1000000);
+		Relation output = TestPlans.canonical(cat, product(5)).getOutput();
+
+		assertEquals(1e30, output.getCardinality(), 1e15);
+		assertEquals(Long.MAX_VALUE, output.getTupleCount());
+	}
+
+	@Test
+	void largeJoinIsStillOptimised() throws Exception {
+		Catalogue cat = catalogue(6, 1000000);
+		StringBuilder query = new StringBuilder(product(6)).append("WHERE b0=a1");
+		for (int i = 1; i < 5; i++) {
+			query.append(",b").append(i).append("=a").append(i + 1);
+		}
+		Operator canonical = TestPlans.canonical(cat, query.append('\n').toString());
+		Operator plan = new Optimiser(cat).optimise(canonical);
+
+		assertTrue(canonical.getOutput().getCardinality() > 0);
+		assertEquals(canonical.getOutput().getCardinality(), plan.getOutput().getCardinality(),
+				1e-9 * plan.getOutput().getCardinality());
+		assertTrue(TestPlans.hasJoin(plan), plan.toString());
+	}
+}
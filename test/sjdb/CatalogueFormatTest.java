@@ -0,0 +1,122 @@
+package sjdb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * A catalogue written as text or binary reads back the same, and converting
+ * between the forms loses nothing.
+ */
+class CatalogueFormatTest {
+	@TempDir
+	Path dir;
+
+	private static Catalogue catalogue() {
+		Map<String, Double> values = new LinkedHashMap<String, Double>();
+		values.put("Smith", 0.1);
+		values.put("a,b:c/d@e%f", 0.05); // every separator of the text form
+
+		Catalogue cat = TestPlans.catalogue(10);
+		cat.createAttribute("Person", "surname", 150, null, values);
+		cat.createAttribute("Person", "born", 40, Histogram.parse("1950-01-01/1970-06-30/1999-12-31"), values);
+		cat.setSortedOn("Person", "persid");
+		return cat;
+	}
+
+	private static List<String> render(Catalogue cat) {
+		List<String> lines = new ArrayList<String>();
+		for (NamedRelation relation : cat.getRelations()) {
+			lines.add(CatalogueWriter.render(relation));
+		}
+		return lines;
+	}
+
+	private static Catalogue read(Path file) throws Exception {
+		Catalogue cat = new Catalogue();
+		if (BinaryCatalogue.isBinary(file.toString())) {
+			BinaryCatalogue.read(file.toString(), cat);
+		} else {
+			new CatalogueParser(file.toString(), cat).parse();
+		}
+		return cat;
+	}
+
+	@Test
+	void textRoundTrip() throws Exception {
+		Catalogue cat = catalogue();
+		Path text = dir.resolve("cat.txt");
+		new CatalogueWriter(text.toString()).write(cat);
+
+		Catalogue read = read(text);
+		assertEquals(render(cat), render(read));
+		assertEquals(cat.getAttribute("surname").getMostCommonValues(),
+				read.getAttribute("surname").getMostCommonValues());
+		assertEquals("persid", read.getRelation("Person").getSortedOn().getName());
+	}
+
+	@Test
+	void binaryRoundTrip() throws Exception {
+		Catalogue cat = catalogue();
+		Path binary = dir.resolve("cat.bin");
+		BinaryCatalogue.write(cat, binary.toString());
+
+		Catalogue read = read(binary);
+		assertEquals(render(cat), render(read));
+		assertEquals(cat.getAttribute("born").getHistogram(), read.getAttribute("born").getHistogram());
+		assertEquals(cat.getAttribute("surname").getMostCommonValues(),
+				read.getAttribute("surname").getMostCommonValues());
+	}
+
+	@Test
+	void textToBinaryToText() throws Exception {
+		Path text = dir.resolve("cat.txt");
+		new CatalogueWriter(text.toString()).write(catalogue());
+		Path binary = dir.resolve("cat.bin");
+		BinaryCatalogue.write(read(text), binary.toString());
+		Path again = dir.resolve("again.txt");
+		new CatalogueWriter(again.toString()).write(read(binary));
+
+		assertEquals(Files.readAllLines(text), Files.readAllLines(again));
+	}
+
+	@Test
+	void binaryCataloguePlansLikeText() throws Exception {
+		Path text = dir.resolve("cat.txt");
+		new CatalogueWriter(text.toString()).write(catalogue());
+		Path binary = dir.resolve("cat.bin");
+		BinaryCatalogue.write(read(text), binary.toString());
+
+		// the relations of the binary catalogue are loaded as the query uses them
+		Catalogue fromText = read(text);
+		Catalogue fromBinary = read(binary);
+		assertEquals(new Optimiser(fromText).optimise(TestPlans.canonical(fromText, TestPlans.JOIN4)).toString(),
+				new Optimiser(fromBinary).optimise(TestPlans.canonical(fromBinary, TestPlans.JOIN4)).toString());
+	}
+
+	@Test
+	void binaryValueCountsAreLimitedLikeText() throws Exception {
+		// written past Relation.addAttribute, which would limit the value count
+		NamedRelation wide = new NamedRelation("Wide", 10);
+		wide.getAttributes().add(new Attribute("w", 1000));
+		Catalogue cat = new Catalogue();
+		cat.addRelation(wide);
+		Path text = dir.resolve("cat.txt");
+		new CatalogueWriter(text.toString()).write(cat);
+		Path binary = dir.resolve("cat.bin");
+		BinaryCatalogue.write(cat, binary.toString());
+
+		Catalogue fromText = read(text);
+		Catalogue fromBinary = read(binary);
+		assertEquals(10, fromText.getAttribute("w").getValueCount());
+		assertEquals(render(fromText), render(fromBinary));
+	}
+}
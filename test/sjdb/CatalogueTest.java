@@ -0,0 +1,105 @@
+package sjdb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * A snapshot of the catalogue keeps seeing one version while the catalogue
+ * changes, and the changes made in update() are published together or not
+ * at all.
+ */
+class CatalogueTest {
+	@Test
+	void changesOutsideUpdateArePublishedAsOneVersion() throws Exception {
+		Catalogue cat = TestPlans.catalogue(1);
+
+		assertEquals(1, cat.getVersion());
+		assertEquals(4, cat.getRelations().size());
+	}
+
+	@Test
+	void snapshotDoesNotSeeLaterChanges() throws Exception {
+		Catalogue cat = TestPlans.catalogue(1);
+		Catalogue snapshot = cat.snapshot();
+		NamedRelation person = snapshot.getRelation("Person");
+
+		cat.createRelation("Building", 5);
+		cat.createAttribute("Person", "persid", 7);
+
+		assertEquals(1, snapshot.getVersion());
+		assertEquals(2, cat.getVersion());
+		assertThrows(DatabaseException.class, () -> snapshot.getRelation("Building"));
+		assertSame(person, snapshot.getRelation("Person"));
+		assertEquals(20, snapshot.getAttribute("persid").getValueCount());
+		assertEquals(7, cat.getAttribute("persid").getValueCount());
+		assertThrows(UnsupportedOperationException.class, () -> snapshot.createRelation("Building", 5));
+	}
+
+	@Test
+	void updateIsPublishedWhole() throws Exception {
+		Catalogue cat = TestPlans.catalogue(1);
+		Catalogue before = cat.snapshot();
+
+		cat.update(c -> {
+			c.createRelation("Building", 5);
+			c.createAttribute("Building", "buildid", 5);
+			// the changes so far are seen by the update, but not by other readers
+			assertEquals(1, cat.getVersion());
+			assertEquals(5, c.getRelations().size());
+		});
+
+		assertEquals(2, cat.getVersion());
+		assertEquals(5, cat.getAttribute("buildid").getValueCount());
+		assertEquals(1, before.getVersion());
+	}
+
+	@Test
+	void failedUpdatePublishesNothing() throws Exception {
+		Catalogue cat = TestPlans.catalogue(1);
+
+		assertThrows(IllegalArgumentException.class, () -> cat.update(c -> {
+			c.createRelation("Building", 5);
+			c.createAttribute("Nowhere", "buildid", 5);
+		}));
+
+		assertEquals(1, cat.getVersion());
+		assertThrows(DatabaseException.class, () -> cat.getRelation("Building"));
+	}
+
+	@Test
+	void recreatedAttributeReplacesTheOldOne() throws Exception {
+		Catalogue cat = TestPlans.catalogue(1);
+		cat.setSortedOn("Person", "persid");
+
+		cat.createAttribute("Person", "persid", 15);
+		cat.createAttribute("Person", "age", 500);
+
+		NamedRelation person = cat.getRelation("Person");
+		assertEquals(3, person.getAttributes().size());
+		assertEquals(15, person.getAttribute(new Attribute("persid")).getValueCount());
+		assertEquals(15, person.getSortedOn().getValueCount());
+		// limited to the tuple count, as when it was first created
+		assertEquals(20, cat.getAttribute("age").getValueCount());
+	}
+
+	@Test
+	void publishedRelationCannotBeChanged() throws Exception {
+		Catalogue cat = TestPlans.catalogue(1);
+		NamedRelation person = cat.getRelation("Person");
+
+		assertThrows(UnsupportedOperationException.class, () -> person.addAttribute(new Attribute("height", 10)));
+		assertThrows(UnsupportedOperationException.class, () -> person.getAttributes().clear());
+	}
+
+	@Test
+	void missingRelationIsReported() {
+		Catalogue cat = TestPlans.catalogue(1);
+
+		IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+				() -> cat.createAttribute("Nowhere", "x", 1));
+		assertEquals("Named relation Nowhere not found", e.getMessage());
+	}
+}
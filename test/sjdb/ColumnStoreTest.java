@@ -0,0 +1,95 @@
+package sjdb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * A relation stored in a ColumnStore scans back as it was loaded, its
+ * footers describe it in a catalogue, and plans run over it as over the
+ * storage it was copied from.
+ */
+class ColumnStoreTest {
+	private static final String PEOPLE = "id,name,born\n" +
+			"1,Ann,1990-01-02\n" +
+			"2,Bob,\n" +
+			"3,Cy,1985-06-30\n";
+
+	@TempDir
+	Path dir;
+
+	private static List<String> scan(ColumnStore store, NamedRelation relation, long from, long to) {
+		List<String> rows = new ArrayList<String>();
+		try (TupleCursor cursor = store.open(relation, from, to)) {
+			long[] tuple;
+			while ((tuple = cursor.next()) != null) {
+				List<String> row = new ArrayList<String>();
+				for (long value : tuple) {
+					row.add(store.getDictionary().decode(value));
+				}
+				rows.add(row.toString());
+			}
+		}
+		return rows;
+	}
+
+	@Test
+	void loadedRelationScansBack() {
+		ColumnStore store = new ColumnStore(dir);
+		store.load("People", new StringReader(PEOPLE));
+		NamedRelation people = store.getRelation("People");
+
+		assertEquals(Arrays.asList("id", "name", "born"), store.getAttributeNames("People"));
+		assertEquals(3, store.getTupleCount(people));
+		assertEquals(Arrays.asList("[1, Ann, 1990-01-02]", "[2, Bob, null]", "[3, Cy, 1985-06-30]"),
+				scan(store, people, 0, Long.MAX_VALUE));
+		assertEquals(Arrays.asList("[2, Bob, null]", "[3, Cy, 1985-06-30]"), scan(store, people, 1, 3));
+	}
+
+	@Test
+	void reopenedStoreReadsTheSameValues() {
+		new ColumnStore(dir).load("People", new StringReader(PEOPLE));
+		ColumnStore store = new ColumnStore(dir);
+
+		assertEquals(Arrays.asList("[1, Ann, 1990-01-02]", "[2, Bob, null]", "[3, Cy, 1985-06-30]"),
+				scan(store, store.getRelation("People"), 0, Long.MAX_VALUE));
+	}
+
+	@Test
+	void footersDescribeTheRelation() throws Exception {
+		ColumnStore store = new ColumnStore(dir);
+		store.load("People", new StringReader(PEOPLE));
+		Catalogue cat = new Catalogue();
+		store.describe(cat);
+
+		NamedRelation people = cat.getRelation("People");
+		assertEquals(3, people.getTupleCount());
+		assertEquals(3, cat.getAttribute("id").getValueCount());
+		assertEquals(Histogram.parse("1/3"), cat.getAttribute("id").getHistogram());
+		assertEquals(Histogram.parse("1985-06-30/1990-01-02"), cat.getAttribute("born").getHistogram());
+		assertNull(cat.getAttribute("name").getHistogram());
+		assertEquals(new Attribute("id"), people.getSortedOn());
+	}
+
+	@Test
+	void copiedRelationsRunAsTheirSource() throws Exception {
+		Catalogue cat = TestPlans.catalogue(10);
+		GeneratedStorage generated = new GeneratedStorage();
+		ColumnStore store = new ColumnStore(dir);
+		for (NamedRelation relation : cat.getRelations()) {
+			store.copy(relation, generated);
+		}
+
+		Operator plan = new Optimiser(cat).optimise(TestPlans.canonical(cat, TestPlans.JOIN4));
+		assertEquals(TestPlans.run(new Executor(generated), plan, generated.getDictionary()),
+				TestPlans.run(new VectorExecutor(store), plan, store.getDictionary()));
+	}
+}
@@ -0,0 +1,75 @@
+package sjdb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * A memoizing estimator reuses the output relation of an operator with the
+ * same relations, predicates and output attributes as one estimated before.
+ */
+class EstimatorTest {
+	private Catalogue catalogue;
+
+	@BeforeEach
+	void createCatalogue() {
+		catalogue = TestPlans.catalogue(10);
+	}
+
+	private Join join(String left, String right, String leftAttribute, String rightAttribute) throws DatabaseException {
+		return new Join(new Scan(catalogue.getRelation(left)), new Scan(catalogue.getRelation(right)),
+				new Predicate(new Attribute(leftAttribute), new Attribute(rightAttribute)));
+	}
+
+	@Test
+	void withoutMemoNothingIsCounted() throws Exception {
+		Estimator estimator = new Estimator();
+		join("Person", "Department", "persid", "manager").accept(estimator);
+		join("Person", "Department", "persid", "manager").accept(estimator);
+
+		assertEquals(0, estimator.getHits());
+		assertEquals(0, estimator.getMisses());
+	}
+
+	@Test
+	void samePlanIsAnsweredFromTheMemo() throws Exception {
+		Estimator estimator = new Estimator(true);
+		Join first = join("Person", "Department", "persid", "manager");
+		first.accept(estimator);
+		assertEquals(0, estimator.getHits());
+		assertEquals(3, estimator.getMisses());
+
+		// new operators, and a predicate equal to the first
+		Join second = join("Person", "Department", "persid", "manager");
+		second.accept(estimator);
+		assertEquals(3, estimator.getHits());
+		assertEquals(3, estimator.getMisses());
+		assertSame(first.getOutput(), second.getOutput());
+	}
+
+	@Test
+	void differentPlansAreEstimatedAgain() throws Exception {
+		Estimator estimator = new Estimator(true);
+		join("Person", "Department", "persid", "manager").accept(estimator);
+
+		// the same relations with their attributes in another order, then another predicate
+		join("Department", "Person", "manager", "persid").accept(estimator);
+		join("Person", "Department", "age", "deptid").accept(estimator);
+
+		assertEquals(4, estimator.getHits());
+		assertEquals(5, estimator.getMisses());
+	}
+
+	@Test
+	void memoizedEstimatesMatchFreshOnes() throws Exception {
+		Estimator memo = new Estimator(true);
+		for (String query : new String[] {TestPlans.JOIN4, TestPlans.RANGE, TestPlans.MANAGER}) {
+			Operator plan = new Optimiser(catalogue).optimise(TestPlans.canonical(catalogue, query));
+			double fresh = plan.getOutput().getCardinality();
+			plan.accept(memo);
+			assertEquals(fresh, plan.getOutput().getCardinality(), 1e-9 * fresh, query);
+		}
+	}
+}
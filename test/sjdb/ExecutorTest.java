@@ -0,0 +1,202 @@
+package sjdb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Every way of running a plan returns the same tuples as running its
+ * canonical plan a tuple at a time.
+ */
+class ExecutorTest {
+	// small enough that the join build sides and sorts spill
+	private static final long SPILL_BUDGET = 8 * 1024;
+
+	private static Catalogue catalogue;
+
+	@BeforeAll
+	static void createCatalogue() {
+		catalogue = TestPlans.catalogue(100);
+	}
+
+	private static Operator optimised(String query) throws Exception {
+		Operator plan = new Optimiser(catalogue).optimise(TestPlans.canonical(catalogue, query));
+		assertTrue(TestPlans.hasJoin(plan), "the optimised plan joins: " + plan);
+		return plan;
+	}
+
+	private static List<String> run(Executor executor, Operator plan) {
+		return TestPlans.run(executor, plan, ((GeneratedStorage) executor.storage).getDictionary());
+	}
+
+	private static List<long[]> tuples(Storage storage, NamedRelation relation) {
+		List<long[]> tuples = new ArrayList<long[]>();
+		try (TupleCursor cursor = storage.open(relation)) {
+			long[] tuple;
+			while ((tuple = cursor.next()) != null) {
+				tuples.add(tuple);
+			}
+		}
+		return tuples;
+	}
+
+	@Test
+	void tupleAtATimeReturnsTheJoinedTuples() throws Exception {
+		Catalogue small = TestPlans.catalogue(1);
+		GeneratedStorage storage = new GeneratedStorage();
+		Dictionary dictionary = storage.getDictionary();
+		NamedRelation person = small.getRelation("Person");
+		NamedRelation department = small.getRelation("Department");
+		int persid = person.getAttributes().indexOf(new Attribute("persid"));
+		int persname = person.getAttributes().indexOf(new Attribute("persname"));
+		int manager = department.getAttributes().indexOf(new Attribute("manager"));
+		int deptname = department.getAttributes().indexOf(new Attribute("deptname"));
+
+		// the manager of department 2, joined by hand
+		List<String> expected = new ArrayList<String>();
+		for (long[] p : tuples(storage, person)) {
+			for (long[] d : tuples(storage, department)) {
+				if (p[persid] == d[manager] && dictionary.decode(d[deptname]).equals("2")) {
+					expected.add("deptname=" + dictionary.decode(d[deptname]) + " persname=" + dictionary.decode(p[persname]) + " ");
+				}
+			}
+		}
+		Collections.sort(expected);
+
+		assertFalse(expected.isEmpty(), "the query returns tuples");
+		assertEquals(expected, TestPlans.run(new Executor(storage), TestPlans.canonical(small, TestPlans.MANAGER), dictionary));
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {TestPlans.JOIN4, TestPlans.RANGE, TestPlans.MANAGER})
+	void vectorizedMatchesTupleAtATime(String query) throws Exception {
+		Operator plan = optimised(query);
+		GeneratedStorage storage = new GeneratedStorage();
+		List<String> expected = run(new Executor(storage), plan);
+
+		assertFalse(expected.isEmpty(), "the query returns tuples");
+		assertEquals(expected, run(new VectorExecutor(storage), plan));
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {TestPlans.JOIN4, TestPlans.RANGE, TestPlans.MANAGER})
+	void hashJoinsReturnTheCanonicalResult(String query) throws Exception {
+		// small, so that the products of the canonical plan, run as nested loops, can be run
+		Catalogue small = TestPlans.catalogue(1);
+		Operator canonical = TestPlans.canonical(small, query);
+		Operator plan = TestPlans.withJoinMethod(new Optimiser(small).optimise(canonical), Join.Method.HASH);
+		plan.accept(new Estimator());
+		GeneratedStorage storage = new GeneratedStorage();
+		List<String> expected = run(new Executor(storage), canonical);
+
+		assertFalse(expected.isEmpty(), "the query returns tuples");
+		assertEquals(expected, run(new Executor(storage), plan), "tuple at a time");
+		assertEquals(expected, run(new VectorExecutor(storage), plan), "vectorized");
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {TestPlans.JOIN4, TestPlans.RANGE, TestPlans.MANAGER})
+	void mergeJoinsMatchHashJoins(String query) throws Exception {
+		Operator plan = optimised(query);
+		Operator hash = TestPlans.withJoinMethod(plan, Join.Method.HASH);
+		hash.accept(new Estimator());
+		Operator merge = TestPlans.withJoinMethod(plan, Join.Method.MERGE);
+		merge.accept(new Estimator());
+		GeneratedStorage storage = new GeneratedStorage();
+		List<String> expected = run(new Executor(storage), hash);
+
+		assertTrue(count(new Executor(storage).compile(merge), MergeJoin.class) > 0, "the plan merges");
+		assertEquals(expected, run(new Executor(storage), merge), "tuple at a time");
+		assertEquals(expected, run(new VectorExecutor(storage), merge), "vectorized");
+	}
+
+	private static int count(PhysicalOperator op, Class<? extends PhysicalOperator> type) {
+		int count = type.isInstance(op) ? 1 : 0;
+		for (PhysicalOperator input : op.getInputs()) {
+			count += count(input, type);
+		}
+		return count;
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {TestPlans.JOIN4, TestPlans.RANGE, TestPlans.MANAGER})
+	void spillingHashJoinsMatchInMemory(String query) throws Exception {
+		Operator plan = TestPlans.withJoinMethod(optimised(query), Join.Method.HASH);
+		plan.accept(new Estimator());
+		GeneratedStorage storage = new GeneratedStorage();
+		List<String> expected = run(new Executor(storage), plan);
+
+		Executor volcano = new Executor(storage);
+		volcano.setMemoryBudget(SPILL_BUDGET);
+		assertEquals(expected, run(volcano, plan), "tuple at a time");
+		Executor vector = new VectorExecutor(storage);
+		vector.setMemoryBudget(SPILL_BUDGET);
+		assertEquals(expected, run(vector, plan), "vectorized");
+	}
+
+	@Test
+	void smallBudgetSpillsHashJoins() throws Exception {
+		Executor executor = new Executor(new GeneratedStorage());
+		executor.setMemoryBudget(SPILL_BUDGET);
+		PhysicalOperator root = executor.compile(TestPlans.withJoinMethod(optimised(TestPlans.JOIN4), Join.Method.HASH));
+		Executor.run(root);
+
+		long spilled = 0;
+		for (PhysicalOperator op : operators(root)) {
+			if (op instanceof HashJoin) {
+				spilled += ((HashJoin) op).getSpilledCount();
+			}
+		}
+		assertTrue(spilled > 0, "the hash joins spill under a budget of " + SPILL_BUDGET + " bytes");
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {TestPlans.JOIN4, TestPlans.RANGE, TestPlans.MANAGER})
+	void externalSortsMatchInMemory(String query) throws Exception {
+		Operator plan = TestPlans.withJoinMethod(optimised(query), Join.Method.MERGE);
+		plan.accept(new Estimator());
+		GeneratedStorage storage = new GeneratedStorage();
+		List<String> expected = run(new Executor(storage), plan);
+
+		Executor volcano = new Executor(storage);
+		volcano.setMemoryBudget(SPILL_BUDGET);
+		assertEquals(expected, run(volcano, plan), "tuple at a time");
+		Executor vector = new VectorExecutor(storage);
+		vector.setMemoryBudget(SPILL_BUDGET);
+		assertEquals(expected, run(vector, plan), "vectorized");
+	}
+
+	@Test
+	void smallBudgetSpillsSorts() throws Exception {
+		Executor executor = new Executor(new GeneratedStorage());
+		executor.setMemoryBudget(SPILL_BUDGET);
+		PhysicalOperator root = executor.compile(TestPlans.withJoinMethod(optimised(TestPlans.JOIN4), Join.Method.MERGE));
+		Executor.run(root);
+
+		long spilled = 0;
+		for (PhysicalOperator op : operators(root)) {
+			if (op instanceof PhysicalSort) {
+				spilled += ((PhysicalSort) op).getSpilledCount();
+			}
+		}
+		assertTrue(spilled > 0, "the sorts spill under a budget of " + SPILL_BUDGET + " bytes");
+	}
+
+	private static List<PhysicalOperator> operators(PhysicalOperator op) {
+		List<PhysicalOperator> operators = new ArrayList<PhysicalOperator>();
+		operators.add(op);
+		for (PhysicalOperator input : op.getInputs()) {
+			operators.addAll(operators(input));
+		}
+		return operators;
+	}
+}
@@ -0,0 +1,122 @@
+package sjdb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Whichever join order search plans a query, left-deep or bushy, the
+ * optimised plan returns the same tuples as the canonical plan.
+ */
+class OptimiserTest {
+	private static Catalogue catalogue;
+
+	@BeforeAll
+	static void createCatalogue() {
+		// small, so that the products of the canonical plans can be run
+		catalogue = TestPlans.catalogue(1);
+	}
+
+	/**
+	 * Optimise a query, and check the strategy used and the tuples returned
+	 * @return the optimised plan
+	 */
+	private static Operator assertCanonicalResult(Optimiser optimiser, Optimiser.Strategy strategy, String query)
+			throws Exception {
+		Operator canonical = TestPlans.canonical(catalogue, query);
+		GeneratedStorage storage = new GeneratedStorage();
+		List<String> expected = TestPlans.run(new Executor(storage), canonical, storage.getDictionary());
+		assertFalse(expected.isEmpty(), "the query returns tuples");
+
+		OptimisedPlan plan = optimiser.plan(canonical);
+		assertEquals(strategy, plan.getStrategy());
+		assertEquals(expected, TestPlans.run(new Executor(storage), plan.getPlan(), storage.getDictionary()),
+				strategy + " plan " + plan);
+		return plan.getPlan();
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {TestPlans.JOIN4, TestPlans.RANGE, TestPlans.MANAGER})
+	void exhaustiveSearchReturnsTheCanonicalResult(String query) throws Exception {
+		assertCanonicalResult(new Optimiser(catalogue), Optimiser.Strategy.EXHAUSTIVE, query);
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {TestPlans.JOIN4, TestPlans.RANGE, TestPlans.MANAGER})
+	void greedySearchReturnsTheCanonicalResult(String query) throws Exception {
+		Optimiser optimiser = new Optimiser(catalogue);
+		optimiser.setExhaustiveThreshold(1);
+		assertCanonicalResult(optimiser, Optimiser.Strategy.GREEDY, query);
+	}
+
+	@Test
+	void thresholdPicksTheSearch() throws Exception {
+		Optimiser optimiser = new Optimiser(catalogue);
+		optimiser.setExhaustiveThreshold(4);
+		assertEquals(Optimiser.Strategy.EXHAUSTIVE, optimiser.plan(TestPlans.canonical(catalogue, TestPlans.JOIN4)).getStrategy());
+		optimiser.setExhaustiveThreshold(3);
+		assertEquals(Optimiser.Strategy.GREEDY, optimiser.plan(TestPlans.canonical(catalogue, TestPlans.JOIN4)).getStrategy());
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {TestPlans.JOIN4, TestPlans.RANGE, TestPlans.MANAGER})
+	void randomizedSearchReturnsTheCanonicalResult(String query) throws Exception {
+		Optimiser optimiser = new Optimiser(catalogue);
+		optimiser.setExhaustiveThreshold(1);
+		optimiser.setPlanningBudget(0, 500);
+		assertCanonicalResult(optimiser, Optimiser.Strategy.RANDOMIZED, query);
+	}
+
+	@Test
+	void randomizedSearchKeepsToItsDeadline() throws Exception {
+		Optimiser optimiser = new Optimiser(catalogue);
+		optimiser.setExhaustiveThreshold(1);
+		// no limit on the iterations, only on the time
+		optimiser.setPlanningBudget(50, 0);
+		OptimisedPlan plan = optimiser.plan(TestPlans.canonical(catalogue, TestPlans.JOIN4));
+
+		assertEquals(Optimiser.Strategy.RANDOMIZED, plan.getStrategy());
+		assertTrue(plan.getPlanningNanos() < 1000000000L, plan.getPlanningNanos() + "ns");
+	}
+
+	@ParameterizedTest
+	@EnumSource(Optimiser.Strategy.class)
+	void leftDeepPlansAreLeftDeep(Optimiser.Strategy strategy) throws Exception {
+		Optimiser optimiser = new Optimiser(catalogue);
+		optimiser.setLeftDeep(true);
+		if (strategy != Optimiser.Strategy.EXHAUSTIVE) {
+			optimiser.setExhaustiveThreshold(1);
+		}
+		if (strategy == Optimiser.Strategy.RANDOMIZED) {
+			optimiser.setPlanningBudget(0, 500);
+		}
+
+		Operator plan = assertCanonicalResult(optimiser, strategy, TestPlans.JOIN4);
+		assertTrue(isLeftDeep(plan), plan.toString());
+	}
+
+	// every join has a single relation as one of its inputs, as setLeftDeep documents
+	private static boolean isLeftDeep(Operator op) {
+		if (op instanceof Join && TestPlans.hasJoin(((Join) op).getLeft()) && TestPlans.hasJoin(((Join) op).getRight())) {
+			return false;
+		}
+		// a scan has no list of inputs
+		if (op.getInputs() == null) {
+			return true;
+		}
+		for (Operator input : op.getInputs()) {
+			if (!isLeftDeep(input)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,138 @@
+package sjdb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Plans run by morsels on a pool of workers return the same tuples as when
+ * they are run a tuple at a time, and only relations large enough to give
+ * each worker its morsels are scanned in parallel.
+ */
+class ParallelExecutorTest {
+	private static final int WORKERS = 4;
+	// small, so that the relations of the test catalogue have many morsels
+	private static final long MORSEL_SIZE = 16;
+	// small enough that the join build sides spill
+	private static final long SPILL_BUDGET = 8 * 1024;
+	private static final String OLDER = "SELECT persname,age\n" +
+			"FROM Person\n" +
+			"WHERE age>\"40\"\n";
+
+	private static Catalogue catalogue;
+	private static ForkJoinPool pool;
+
+	@BeforeAll
+	static void createCatalogue() {
+		catalogue = TestPlans.catalogue(100);
+		pool = new ForkJoinPool(WORKERS);
+	}
+
+	@AfterAll
+	static void shutDownPool() {
+		pool.shutdown();
+	}
+
+	private static ParallelExecutor parallel(Storage storage) {
+		ParallelExecutor executor = new ParallelExecutor(storage, pool);
+		executor.setMorselSize(MORSEL_SIZE);
+		return executor;
+	}
+
+	@Test
+	void degreeFollowsTheTupleCount() throws Exception {
+		try (ParallelExecutor executor = parallel(new GeneratedStorage())) {
+			assertEquals(1, executor.degree(0));
+			assertEquals(1, executor.degree(2 * MORSEL_SIZE - 1));
+			assertEquals(2, executor.degree(4 * MORSEL_SIZE));
+			assertEquals(WORKERS, executor.degree(1000000));
+		}
+		// a small relation is scanned on one thread, with morsels of the default size
+		try (ParallelExecutor executor = new ParallelExecutor(new GeneratedStorage(), pool)) {
+			assertEquals(1, executor.degree(catalogue.getRelation("Department").getTupleCount()));
+		}
+	}
+
+	@Test
+	void morselsHoldAtLeastOneTuple() {
+		try (ParallelExecutor executor = new ParallelExecutor(new GeneratedStorage(), pool)) {
+			assertThrows(IllegalArgumentException.class, () -> executor.setMorselSize(0));
+		}
+	}
+
+	@Test
+	void scanPipelineMatchesTupleAtATime() throws Exception {
+		Operator plan = new Optimiser(catalogue).optimise(TestPlans.canonical(catalogue, OLDER));
+		GeneratedStorage storage = new GeneratedStorage();
+		List<String> expected = TestPlans.run(new Executor(storage), plan, storage.getDictionary());
+		assertFalse(expected.isEmpty(), "the query returns tuples");
+
+		try (ParallelExecutor executor = parallel(storage)) {
+			PhysicalOperator root = executor.compile(plan);
+			assertTrue(root instanceof ParallelPipeline, "the scan, select and project run as one pipeline: " + root);
+			assertEquals(WORKERS, ((ParallelPipeline) root).getDegree());
+			assertEquals(expected, TestPlans.run(executor, plan, storage.getDictionary()));
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {TestPlans.JOIN4, TestPlans.RANGE, TestPlans.MANAGER})
+	void everyJoinMethodAndBudgetMatchesTupleAtATime(String query) throws Exception {
+		Operator plan = new Optimiser(catalogue).optimise(TestPlans.canonical(catalogue, query));
+		GeneratedStorage storage = new GeneratedStorage();
+		List<String> expected = TestPlans.run(new Executor(storage), plan, storage.getDictionary());
+		assertFalse(expected.isEmpty(), "the query returns tuples");
+
+		for (Join.Method method : Join.Method.values()) {
+			Operator methodPlan = TestPlans.withJoinMethod(plan, method);
+			methodPlan.accept(new Estimator());
+			// without a budget the hash joins probe their shared tables in the pipelines; with one they spill
+			for (long budget : new long[] {0, SPILL_BUDGET}) {
+				try (ParallelExecutor executor = parallel(storage)) {
+					executor.setMemoryBudget(budget);
+					assertEquals(expected, TestPlans.run(executor, methodPlan, storage.getDictionary()),
+							method + ", budget " + budget);
+				}
+			}
+		}
+	}
+
+	@Test
+	void hashJoinProbesInThePipeline() throws Exception {
+		Operator plan = TestPlans.withJoinMethod(
+				new Optimiser(catalogue).optimise(TestPlans.canonical(catalogue, TestPlans.MANAGER)), Join.Method.HASH);
+		plan.accept(new Estimator());
+
+		try (ParallelExecutor executor = parallel(new GeneratedStorage())) {
+			PhysicalOperator root = executor.compile(plan);
+			assertTrue(root instanceof ParallelPipeline, "the join is part of the pipeline: " + root);
+			assertEquals(WORKERS, ((ParallelPipeline) root).getDegree());
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {TestPlans.JOIN4, TestPlans.RANGE, TestPlans.MANAGER})
+	void joinedScanPipelinesMatchTupleAtATime(String query) throws Exception {
+		// merge joins above the pipelines, so that their tuples are merged at each join
+		Operator plan = TestPlans.withJoinMethod(new Optimiser(catalogue).optimise(TestPlans.canonical(catalogue, query)),
+				Join.Method.MERGE);
+		plan.accept(new Estimator());
+		GeneratedStorage storage = new GeneratedStorage();
+		List<String> expected = TestPlans.run(new Executor(storage), plan, storage.getDictionary());
+		assertFalse(expected.isEmpty(), "the query returns tuples");
+
+		try (ParallelExecutor executor = parallel(storage)) {
+			assertEquals(expected, TestPlans.run(executor, plan, storage.getDictionary()));
+		}
+	}
+}
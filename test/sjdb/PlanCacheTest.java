@@ -0,0 +1,104 @@
+package sjdb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * A cached plan is reused for queries of the same shape, with their own
+ * values bound in, and is dropped when the statistics change.
+ */
+class PlanCacheTest {
+	private Catalogue catalogue;
+	private PlanCache cache;
+
+	@BeforeEach
+	void createCache() {
+		catalogue = TestPlans.catalogue(10);
+		cache = new PlanCache(catalogue, 4);
+	}
+
+	private static String manager(String name) {
+		return "SELECT persname,deptname\nFROM Person,Department\nWHERE persid=manager,persname=\"" + name + "\"\n";
+	}
+
+	private static String range(String low, String high, String... depts) {
+		return "SELECT *\nFROM Project,Department\nWHERE dept=deptid,deptid BETWEEN \"" + low + "\" AND \"" + high +
+				"\",dept IN (\"" + String.join("\",\"", depts) + "\")\n";
+	}
+
+	private String uncached(String query) throws Exception {
+		return new Optimiser(catalogue).optimise(TestPlans.canonical(catalogue, query)).toString();
+	}
+
+	@Test
+	void missPlansTheQueryAsTheParserReadsIt() throws Exception {
+		assertEquals(uncached(range("2", "9", "1", "2", "5")), cache.optimise(range("2", "9", "1", "2", "5")).toString());
+		assertEquals(uncached("SELECT persname\nFROM Person\n"), cache.optimise("SELECT persname\nFROM Person\n").toString());
+		assertEquals(2, cache.getMisses());
+	}
+
+	@Test
+	void hitBindsTheValuesOfTheQuery() throws Exception {
+		cache.optimise(manager("Smith"));
+		Operator plan = cache.optimise(manager("Jones"));
+
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(uncached(manager("Jones")), plan.toString());
+	}
+
+	@Test
+	void hitBindsBetweenAndInValues() throws Exception {
+		cache.optimise(range("2", "9", "1", "2", "5"));
+		Operator plan = cache.optimise(range("3", "30", "4", "6", "8"));
+
+		assertEquals(1, cache.getHits());
+		assertEquals(uncached(range("3", "30", "4", "6", "8")), plan.toString());
+	}
+
+	@Test
+	void differentShapesAreCachedApart() throws Exception {
+		cache.optimise(range("2", "9", "1", "2", "5"));
+		cache.optimise(range("2", "9", "1", "2"));
+
+		assertEquals(0, cache.getHits());
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	void changedStatisticsInvalidateThePlans() throws Exception {
+		cache.optimise(manager("Smith"));
+		cache.optimise(manager("Jones"));
+		assertEquals(1, cache.size());
+
+		catalogue.createAttribute("Department", "budget", 10);
+		cache.optimise(manager("Brown"));
+
+		assertEquals(1, cache.getHits());
+		assertEquals(2, cache.getMisses());
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	void leastRecentlyUsedPlanIsEvicted() throws Exception {
+		cache.optimise(manager("Smith"));
+		for (String attributes : new String[] {"persname", "persid", "age", "persname,age"}) {
+			cache.optimise("SELECT " + attributes + "\nFROM Person\nWHERE age=\"30\"\n");
+		}
+		cache.optimise(manager("Jones"));
+
+		assertEquals(4, cache.size());
+		assertEquals(0, cache.getHits());
+	}
+
+	@Test
+	void hitRejectsWhatTheParserRejects() throws Exception {
+		cache.optimise(manager("Smith"));
+
+		assertThrows(IllegalArgumentException.class, () -> cache.optimise(manager("Smith,Jones")));
+		assertThrows(IllegalArgumentException.class, () -> TestPlans.canonical(catalogue, manager("Smith,Jones")));
+	}
+}
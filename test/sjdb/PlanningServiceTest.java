@@ -0,0 +1,76 @@
+package sjdb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Queries planned at once on many threads, sharing one Optimiser, get the
+ * plans they get when planned one after another, each with the strategy
+ * chosen for it.
+ */
+class PlanningServiceTest {
+	private static final int THREADS = 4;
+	private static final int COPIES = 20;
+
+	private Catalogue catalogue;
+	private ExecutorService executor;
+
+	@BeforeEach
+	void createCatalogue() {
+		catalogue = TestPlans.catalogue(10);
+		executor = Executors.newFixedThreadPool(THREADS);
+	}
+
+	@AfterEach
+	void shutDownExecutor() {
+		executor.shutdown();
+	}
+
+	private static List<String> queries() {
+		List<String> queries = new ArrayList<String>();
+		for (int i = 0; i < COPIES; i++) {
+			queries.addAll(Arrays.asList(TestPlans.JOIN4, TestPlans.RANGE, TestPlans.MANAGER));
+		}
+		return queries;
+	}
+
+	@Test
+	void concurrentPlansMatchSequentialOnes() throws Exception {
+		Optimiser optimiser = new Optimiser(catalogue);
+		// JOIN4 is planned greedily, the two-relation queries exhaustively
+		optimiser.setExhaustiveThreshold(3);
+		PlanningService service = new PlanningService(catalogue, optimiser, executor);
+		List<String> queries = queries();
+
+		List<OptimisedPlan> plans = service.planAll(queries);
+		assertEquals(queries.size(), plans.size());
+		for (int i = 0; i < queries.size(); i++) {
+			OptimisedPlan expected = service.plan(queries.get(i));
+			assertEquals(expected.getPlan().toString(), plans.get(i).getPlan().toString(), queries.get(i));
+			assertEquals(expected.getStrategy(), plans.get(i).getStrategy(), queries.get(i));
+			assertEquals(expected.getPlan().getOutput().getCardinality(), plans.get(i).getPlan().getOutput().getCardinality());
+		}
+		assertEquals(Optimiser.Strategy.GREEDY, plans.get(0).getStrategy());
+		assertEquals(Optimiser.Strategy.EXHAUSTIVE, plans.get(2).getStrategy());
+	}
+
+	@Test
+	void unplannableQueryFailsItsBatch() {
+		PlanningService service = new PlanningService(catalogue, new Optimiser(catalogue), executor);
+		List<String> queries = queries();
+		queries.add(COPIES, "SELECT persname\nFROM Nowhere\n");
+
+		assertThrows(ExecutionException.class, () -> service.planAll(queries));
+	}
+}
@@ -0,0 +1,42 @@
+package sjdb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * The predicates of the WHERE line are read whole, and a predicate which
+ * is not of one of the forms read is reported rather than read in part.
+ */
+class QueryParserTest {
+	private static List<Predicate> where(String where) throws Exception {
+		return QueryParser.parsePredicates(new StringReader("SELECT *\nFROM R\nWHERE " + where + "\n"));
+	}
+
+	@Test
+	void readsEveryForm() throws Exception {
+		List<Predicate> predicates = where("a=b, a=\"x\", a<=\"3\", a BETWEEN \"1\" AND \"9\", a IN ( \"x\" , \"y\",\"z\" )");
+
+		assertEquals(5, predicates.size());
+		assertEquals(new Attribute("b"), predicates.get(0).getRightAttribute());
+		assertEquals(Predicate.Comparison.EQ, predicates.get(1).getComparison());
+		assertEquals(Predicate.Comparison.LE, predicates.get(2).getComparison());
+		assertEquals(Arrays.asList("1", "9"), predicates.get(3).getRightValues());
+		assertEquals(Arrays.asList("x", "y", "z"), predicates.get(4).getRightValues());
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"a IN ()", "a IN (\"x\" junk \"y\")", "a IN (\"x\",)", "a IN (\"x\") junk",
+			"a=\"x", "a", "a<b", "a BETWEEN \"1\""})
+	void malformedPredicateIsReported(String where) {
+		IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> where(where));
+		assertEquals("Malformed predicate " + where, e.getMessage());
+	}
+}
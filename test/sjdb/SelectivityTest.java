@@ -0,0 +1,122 @@
+package sjdb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * The estimator takes the fraction of tuples a predicate selects from the
+ * most common values and histograms of the catalogue.
+ */
+class SelectivityTest {
+	private static final double DELTA = 1e-6;
+
+	@TempDir
+	Path dir;
+
+	private Catalogue catalogue;
+
+	@BeforeEach
+	void parseCatalogue() throws Exception {
+		catalogue = parse("R:1000:a,100,mcv=x@0.2/y@0.1,hist=0/10/20/30/40:b,50,mcv=a%2Cb@0.5\n" +
+				"S:500:c,100,mcv=x@0.4\n");
+	}
+
+	private Catalogue parse(String text) throws Exception {
+		Path file = dir.resolve("cat.txt");
+		Files.writeString(file, text);
+		Catalogue cat = new Catalogue();
+		new CatalogueParser(file.toString(), cat).parse();
+		return cat;
+	}
+
+	private double estimate(String where) throws Exception {
+		return TestPlans.canonical(catalogue, "SELECT *\nFROM R,S\nWHERE " + where + "\n").getOutput().getCardinality();
+	}
+
+	@Test
+	void mostCommonValueHasItsOwnFraction() throws Exception {
+		assertEquals(0.2 * 1000 * 500, estimate("a=\"x\""), DELTA);
+	}
+
+	@Test
+	void otherValuesShareTheRest() throws Exception {
+		// (1 - 0.2 - 0.1) of the tuples over the 98 values which are not most common
+		assertEquals(0.7 / 98 * 1000 * 500, estimate("a=\"7\""), DELTA);
+	}
+
+	@Test
+	void valueOutsideTheHistogramSelectsNothing() throws Exception {
+		assertEquals(0, estimate("a=\"99\""), DELTA);
+	}
+
+	@Test
+	void joinMatchesTheMostCommonValues() throws Exception {
+		// x on both sides, y with an uncommon value of c, and the rest uniformly
+		double selectivity = 0.2 * 0.4 + 0.1 * (0.6 / 99) + 0.7 * 0.6 / 99;
+		Join join = new Join(new Scan(catalogue.getRelation("R")), new Scan(catalogue.getRelation("S")),
+				new Predicate(new Attribute("a"), new Attribute("c")));
+		join.accept(new Estimator());
+		assertEquals(selectivity * 1000 * 500, join.getOutput().getCardinality(), DELTA);
+	}
+
+	@Test
+	void rangeIsReadOffTheHistogram() throws Exception {
+		assertEquals(0.375 * 1000 * 500, estimate("a<\"15\""), DELTA);
+		// the bound itself is an uncommon value, included by BETWEEN
+		assertEquals((0.75 + 0.7 / 98 - 0.25) * 1000 * 500, estimate("a BETWEEN \"10\" AND \"30\""), DELTA);
+	}
+
+	@Test
+	void rangeWithoutAHistogramIsGuessed() throws Exception {
+		assertEquals(1000 * 500 / 3.0, estimate("c>\"3\""), DELTA);
+		assertEquals(1000 * 500 / 4.0, estimate("c BETWEEN \"3\" AND \"9\""), DELTA);
+	}
+
+	@Test
+	void inAddsTheFractionsOfItsValues() throws Exception {
+		// a repeated value counts once
+		assertEquals((0.2 + 0.7 / 98) * 1000 * 500, estimate("a IN (\"x\",\"7\",\"7\")"), DELTA);
+	}
+
+	@Test
+	void histogramSpreadsValuesEvenlyWithinABucket() {
+		Histogram histogram = Histogram.parse("0/10/20/30/40");
+
+		assertEquals(0.375, histogram.fractionBelow(15), DELTA);
+		assertEquals(0, histogram.fractionBelow(-5), DELTA);
+		assertEquals(1, histogram.fractionBelow(40), DELTA);
+	}
+
+	@Test
+	void escapedMostCommonValuesAreRead() throws Exception {
+		assertEquals(0.5, catalogue.getAttribute("b").getMostCommonValues().get("a,b"), DELTA);
+	}
+
+	@Test
+	void malformedCatalogueIsReportedAndNotPublished() throws Exception {
+		Catalogue cat = TestPlans.catalogue(1);
+		long version = cat.getVersion();
+		Path file = dir.resolve("bad.txt");
+		Files.writeString(file, "R:1000:a,100\nS:500:c,100,mcv=x\n");
+
+		IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+				() -> new CatalogueParser(file.toString(), cat).parse());
+		assertTrue(e.getMessage().startsWith("Line 2 of the catalogue"), e.getMessage());
+		assertEquals(version, cat.getVersion());
+		assertThrows(DatabaseException.class, () -> cat.getRelation("R"));
+	}
+
+	@Test
+	void missingTupleCountIsReported() {
+		IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> parse("R:1000:a,100\nS\n"));
+		assertTrue(e.getMessage().startsWith("Line 2 of the catalogue"), e.getMessage());
+	}
+}
@@ -0,0 +1,136 @@
+package sjdb;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The catalogue, queries and helpers shared by the tests. The catalogue has
+ * four relations whose join attributes share their values, so that the
+ * tuples GeneratedStorage makes for them join.
+ */
+class TestPlans {
+	static final String JOIN4 = "SELECT persname,projname,deptname\n" +
+			"FROM Person,Assignment,Project,Department\n" +
+			"WHERE persid=apers,aproj=projid,dept=deptid,age>\"40\"\n";
+	static final String RANGE = "SELECT *\n" +
+			"FROM Project,Department\n" +
+			"WHERE dept=deptid,deptid BETWEEN \"2\" AND \"9\",dept IN (\"1\",\"2\",\"5\",\"7\")\n";
+	static final String MANAGER = "SELECT persname,deptname\n" +
+			"FROM Person,Department\n" +
+			"WHERE persid=manager,deptname=\"2\"\n";
+
+	/**
+	 * @param scale the multiple of the smallest tuple counts: 20 people, 30
+	 *              assignments, 10 projects and 4 departments
+	 */
+	static Catalogue catalogue(long scale) {
+		long people = 20 * scale;
+		long projects = 10 * scale;
+		long departments = 4 * scale;
+		Map<String, Double> smith = new LinkedHashMap<String, Double>();
+		smith.put("Smith", 0.1);
+
+		Catalogue cat = new Catalogue();
+		cat.createRelation("Person", people);
+		cat.createAttribute("Person", "persid", people);
+		cat.createAttribute("Person", "persname", people * 3 / 4, null, smith);
+		cat.createAttribute("Person", "age", 47, Histogram.parse("18/30/45/65"), null);
+		cat.createRelation("Assignment", 30 * scale);
+		cat.createAttribute("Assignment", "apers", people);
+		cat.createAttribute("Assignment", "aproj", projects);
+		cat.createRelation("Project", projects);
+		cat.createAttribute("Project", "projid", projects);
+		cat.createAttribute("Project", "projname", projects * 3 / 4);
+		cat.createAttribute("Project", "dept", departments);
+		cat.createRelation("Department", departments);
+		cat.createAttribute("Department", "deptid", departments);
+		cat.createAttribute("Department", "deptname", departments);
+		cat.createAttribute("Department", "manager", people);
+		return cat;
+	}
+
+	/**
+	 * @return the canonical plan of a query, with estimates
+	 */
+	static Operator canonical(Catalogue cat, String query) throws Exception {
+		Operator plan = new QueryParser(cat, new StringReader(query)).parse();
+		plan.accept(new Estimator());
+		return plan;
+	}
+
+	/**
+	 * Run a plan, and return its tuples as sorted lines of attr=value pairs,
+	 * the attributes in order of name, so that the results of plans which
+	 * order their attributes differently can be compared
+	 */
+	static List<String> run(Executor executor, Operator plan, Dictionary dictionary) {
+		PhysicalOperator root = executor.compile(plan);
+		List<Attribute> attributes = root.getAttributes();
+		List<Integer> positions = new ArrayList<Integer>();
+		for (int i = 0; i < attributes.size(); i++) {
+			positions.add(i);
+		}
+		positions.sort(Comparator.comparing(i -> attributes.get(i).getName()));
+
+		List<String> rows = new ArrayList<String>();
+		root.open();
+		try {
+			long[] tuple;
+			while ((tuple = root.next()) != null) {
+				StringBuilder row = new StringBuilder();
+				for (int i : positions) {
+					row.append(attributes.get(i)).append('=').append(dictionary.decode(tuple[i])).append(' ');
+				}
+				rows.add(row.toString());
+			}
+		} finally {
+			root.close();
+		}
+		Collections.sort(rows);
+		return rows;
+	}
+
+	/**
+	 * Copy a plan, running every join by the given method
+	 */
+	static Operator withJoinMethod(Operator op, Join.Method method) {
+		if (op instanceof Scan) {
+			return new Scan((NamedRelation) ((Scan) op).getRelation());
+		} else if (op instanceof Select) {
+			return new Select(withJoinMethod(((Select) op).getInput(), method), ((Select) op).getPredicate());
+		} else if (op instanceof Project) {
+			return new Project(withJoinMethod(((Project) op).getInput(), method), ((Project) op).getAttributes());
+		} else if (op instanceof Join) {
+			Join join = (Join) op;
+			return new Join(withJoinMethod(join.getLeft(), method), withJoinMethod(join.getRight(), method),
+					join.getPredicate(), method);
+		} else {
+			Product product = (Product) op;
+			return new Product(withJoinMethod(product.getLeft(), method), withJoinMethod(product.getRight(), method));
+		}
+	}
+
+	/**
+	 * @return whether a plan has a join
+	 */
+	static boolean hasJoin(Operator op) {
+		if (op instanceof Join) {
+			return true;
+		}
+		// a scan has no list of inputs
+		if (op.getInputs() == null) {
+			return false;
+		}
+		for (Operator input : op.getInputs()) {
+			if (hasJoin(input)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}